@@ -0,0 +1,29 @@
+/*
+ *  IUsesSitePatterns.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package splitstree6.algorithms.characters;
+
+/**
+ * marks an algorithm that reads its characters only through CharactersBlock.getSitePatterns(), so that it can be
+ * given a bootstrap replicate as a vector of multiplicities over the patterns, see SitePatterns.createReplicate()
+ * Daniel Huson, 10.2026
+ */
+public interface IUsesSitePatterns {
+}
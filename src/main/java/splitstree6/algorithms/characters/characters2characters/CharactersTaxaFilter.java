@@ -21,7 +21,6 @@
 
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import jloda.util.BitSetUtils;
 import jloda.util.progress.ProgressListener;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.CharactersFormat;
@@ -29,6 +28,7 @@
 import splitstree6.workflow.DataTaxaFilter;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
@@ -50,7 +50,6 @@ public CharactersTaxaFilter() {
 	@Override
 	public void filter(ProgressListener progress, TaxaBlock inputTaxa, TaxaBlock workingTaxa, CharactersBlock inputCharacters, CharactersBlock workingCharacters) throws IOException {
 		progress.setMaximum(workingTaxa.size());
-		// todo: implement direct copy?
 
 		var enabledSites = new BitSet();
 		if (getOptionDisabledCharacters().length > 0) {
@@ -65,21 +64,28 @@ public void filter(ProgressListener progress, TaxaBlock inputTaxa, TaxaBlock wor
 			for (var taxon : workingTaxa.getTaxa()) {
 				var tIn = inputTaxa.indexOf(taxon);
 				var tOut = workingTaxa.indexOf(taxon);
-				workingCharacters.copyRow(inputCharacters, tIn, tOut);
+				workingCharacters.shareRow(inputCharacters, tIn, tOut); // copied on write
 				progress.incrementProgress();
 			}
 		} else {
+			// copy each run of consecutive enabled sites as a whole
+			var runs = new ArrayList<int[]>();
+			for (var start = enabledSites.nextSetBit(1); start != -1; start = enabledSites.nextSetBit(start)) {
+				var end = enabledSites.nextClearBit(start);
+				runs.add(new int[]{start - 1, end - start});
+				start = end;
+			}
 			workingCharacters.setDimension(workingTaxa.getNtax(), enabledSites.cardinality());
 			for (var taxon : workingTaxa.getTaxa()) {
-				var tIn = inputTaxa.indexOf(taxon);
-				var tOut = workingTaxa.indexOf(taxon);
-				var cOut = 1;
-				for (var cIn : BitSetUtils.members(enabledSites)) {
-					workingCharacters.set(tOut, cOut++, inputCharacters.get(tIn, cIn));
+				var rowIn = inputCharacters.getRow0ReadOnly(inputTaxa.indexOf(taxon) - 1);
+				var rowOut = workingCharacters.getRow0(workingTaxa.indexOf(taxon) - 1);
+				var cOut = 0;
+				for (var run : runs) {
+					System.arraycopy(rowIn, run[0], rowOut, cOut, run[1]);
+					cOut += run[1];
 				}
 				progress.incrementProgress();
 			}
-
 		}
 		workingCharacters.setSymbols(inputCharacters.getSymbols());
 		workingCharacters.setDataType(inputCharacters.getDataType());
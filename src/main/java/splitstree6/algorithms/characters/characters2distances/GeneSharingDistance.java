@@ -57,9 +57,10 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 		progress.setTasks("Gene-sharing distance", "Init.");
 		progress.setMaximum(ntax);
 
+		final var pairwiseCompare = new PairwiseCompare(charactersBlock);
 		for (var s = 1; s <= ntax; s++) {
 			for (var t = s + 1; t <= ntax; t++) {
-				var seqPair = new PairwiseCompare(charactersBlock, s, t);
+				var seqPair = pairwiseCompare.compute(s, t, false);
 				var dist = -1.0;
 				var F = seqPair.getF();
 				if (F != null) {
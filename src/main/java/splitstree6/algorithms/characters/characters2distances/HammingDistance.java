@@ -22,11 +22,13 @@
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.characters.characters2distances.utils.FixUndefinedDistances;
+import splitstree6.algorithms.characters.characters2distances.utils.PackedNucleotides;
+import splitstree6.algorithms.utils.ParallelPairs;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
-import splitstree6.data.parts.AmbiguityCodes;
 import splitstree6.data.parts.CharactersType;
 
 import java.io.IOException;
@@ -46,9 +48,12 @@
  * different overlaps are not on one scale. Run CharactersFilter with optionExcludeGapSites first if
  * the raw counts have to be comparable across the whole matrix.
  * <p>
- * Daniel Huson, 2006, 8.2026
+ * Pairs are computed in parallel, on the distinct site patterns, and nucleotide data on rows packed by
+ * PackedNucleotides. All of this gives the same values as comparing the sequences site by site.
+ * <p>
+ * Daniel Huson, 2006, 8.2026, 10.2026
  */
-public class HammingDistance extends Characters2Distances {
+public class HammingDistance extends Characters2Distances implements IUsesSitePatterns {
 	private final BooleanProperty optionNormalize = new SimpleBooleanProperty(this, "optionNormalize", false);
 	private final BooleanProperty optionMatchAmbiguityCodes = new SimpleBooleanProperty(this, "optionMatchAmbiguityCodes", true);
 	private final BooleanProperty optionMatchGapToGap = new SimpleBooleanProperty(this, "optionMatchGapToGap", false);
@@ -84,11 +89,9 @@ public String getShortDescription() {
 	@Override
 	public void compute(ProgressListener progress, TaxaBlock taxa, CharactersBlock characters, DistancesBlock distancesBlock) throws IOException {
 		var ntax = taxa.getNtax();
-		progress.setMaximum(ntax);
 
 		distancesBlock.setNtax(ntax);
 
-		var nchar = characters.getNchar();
 		var gapChar = Character.toLowerCase(characters.getGapCharacter());
 		var missingChar = Character.toLowerCase(characters.getMissingCharacter());
 		var dataType = characters.getDataType();
@@ -105,23 +108,35 @@ else if (dataType == CharactersType.Protein)
 
 		// the ambiguity codes are nucleotide codes, so protein 'b' or 'd' must never be read as one
 		var matchAmbiguityCodes = isOptionMatchAmbiguityCodes() && dataType.isNucleotides();
-		var masks = (matchAmbiguityCodes ? setupNucleotideMasks() : null);
+		var masks = (matchAmbiguityCodes ? PackedNucleotides.setupNucleotideMasks() : null);
 
 		var matchGapToGap = isOptionMatchGapToGap();
 		var normalize = isOptionNormalize();
 
-		for (var s = 1; s <= ntax; s++) {
-			var rowS = characters.getRow0(s - 1);
-			for (var t = s + 1; t <= ntax; t++) {
-				var rowT = characters.getRow0(t - 1);
+		// sites that show the same pattern are compared once, with the sum of their weights
+		var patterns = characters.getSitePatterns().getCompressedCharacters();
+		var npatterns = patterns.getNchar();
+		var weights = patterns.getCharacterWeights();
+
+		// nucleotide rows can be packed and compared sixteen sites at a time, giving the same scores
+		var packed = (dataType.isNucleotides() ? PackedNucleotides.create(patterns.getMatrixReadOnly(), gapChar, missingChar, matchAmbiguityCodes, weights) : null);
+		if (packed != null) {
+			ParallelPairs.apply(progress, ntax, () -> new double[2], (result, s, t) -> {
+				packed.compare(s - 1, t - 1, matchAmbiguityCodes, matchGapToGap, result);
+				distancesBlock.setBoth(s, t, computeDistance(result[0], result[1], normalize));
+			});
+		} else {
+			ParallelPairs.apply(progress, ntax, () -> null, (none, s, t) -> {
+				var rowS = patterns.getRow0ReadOnly(s - 1);
+				var rowT = patterns.getRow0ReadOnly(t - 1);
 
 				var differences = 0.0;
 				var compared = 0.0;
 
-				for (var k = 1; k <= nchar; k++) {
-					var cs = rowS[k - 1];
-					var ct = rowT[k - 1];
-					var weight = characters.getCharacterWeight(k);
+				for (var k = 0; k < npatterns; k++) {
+					var cs = rowS[k];
+					var ct = rowT[k];
+					var weight = (weights == null ? 1.0 : weights[k]);
 
 					if (isUnobserved(cs, gapChar, missingChar, anyChar) || isUnobserved(ct, gapChar, missingChar, anyChar)) {
 						// the one unobserved pair that can carry information: both share the same deletion
@@ -133,24 +148,25 @@ else if (dataType == CharactersType.Protein)
 					if (cs != ct && !(matchAmbiguityCodes && compatible(masks, cs, ct)))
 						differences += weight;
 				}
-
-				final double dist;
-				if (compared == 0)
-					dist = -1; // the two sequences have no observed site in common, distance undefined
-				else if (normalize)
-					dist = differences / compared;
-				else
-					dist = differences;
-
-				distancesBlock.set(s, t, dist);
-				distancesBlock.set(t, s, dist);
-			}
-			progress.incrementProgress();
+				distancesBlock.setBoth(s, t, computeDistance(differences, compared, normalize));
+			});
 		}
 		FixUndefinedDistances.apply(distancesBlock);
 		progress.reportTaskCompleted();
 	}
 
+	/**
+	 * the distance for a pair, given the weighted number of differences and of compared sites
+	 */
+	private static double computeDistance(double differences, double compared, boolean normalize) {
+		if (compared == 0)
+			return -1; // the two sequences have no observed site in common, distance undefined
+		else if (normalize)
+			return differences / compared;
+		else
+			return differences;
+	}
+
 	/**
 	 * does this character fail to report an observed state? A gap, the missing character and a code
 	 * covering the whole alphabet all do, and a site at which either sequence has one is not compared
@@ -168,33 +184,6 @@ private static boolean compatible(int[] masks, char cs, char ct) {
 		return ms != 0 && (ms & mt) != 0;
 	}
 
-	/**
-	 * sets up the table mapping a base or ambiguity code to the set of bases it stands for, as a bit set
-	 * over a, c, g and t; two characters are compatible exactly when their sets intersect. This is a table
-	 * rather than a call to AmbiguityCodes.codesOverlap because that allocates two strings per comparison
-	 * and there are ntax^2/2 * nchar comparisons.
-	 * <p>
-	 * RNA's 'u' is folded onto 't' because AmbiguityCodes is written in terms of DNA. Without the fold,
-	 * 'y' (c or t) against 'u' would come out as a difference.
-	 *
-	 * @return table indexed by character, 0 for anything that is neither a base nor a code
-	 */
-	private static int[] setupNucleotideMasks() {
-		var masks = new int[128];
-		for (var ch = 'a'; ch <= 'z'; ch++) {
-			var bases = AmbiguityCodes.getNucleotides(ch);
-			var mask = 0;
-			for (var i = 0; i < bases.length(); i++) {
-				var base = (bases.charAt(i) == 'u' ? 't' : bases.charAt(i));
-				var bit = "acgt".indexOf(base);
-				if (bit >= 0)
-					mask |= (1 << bit);
-			}
-			masks[ch] = mask;
-		}
-		return masks;
-	}
-
 	// GETTERS AND SETTERS
 
 	public boolean isOptionNormalize() {
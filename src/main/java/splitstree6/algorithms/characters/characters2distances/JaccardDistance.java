@@ -53,10 +53,11 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 		progress.setTasks("JaccardDistance distance", "Init.");
 		progress.setMaximum(ntax);
 
+		final PairwiseCompare pairwiseCompare = new PairwiseCompare(charactersBlock);
 		for (int s = 1; s <= ntax; s++) {
 			for (int t = s + 1; t <= ntax; t++) {
 				//System.err.println(s+","+t);
-				final PairwiseCompare seqPair = new PairwiseCompare(charactersBlock, s, t);
+				final PairwiseCompare seqPair = pairwiseCompare.compute(s, t, false);
 				final double[][] F = seqPair.getF();
 
 				var dist = -1.0;
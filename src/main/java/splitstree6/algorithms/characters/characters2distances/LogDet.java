@@ -131,9 +131,10 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 		progress.setMaximum(ntax);
 		distancesBlock.setNtax(ntax);
 
+		final var pairwiseCompare = new PairwiseCompare(charactersBlock);
 		for (var t = 1; t <= ntax; t++) {
 			for (var s = t + 1; s <= ntax; s++) {
-				var seqPair = new PairwiseCompare(charactersBlock, s, t);
+				var seqPair = pairwiseCompare.compute(s, t, false);
 				var r = seqPair.getNumStates();
 
 				var F = seqPair.getF();
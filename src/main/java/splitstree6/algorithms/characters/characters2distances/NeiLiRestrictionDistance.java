@@ -73,10 +73,11 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 		progress.setMaximum(ntax);
 
 
+		final PairwiseCompare pairwiseCompare = new PairwiseCompare(charactersBlock);
 		for (int s = 1; s <= ntax; s++) {
 			for (int t = s + 1; t <= ntax; t++) {
 
-				PairwiseCompare seqPair = new PairwiseCompare(charactersBlock, s, t);
+				PairwiseCompare seqPair = pairwiseCompare.compute(s, t, false);
 				final double[][] F = seqPair.getF();
 				double dist = -1.0;
 				if (F != null) {
@@ -24,9 +24,11 @@
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.characters.characters2distances.utils.FixUndefinedDistances;
 import splitstree6.algorithms.characters.characters2distances.utils.PairwiseCompare;
 import splitstree6.algorithms.characters.characters2distances.utils.SaturatedDistancesException;
+import splitstree6.algorithms.utils.ParallelPairs;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
@@ -44,7 +46,7 @@
  * @author bryant
  */
 
-public class ProteinMLDistance extends Characters2Distances {
+public class ProteinMLDistance extends Characters2Distances implements IUsesSitePatterns {
 	public enum Model {cpREV45, Dayhoff, JTT, mtMAM, mtREV24, pmb, Rhodopsin, WAG}
 
 	private final Property<Model> optionModel = new SimpleObjectProperty<>(this, "optionModel", Model.JTT);
@@ -85,11 +87,9 @@ public String getToolTip(String optionName) {
 	@Override
 	public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBlock charactersBlock, DistancesBlock distancesBlock) throws IOException {
 		int ntax = charactersBlock.getNtax();
-		int npairs = ntax * (ntax - 1) / 2;
 
 		distancesBlock.setNtax(ntax);
 		progress.setTasks("Protein ML distance", "Init.");
-		progress.setMaximum(npairs);
 
 		ProteinModel model = selectModel(optionModel.getValue());
 		model.setPinv(this.getOptionPropInvariableSites());
@@ -98,29 +98,35 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
         /*if (model == null) {
             throw new SplitsException("Incorrect model name");
         }*/
-		var maxValue = 0.0;
-		for (int s = 1; s <= ntax; s++) {
-			for (int t = s + 1; t <= ntax; t++) {
-				final var seqPair = new PairwiseCompare(charactersBlock, s, t);
-				var dist = -1.0;
-
-				//Maximum likelihood distance. Note we want to ignore sites
-				//with the stop codon.
-				try {
-					dist = seqPair.mlDistance(model);
-				} catch (SaturatedDistancesException ignored) {
-				}
-
-				distancesBlock.set(s, t, dist);
-				distancesBlock.set(t, s, dist);
-				progress.incrementProgress();
+		// sites that show the same pattern are compared once, with the sum of their weights
+		var patterns = charactersBlock.getSitePatterns().getCompressedCharacters();
+
+		// each thread has its own reusable PairwiseCompare and its own copy of the model, as getX() writes to it,
+		// but all copies share the memoized matrices at the grid times, so set these up first
+		model.getProbabilityGrid();
+		ParallelPairs.apply(progress, ntax, () -> new Worker(new PairwiseCompare(patterns), model.copy()), (worker, s, t) -> {
+			final var seqPair = worker.compare().compute(s, t, false);
+			var dist = -1.0;
+
+			//Maximum likelihood distance. Note we want to ignore sites
+			//with the stop codon.
+			try {
+				dist = seqPair.mlDistance(worker.model());
+			} catch (SaturatedDistancesException ignored) {
 			}
-		}
+			distancesBlock.setBoth(s, t, dist);
+		});
 
 		FixUndefinedDistances.apply(distancesBlock);
 		progress.reportTaskCompleted();
 	}
 
+	/**
+	 * the working state of one thread in compute()
+	 */
+	private record Worker(PairwiseCompare compare, ProteinModel model) {
+	}
+
 	@Override
 	public boolean isApplicable(TaxaBlock taxa, CharactersBlock datablock) {
 		return super.isApplicable(taxa, datablock) && datablock.getDataType() == CharactersType.Protein;
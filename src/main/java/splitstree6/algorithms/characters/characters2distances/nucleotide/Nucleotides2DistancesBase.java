@@ -25,6 +25,7 @@
 import jloda.fx.window.NotificationManager;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressPercentage;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.characters.characters2distances.Characters2Distances;
 import splitstree6.algorithms.characters.characters2report.EstimateInvariableSites;
 import splitstree6.data.CharactersBlock;
@@ -38,7 +39,7 @@
  * nucleotides to distances algorithms base class
  * Dave Bryant 2005, Daniel Huson 2019
  */
-public abstract class Nucleotides2DistancesBase extends Characters2Distances {
+public abstract class Nucleotides2DistancesBase extends Characters2Distances implements IUsesSitePatterns {
 
 	public enum SetParameters {fromChars, defaultValues}
 
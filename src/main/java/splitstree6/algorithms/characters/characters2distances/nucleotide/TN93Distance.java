@@ -21,8 +21,10 @@
 package splitstree6.algorithms.characters.characters2distances.nucleotide;
 
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.characters.characters2distances.Characters2Distances;
 import splitstree6.algorithms.characters.characters2distances.utils.FixUndefinedDistances;
+import splitstree6.algorithms.utils.ParallelPairs;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
@@ -37,25 +39,19 @@
  * and unequal base frequencies (π_A, π_C, π_G, π_T)
  * Daniel Huson, 9.2025, using ChatGPT5, 4.2026 corrected using Claude OPus 4.7
  */
-public class TN93Distance extends Characters2Distances {
+public class TN93Distance extends Characters2Distances implements IUsesSitePatterns {
 	@Override
 	public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBlock characters, DistancesBlock distancesBlock) throws IOException {
 		final int ntax = characters.getNtax();
 		distancesBlock.setNtax(ntax);
-		progress.setMaximum(ntax);
 
-		var sequences = new String[ntax];
-		for (int s = 0; s < ntax; s++) {
-			sequences[s] = String.valueOf(characters.getRow0(s));
-		}
-		for (int s = 1; s <= ntax; s++) {
-			for (int t = s + 1; t <= ntax; t++) {
-				var dist = distance(sequences[s - 1], sequences[t - 1]);
-				distancesBlock.set(s, t, dist);
-				distancesBlock.set(t, s, dist);
-			}
-			progress.incrementProgress();
-		}
+		// sites that show the same pattern are compared once and counted as often as they occur
+		var sitePatterns = characters.getSitePatterns();
+		var patterns = sitePatterns.getCompressedCharacters();
+		var multiplicities = sitePatterns.getMultiplicities();
+
+		ParallelPairs.apply(progress, ntax, () -> null, (none, s, t) ->
+				distancesBlock.setBoth(s, t, distance(patterns.getRow0ReadOnly(s - 1), patterns.getRow0ReadOnly(t - 1), multiplicities)));
 		FixUndefinedDistances.apply(distancesBlock);
 		progress.reportTaskCompleted();
 
@@ -66,36 +62,42 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 	public static double distance(String s1, String s2) {
 		if (s1.length() != s2.length())
 			throw new IllegalArgumentException("Sequences must have the same length (aligned).");
+		return distance(s1.toCharArray(), s2.toCharArray(), null);
+	}
 
+	// Compute TN93 distance between two aligned DNA sequences, in which site i stands for multiplicities[i] sites,
+	// or for one, if multiplicities is null
+	public static double distance(char[] s1, char[] s2, int[] multiplicities) {
 		int a1 = 0, c1 = 0, g1 = 0, t1 = 0;
 		int a2 = 0, c2 = 0, g2 = 0, t2 = 0;
 		int ag = 0, ct = 0, tv = 0;
 		int compatibleSites = 0;
 
-		for (int i = 0; i < s1.length(); i++) {
-			char x = Character.toUpperCase(s1.charAt(i));
-			char y = Character.toUpperCase(s2.charAt(i));
+		for (int i = 0; i < s1.length; i++) {
+			char x = Character.toUpperCase(s1[i]);
+			char y = Character.toUpperCase(s2[i]);
 			if (!isACGT(x) || !isACGT(y)) continue;
+			final int count = (multiplicities == null ? 1 : multiplicities[i]);
 
 			switch (x) {
-				case 'A' -> a1++;
-				case 'C' -> c1++;
-				case 'G' -> g1++;
-				case 'T' -> t1++;
+				case 'A' -> a1 += count;
+				case 'C' -> c1 += count;
+				case 'G' -> g1 += count;
+				case 'T' -> t1 += count;
 			}
 			switch (y) {
-				case 'A' -> a2++;
-				case 'C' -> c2++;
-				case 'G' -> g2++;
-				case 'T' -> t2++;
+				case 'A' -> a2 += count;
+				case 'C' -> c2 += count;
+				case 'G' -> g2 += count;
+				case 'T' -> t2 += count;
 			}
 
 			if (x != y) {
-				if (isPurine(x) && isPurine(y)) ag++;
-				else if (isPyrimidine(x) && isPyrimidine(y)) ct++;
-				else tv++;
+				if (isPurine(x) && isPurine(y)) ag += count;
+				else if (isPyrimidine(x) && isPyrimidine(y)) ct += count;
+				else tv += count;
 			}
-			compatibleSites++;
+			compatibleSites += count;
 		}
 
 		if (compatibleSites == 0) return Double.NaN;
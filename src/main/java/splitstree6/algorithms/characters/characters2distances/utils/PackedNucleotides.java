@@ -0,0 +1,264 @@
+/*
+ *  PackedNucleotides.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.algorithms.characters.characters2distances.utils;
+
+import splitstree6.data.parts.AmbiguityCodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * nucleotide sequences packed four bits per site, so that two sequences can be compared sixteen sites at a time
+ * <p>
+ * A site is stored as the set of bases its character stands for, one bit each for a, c, g and t: a base sets one
+ * bit, an ambiguity code sets several, and a gap, the missing character or 'n' sets none, which is what marks the
+ * site as unobserved. Gaps are also recorded in a separate mask of the same layout, using the lowest bit of each
+ * site, so that a site at which both sequences have a gap can be counted as compared. A row without gaps has no mask.
+ * Sites need not be stored in their original order, see create().
+ * <p>
+ * The scores are exactly those of the character by character comparison in HammingDistance. An alignment that
+ * contains a character for which this cannot be guaranteed, that is, one that is neither unobserved nor a base or
+ * code, is not packed at all, see create().
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class PackedNucleotides {
+	/**
+	 * number of sites per word
+	 */
+	public static final int SITES_PER_WORD = 16;
+	private static final long LOW_BITS = 0x1111111111111111L;
+
+	private final int nchar;
+	private final long[][] codes;
+	private final long[][] gaps;
+	private final double[] wordWeights; // weight of every site in a word, if sites are grouped by weight
+	private final double[] siteWeights; // weight of each site, otherwise, null, if all are 1
+
+	private PackedNucleotides(int nchar, long[][] codes, long[][] gaps, double[] wordWeights, double[] siteWeights) {
+		this.nchar = nchar;
+		this.codes = codes;
+		this.gaps = gaps;
+		this.wordWeights = wordWeights;
+		this.siteWeights = siteWeights;
+	}
+
+	/**
+	 * packs the rows of a nucleotide alignment
+	 * <p>
+	 * If there are character weights and only few distinct values, such as the multiplicities of site patterns,
+	 * the sites are grouped by weight and each group is padded to whole words, so that every word has a single
+	 * weight and the sites of a word can still be counted by a popcount. Otherwise, the weights of the sites that
+	 * count are added up one by one
+	 *
+	 * @param matrix              the rows, 0-based, lower-case
+	 * @param gapChar             the gap character
+	 * @param missingChar         the missing character
+	 * @param matchAmbiguityCodes will two compatible codes be considered equal? If not, the alignment must not mix
+	 *                            't' and 'u', as the two share a bit
+	 * @param weights             the character weights, 0-based, or null, if all are 1
+	 * @return packed rows, or null, if the alignment contains a character that cannot be represented
+	 */
+	public static PackedNucleotides create(char[][] matrix, char gapChar, char missingChar, boolean matchAmbiguityCodes, double[] weights) {
+		final var masks = setupNucleotideMasks();
+		final var ntax = matrix.length;
+		final var nchar = (ntax == 0 ? 0 : matrix[0].length);
+
+		// the position of each site in the packed rows
+		final var position = new int[nchar];
+		final double[] wordWeights;
+		var npositions = 0;
+		if (weights != null && countPaddedByWeight(weights) <= 2L * nchar) {
+			final var order = new Integer[nchar];
+			for (var k = 0; k < nchar; k++)
+				order[k] = k;
+			Arrays.sort(order, Comparator.comparingDouble(k -> weights[k]));
+			final var wordWeightList = new ArrayList<Double>();
+			for (var pos = 0; pos < nchar; pos++) {
+				final var k = order[pos];
+				if (pos > 0 && weights[k] != weights[order[pos - 1]])
+					npositions = SITES_PER_WORD * ((npositions + SITES_PER_WORD - 1) / SITES_PER_WORD); // start a new word
+				if (npositions % SITES_PER_WORD == 0)
+					wordWeightList.add(weights[k]);
+				position[k] = npositions++;
+			}
+			wordWeights = wordWeightList.stream().mapToDouble(w -> w).toArray();
+		} else {
+			for (var k = 0; k < nchar; k++)
+				position[k] = k;
+			npositions = nchar;
+			wordWeights = null;
+		}
+		final var nwords = (npositions + SITES_PER_WORD - 1) / SITES_PER_WORD;
+
+		final var codes = new long[ntax][];
+		final var gaps = new long[ntax][];
+		var seenT = false;
+		var seenU = false;
+
+		for (var s = 0; s < ntax; s++) {
+			final var row = matrix[s];
+			final var packed = new long[nwords];
+			long[] gapMask = null;
+			for (var k = 0; k < nchar; k++) {
+				final var ch = row[k];
+				final var word = position[k] / SITES_PER_WORD;
+				final var shift = 4 * (position[k] % SITES_PER_WORD);
+				if (ch == gapChar) {
+					if (gapMask == null)
+						gapMask = new long[nwords];
+					gapMask[word] |= (1L << shift);
+				} else if (ch != missingChar && ch != 'n') {
+					final var mask = (ch < masks.length ? masks[ch] : 0);
+					if (mask == 0)
+						return null;
+					packed[word] |= ((long) mask << shift);
+					if (ch == 't')
+						seenT = true;
+					else if (ch == 'u')
+						seenU = true;
+				}
+			}
+			codes[s] = packed;
+			gaps[s] = gapMask;
+		}
+		if (!matchAmbiguityCodes && seenT && seenU)
+			return null;
+		return new PackedNucleotides(nchar, codes, gaps, wordWeights, (wordWeights == null ? weights : null));
+	}
+
+	/**
+	 * the number of positions needed when the sites are grouped by weight and each group is padded to whole words
+	 */
+	private static long countPaddedByWeight(double[] weights) {
+		final var sorted = weights.clone();
+		Arrays.sort(sorted);
+		var count = 0L;
+		var groupSize = 0;
+		for (var k = 0; k < sorted.length; k++) {
+			if (k > 0 && sorted[k] != sorted[k - 1]) {
+				count += SITES_PER_WORD * ((groupSize + SITES_PER_WORD - 1) / SITES_PER_WORD);
+				groupSize = 0;
+			}
+			groupSize++;
+		}
+		return count + SITES_PER_WORD * ((groupSize + SITES_PER_WORD - 1) / SITES_PER_WORD);
+	}
+
+	/**
+	 * compares two packed rows
+	 *
+	 * @param s                   first row, 0-based
+	 * @param t                   second row, 0-based
+	 * @param matchAmbiguityCodes do not count two compatible characters, such as y and c, as a difference
+	 * @param matchGapToGap       count a site at which both have a gap as compared
+	 * @param result              receives the weighted number of differences in [0] and of compared sites in [1]
+	 */
+	public void compare(int s, int t, boolean matchAmbiguityCodes, boolean matchGapToGap, double[] result) {
+		final var rowS = codes[s];
+		final var rowT = codes[t];
+		final var gapS = (matchGapToGap ? gaps[s] : null);
+		final var gapT = (matchGapToGap ? gaps[t] : null);
+		final var bothGaps = (gapS != null && gapT != null);
+
+		var differences = 0.0;
+		var compared = 0.0;
+		var countDifferences = 0L;
+		var countCompared = 0L;
+
+		for (var w = 0; w < rowS.length; w++) {
+			final var a = rowS[w];
+			final var b = rowT[w];
+			final var observed = anyBit(a) & anyBit(b);
+			final var differ = observed & (matchAmbiguityCodes ? ~anyBit(a & b) : anyBit(a ^ b));
+			final var counted = (bothGaps ? observed | (gapS[w] & gapT[w]) : observed);
+
+			if (wordWeights != null) {
+				differences += wordWeights[w] * Long.bitCount(differ);
+				compared += wordWeights[w] * Long.bitCount(counted);
+			} else if (siteWeights != null) {
+				differences += sumWeights(siteWeights, w, differ);
+				compared += sumWeights(siteWeights, w, counted);
+			} else {
+				countDifferences += Long.bitCount(differ);
+				countCompared += Long.bitCount(counted);
+			}
+		}
+		final var unweighted = (wordWeights == null && siteWeights == null);
+		result[0] = (unweighted ? countDifferences : differences);
+		result[1] = (unweighted ? countCompared : compared);
+	}
+
+	public int getNchar() {
+		return nchar;
+	}
+
+	public int getNtax() {
+		return codes.length;
+	}
+
+	/**
+	 * sets the lowest bit of each site that has any bit set
+	 */
+	private static long anyBit(long x) {
+		return (x | (x >>> 1) | (x >>> 2) | (x >>> 3)) & LOW_BITS;
+	}
+
+	/**
+	 * sums the weights of the sites whose lowest bit is set
+	 */
+	private static double sumWeights(double[] weights, int word, long bits) {
+		var sum = 0.0;
+		final var offset = word * SITES_PER_WORD;
+		while (bits != 0) {
+			sum += weights[offset + (Long.numberOfTrailingZeros(bits) >>> 2)];
+			bits &= bits - 1;
+		}
+		return sum;
+	}
+
+	/**
+	 * sets up the table mapping a base or ambiguity code to the set of bases it stands for, as a bit set
+	 * over a, c, g and t; two characters are compatible exactly when their sets intersect. This is a table
+	 * rather than a call to AmbiguityCodes.codesOverlap because that allocates two strings per comparison
+	 * and there are ntax^2/2 * nchar comparisons.
+	 * <p>
+	 * RNA's 'u' is folded onto 't' because AmbiguityCodes is written in terms of DNA. Without the fold,
+	 * 'y' (c or t) against 'u' would come out as a difference.
+	 *
+	 * @return table indexed by character, 0 for anything that is neither a base nor a code
+	 */
+	public static int[] setupNucleotideMasks() {
+		var masks = new int[128];
+		for (var ch = 'a'; ch <= 'z'; ch++) {
+			var bases = AmbiguityCodes.getNucleotides(ch);
+			var mask = 0;
+			for (var i = 0; i < bases.length(); i++) {
+				var base = (bases.charAt(i) == 'u' ? 't' : bases.charAt(i));
+				var bit = "acgt".indexOf(base);
+				if (bit >= 0)
+					mask |= (1 << bit);
+			}
+			masks[ch] = mask;
+		}
+		return masks;
+	}
+}
@@ -22,59 +22,116 @@
 import splitstree6.algorithms.utils.SplitsException;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.parts.AmbiguityCodes;
+import splitstree6.models.ProbabilityGrid;
 import splitstree6.models.SubstitutionModel;
 
+import java.util.Arrays;
+
 /**
- * Computes pairwise distances
+ * Computes pairwise distances. Each site is counted with its character weight, if the characters have weights
  *
  * @author David Bryant and Daniel Huson, 2005, 2018
  */
 
-public class PairwiseCompare { // todo: add support for character weights
+public class PairwiseCompare {
+	private final CharactersBlock characters;
+	private final String states; // the states, so without the ambiguity codes
 	private final int numStates;
+	private final boolean isNucleotides;
 	private int numNotMissing;
 	private final double[][] fCount; /* Stored as doubles, to handle ambiguities and character weights*/
 
+	// lookup tables for the characters 0..TABLE_SIZE-1, set up once per instance, so that comparing a pair of
+	// sequences does no string searches and no allocation. Anything beyond the table goes the slow way
+	private static final int TABLE_SIZE = 128;
+	private final int[] stateIndex; // state, gap or missing index of a character that is not expanded, -1 if invalid
+	private final String[] expansion; // the bases a nucleotide character expands to, null if it is not a code
+	private final int[][] expansionIndex; // the state, gap or missing index of each base in the expansion, -1 if invalid
+
+	// Brent's method locates the ML time to within this, and a time this close to the end of the search is saturated
+	private static final double BRENT_TOLERANCE = 0.0000001;
+	private static final double BRENT_RELATIVE_TOLERANCE = 0.0000000001;
+	private static final double SATURATION_TOLERANCE = 0.000001;
+
+	/**
+	 * constructs a reusable comparison for the given characters. Call compute() to compare a pair of sequences
+	 *
+	 * @param characters the characters
+	 */
+	public PairwiseCompare(final CharactersBlock characters) {
+		this.characters = characters;
+		states = characters.getStateSymbols();
+		numStates = states.length();
+		isNucleotides = characters.getDataType().isNucleotides();
+		// The fCount matrix has rows and columns for missing and gap states as well
+		fCount = new double[numStates + 2][numStates + 2];
+
+		stateIndex = new int[TABLE_SIZE];
+		expansion = new String[TABLE_SIZE];
+		expansionIndex = new int[TABLE_SIZE][];
+		for (var ch = 0; ch < TABLE_SIZE; ch++) {
+			stateIndex[ch] = computeStateIndex((char) ch);
+			if (isNucleotides && AmbiguityCodes.isAmbiguityCode((char) ch))
+				expansion[ch] = AmbiguityCodes.getNucleotides((char) ch, states);
+			// the expansion is also needed for a plain character, when it is compared to a code
+			expansionIndex[ch] = computeExpansionIndex(AmbiguityCodes.getNucleotides((char) ch, states));
+		}
+	}
+
 	/**
-	 * constructor
+	 * compares a single pair of sequences. This sets up the lookup tables, so, to compare many pairs, construct one
+	 * instance using PairwiseCompare(characters) and call compute() for each pair
 	 */
 
 	// TODO: SOMETHING SLOWS DOWN THE ALGORITHM WHILE OPEN AMBIG. CHARACTERS. NEED TO FIND OUT!
 	public PairwiseCompare(final CharactersBlock characters, final int i, final int j) throws SplitsException {
-		numStates = characters.getStateSymbols().length();
-		// The fCount matrix has rows and columns for missing and gap states as well
-		fCount = new double[numStates + 2][numStates + 2];
-		calculatePairwiseCompare(characters, i, j, false);
+		this(characters);
+		compute(i, j, false);
 	}
 
 	public PairwiseCompare(final CharactersBlock characters, final int i, final int j, boolean isIgnoreAmbiguous)
 			throws SplitsException {
-		numStates = characters.getStateSymbols().length();
-		fCount = new double[numStates + 2][numStates + 2];
-		calculatePairwiseCompare(characters, i, j, isIgnoreAmbiguous);
+		this(characters);
+		compute(i, j, isIgnoreAmbiguous);
 	}
 
+	/**
+	 * compares two sequences of the characters that this was constructed for
+	 *
+	 * @param characters must be the characters that this was constructed for
+	 */
 	public void calculatePairwiseCompare(final CharactersBlock characters, final int i, final int j, boolean isIgnoreAmbiguous)
 			throws SplitsException {
-		final String states = characters.getStateSymbols(); // the states, so without the ambiguity codes
-		// legal characters that are not states. In practice this is protein's 'b', 'z', 'x' and '*': the
-		// nucleotide codes are non-states too, but they are expanded in the branch below and never reach the
-		// lookup. Treating them as missing is what keeps a protein alignment containing X readable
-		final String nonStates = characters.getNonStateSymbols();
-		final char gapChar = characters.getGapCharacter();
-		final char missingChar = characters.getMissingCharacter();
-		final boolean isNucleotides = characters.getDataType().isNucleotides();
+		if (characters != this.characters)
+			throw new IllegalArgumentException("characters differ from those used in constructor");
+		compute(i, j, isIgnoreAmbiguous);
+	}
 
+	/**
+	 * compares two sequences, replacing the result of any previous comparison
+	 *
+	 * @param i                 first taxon, 1-based
+	 * @param j                 second taxon, 1-based
+	 * @param isIgnoreAmbiguous skip all sites at which one of the two has a nucleotide ambiguity code
+	 * @return this
+	 */
+	public PairwiseCompare compute(final int i, final int j, boolean isIgnoreAmbiguous) throws SplitsException {
 		final int gapIndex = numStates;
 		final int missingIndex = numStates + 1;
 
+		for (var row : fCount)
+			Arrays.fill(row, 0.0);
 		numNotMissing = 0;
 
-		for (int k = 1; k <= characters.getNchar(); k++) {
-			char ci = characters.get(i, k); // todo use final?
-			char cj = characters.get(j, k);
+		final char[] rowI = characters.getRow0ReadOnly(i - 1);
+		final char[] rowJ = characters.getRow0ReadOnly(j - 1);
+		final double[] weights = characters.getCharacterWeights();
+
+		for (int k = 1; k <= rowI.length; k++) {
+			final char ci = rowI[k - 1];
+			final char cj = rowJ[k - 1];
 
-			final double charWeight = characters.getCharacterWeight(k);
+			final double charWeight = (weights == null ? 1.0 : weights[k - 1]);
 
 			// Does this site reach the states-by-states block of fCount, which is the only part getF() sums over?
 			// numNotMissing used to be incremented here for every site whose two characters were neither gap nor
@@ -85,26 +142,21 @@ public void calculatePairwiseCompare(final CharactersBlock characters, final int
 			var contributes = false;
 
 			//Handle ambiguous states?
-			final boolean ambigI, ambigJ;
-			if (isNucleotides) {
-				ambigI = AmbiguityCodes.isAmbiguityCode(ci);
-				ambigJ = AmbiguityCodes.isAmbiguityCode(cj);
-			} else {
-				ambigI = ambigJ = false;
-			}
+			final String si = (isNucleotides ? expansion(ci) : null);
+			final String sj = (isNucleotides ? expansion(cj) : null);
 
-			if (ambigI || ambigJ) {
+			if (si != null || sj != null) {
 				if (isIgnoreAmbiguous)
 					continue;
 				// expand in the alphabet actually in use: the codes are written in terms of DNA, so for RNA data
 				// 'y' would otherwise expand to "ct" and 't' is not one of RNA's symbols
-				final var si = AmbiguityCodes.getNucleotides(ci, states);
-				final var sj = AmbiguityCodes.getNucleotides(cj, states);
+				final var ei = expansionIndex(ci);
+				final var ej = expansionIndex(cj);
 
 				//Two cases... if they are the same states, then this needs to be distributed
 				//down the diagonal of F. Otherwise, average.
 
-				if (si.equals(sj)) {
+				if (si != null && si.equals(sj)) {
 					var weight = 1.0 / si.length();
 					for (int pos = 0; pos < si.length(); pos++) {
 						final var base = si.charAt(pos);
@@ -117,46 +169,26 @@ public void calculatePairwiseCompare(final CharactersBlock characters, final int
 						contributes = true;
 					}
 				} else {
-					var weight = 1.0 / (si.length() * sj.length());
-
-					for (var x = 0; x < si.length(); x++) {
-						for (var y = 0; y < sj.length(); y++) {
-							final var cx = si.charAt(x);
-							final var cy = sj.charAt(y);
-							var stateX = states.indexOf(cx);
-							var stateY = states.indexOf(cy);
-							if (cx == gapChar) stateX = gapIndex;
-							if (cx == missingChar) stateX = missingIndex;
-							if (cy == gapChar) stateY = gapIndex;
-							if (cy == missingChar) stateY = missingIndex;
+					var weight = 1.0 / (ei.length * ej.length);
+
+					for (var stateX : ei) {
+						for (var stateY : ej) {
 							if (stateX >= 0 && stateY >= 0) {
 								fCount[stateX][stateY] += weight * charWeight;
 								if (stateX < numStates && stateY < numStates)
 									contributes = true;
 							} else {
 								if (stateX < 0)
-									throw new SplitsException("Position " + k + " for taxa " + i + ": invalid character '" + cx + "'");
+									throw new SplitsException("Position " + k + " for taxa " + i + ": invalid character '" + invalidChar(ci) + "'");
 								else if (stateY < 0)
-									throw new SplitsException("Position " + k + " for taxa " + j + ": invalid character '" + cy + "'");
+									throw new SplitsException("Position " + k + " for taxa " + j + ": invalid character '" + invalidChar(cj) + "'");
 							}
 						}
 					}
 				}
 			} else {
-				final int stateI;
-				if (ci == gapChar)
-					stateI = gapIndex;
-				else if (ci == missingChar || nonStates.indexOf(ci) >= 0)
-					stateI = missingIndex;
-				else
-					stateI = states.indexOf(ci);
-				final int stateJ;
-				if (cj == gapChar)
-					stateJ = gapIndex;
-				else if (cj == missingChar || nonStates.indexOf(cj) >= 0)
-					stateJ = missingIndex;
-				else
-					stateJ = states.indexOf(cj);
+				final int stateI = stateIndex(ci);
+				final int stateJ = stateIndex(cj);
 
 				if (stateI >= 0 && stateJ >= 0) {
 					fCount[stateI][stateJ] += charWeight;
@@ -173,6 +205,69 @@ else if (cj == missingChar || nonStates.indexOf(cj) >= 0)
 			if (contributes)
 				numNotMissing++;
 		}
+		return this;
+	}
+
+	/**
+	 * the state, gap or missing index of a character that is not expanded. Legal characters that are not states
+	 * are treated as missing. In practice this is protein's 'b', 'z', 'x' and '*': the nucleotide codes are
+	 * non-states too, but they are expanded and never reach this. Treating them as missing is what keeps a protein
+	 * alignment containing X readable
+	 *
+	 * @return index, or -1, if the character is invalid
+	 */
+	private int computeStateIndex(char ch) {
+		if (ch == characters.getGapCharacter())
+			return numStates;
+		else if (ch == characters.getMissingCharacter() || characters.getNonStateSymbols().indexOf(ch) >= 0)
+			return numStates + 1;
+		else
+			return states.indexOf(ch);
+	}
+
+	/**
+	 * the state, gap or missing index of each base of an expansion, -1 for an invalid one
+	 */
+	private int[] computeExpansionIndex(String bases) {
+		final var result = new int[bases.length()];
+		for (var pos = 0; pos < bases.length(); pos++) {
+			final var ch = bases.charAt(pos);
+			if (ch == characters.getGapCharacter())
+				result[pos] = numStates;
+			else if (ch == characters.getMissingCharacter())
+				result[pos] = numStates + 1;
+			else
+				result[pos] = states.indexOf(ch);
+		}
+		return result;
+	}
+
+	private int stateIndex(char ch) {
+		return (ch < TABLE_SIZE ? stateIndex[ch] : computeStateIndex(ch));
+	}
+
+	private String expansion(char ch) {
+		if (ch < TABLE_SIZE)
+			return expansion[ch];
+		else
+			return AmbiguityCodes.isAmbiguityCode(ch) ? AmbiguityCodes.getNucleotides(ch, states) : null;
+	}
+
+	private int[] expansionIndex(char ch) {
+		return (ch < TABLE_SIZE ? expansionIndex[ch] : computeExpansionIndex(AmbiguityCodes.getNucleotides(ch, states)));
+	}
+
+	/**
+	 * the first base in the expansion of a character that is not valid, for reporting
+	 */
+	private char invalidChar(char ch) {
+		final var bases = AmbiguityCodes.getNucleotides(ch, states);
+		final var indices = expansionIndex(ch);
+		for (var pos = 0; pos < indices.length; pos++) {
+			if (indices[pos] < 0)
+				return bases.charAt(pos);
+		}
+		return ch;
 	}
 
 	/**
@@ -254,51 +349,114 @@ private double evalL(SubstitutionModel model, double[][] F, double t) {
 	}
 
 	/**
-	 * golden section
+	 * Returns negative log likelihood of a given F matrix and X matrix
+	 *
+	 * @return negative log likelihood [double]
 	 */
-	private double goldenSection(SubstitutionModel model, double[][] F, double tmin, double tmax) {
-		final double GS_EPSILON = 0.000001;
-		final double tau = 2.0 / (1.0 + Math.sqrt(5.0)); //Golden ratio
-
-		double a = tmin;
-		double b = tmax;
-		double aa = a + (1.0 - tau) * (b - a);
-		double bb = a + tau * (b - a);
-		double faa = evalL(model, F, aa);
-		double fbb = evalL(model, F, bb);
-
-		while ((b - a) > GS_EPSILON) {
-			if (faa < fbb) {
-				b = bb;
-				bb = aa;
-				fbb = faa;
-				aa = a + (1.0 - tau) * (b - a);
-				faa = evalL(model, F, aa);
-				//System.out.println("faa was the smallest at this iteration :" + faa);
-			} else {
-				a = aa;
-				aa = bb;
-				faa = fbb;
-				bb = a + tau * (b - a);
-				fbb = evalL(model, F, bb);
-				//System.out.println("fbb was the smallest at this iteration :" + fbb);
+	private static double evalL(double[][] X, double[][] F) {
+		double logL = 0.0;
+		for (int i = 0; i < F.length; i++) {
+			for (int j = 0; j < F.length; j++) {
+				if (F[i][j] != 0.0)
+					logL += F[i][j] * Math.log(X[i][j]);
 			}
 		}
+		return -logL;
+	}
+
+	/**
+	 * Brent's method: minimizes the negative log likelihood on the interval [a,b], by parabolic interpolation
+	 * where this makes progress, and golden section steps where it does not (Brent 1973, Algorithms for
+	 * minimization without derivatives, procedure localmin)
+	 *
+	 * @return the time at which the minimum is attained, up to BRENT_TOLERANCE
+	 */
+	private double brent(SubstitutionModel model, double[][] F, double a, double b) {
+		final double c = 0.5 * (3.0 - Math.sqrt(5.0)); // squared inverse of the golden ratio
+
+		double x = a + c * (b - a);
+		double w = x;
+		double v = x;
+		double fx = evalL(model, F, x);
+		double fw = fx;
+		double fv = fx;
+		double d = 0.0;
+		double e = 0.0;
+
+		while (true) {
+			final double m = 0.5 * (a + b);
+			final double tol = BRENT_RELATIVE_TOLERANCE * Math.abs(x) + BRENT_TOLERANCE;
+			final double tol2 = 2.0 * tol;
+			if (Math.abs(x - m) <= tol2 - 0.5 * (b - a))
+				return x;
+
+			double p = 0.0, q = 0.0, r = 0.0;
+			if (Math.abs(e) > tol) { // fit a parabola through x, w and v
+				r = (x - w) * (fx - fv);
+				q = (x - v) * (fx - fw);
+				p = (x - v) * q - (x - w) * r;
+				q = 2.0 * (q - r);
+				if (q > 0.0)
+					p = -p;
+				else
+					q = -q;
+				r = e;
+				e = d;
+			}
+			if (Math.abs(p) < Math.abs(0.5 * q * r) && p > q * (a - x) && p < q * (b - x)) { // parabolic step
+				d = p / q;
+				final double u = x + d;
+				if (u - a < tol2 || b - u < tol2)
+					d = (x < m ? tol : -tol);
+			} else { // golden section step
+				e = (x < m ? b : a) - x;
+				d = c * e;
+			}
 
-		return b;
+			final double u = x + (Math.abs(d) >= tol ? d : (d > 0.0 ? tol : -tol));
+			final double fu = evalL(model, F, u);
+
+			if (fu <= fx) {
+				if (u < x)
+					b = x;
+				else
+					a = x;
+				v = w;
+				fv = fw;
+				w = x;
+				fw = fx;
+				x = u;
+				fx = fu;
+			} else {
+				if (u < x)
+					a = u;
+				else
+					b = u;
+				if (fu <= fw || w == x) {
+					v = w;
+					fv = fw;
+					w = u;
+					fw = fu;
+				} else if (fu <= fv || v == x || v == w) {
+					v = u;
+					fv = fu;
+				}
+			}
+		}
 	}
 
 	/**
 	 * Max Likelihood Distance - returns maximum likelihood distance for a given substitution
 	 * model.
+	 * <p>
+	 * If the model memoizes its X matrices on a grid of times, the likelihood is first evaluated at the grid times,
+	 * which only costs the logarithms, and Brent's method then only searches between the neighbours of the best one
 	 *
 	 * @param model Substitution model in use
 	 * @return distance
 	 * @throws SaturatedDistancesException distance undefined if saturated (distance more than 10 substitutions per site)
 	 */
 	public double mlDistance(SubstitutionModel model) throws SaturatedDistancesException {
-
-		//TODO: Replace the golden arc method with Brent's algorithm
 		final int nStates = model.getNstates();
 		final double[][] fullF = getF();
 
@@ -327,13 +485,25 @@ public double mlDistance(SubstitutionModel model) throws SaturatedDistancesExcep
 			}
 		}
 
-		double t = goldenSection(model, F, 0.00000001, 2.0);
-		if (t == 2.0) {
-			t = goldenSection(model, F, 2.0, 10.0);
-			if (t == 10.0) {
-				throw new SaturatedDistancesException();
+		final double t;
+		final ProbabilityGrid grid = model.getProbabilityGrid();
+		if (grid != null) {
+			int best = 0;
+			double bestValue = Double.POSITIVE_INFINITY;
+			for (int g = 0; g < grid.size(); g++) {
+				final double value = evalL(grid.getX(model, g), F);
+				if (value < bestValue) {
+					best = g;
+					bestValue = value;
+				}
 			}
+			t = brent(model, F, grid.getTime(Math.max(0, best - 1)), grid.getTime(Math.min(grid.size() - 1, best + 1)));
+		} else {
+			final double t1 = brent(model, F, ProbabilityGrid.MIN_TIME, 2.0);
+			t = (t1 >= 2.0 - SATURATION_TOLERANCE ? brent(model, F, 2.0, ProbabilityGrid.MAX_TIME) : t1);
 		}
+		if (t >= ProbabilityGrid.MAX_TIME - SATURATION_TOLERANCE)
+			throw new SaturatedDistancesException();
 		return t * model.getRate();
 	}
 
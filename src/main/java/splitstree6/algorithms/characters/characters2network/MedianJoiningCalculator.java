@@ -19,19 +19,23 @@
 
 package splitstree6.algorithms.characters.characters2network;
 
-import jloda.graph.EdgeSet;
 import jloda.graph.Node;
-import jloda.graph.NodeSet;
 import jloda.phylo.PhyloGraph;
 import jloda.util.CanceledException;
-import jloda.util.Pair;
 import jloda.util.progress.ProgressListener;
 
 import java.util.*;
 
 /**
  * Median Joining Algorithm
- * Daniel Huson, 2010, 2021
+ * <p>
+ * The sequences are reduced to the sites at which the input sequences differ, as all medians agree with the input
+ * at all other sites, and each sequence is encoded as an array of bytes, one per site, with a cached hash code.
+ * Distances are computed once for each pair of sequences and kept, together with a list of all pairs sorted by
+ * distance, into which the pairs involving new median vectors are merged. The minimum spanning network is then
+ * obtained in a single pass over that list, using union-find to maintain the components.
+ * <p>
+ * Daniel Huson, 2010, 2021, 10.2026
  */
 public class MedianJoiningCalculator extends QuasiMedianBase {
 	private int optionEpsilon = 0;
@@ -41,331 +45,470 @@ public class MedianJoiningCalculator extends QuasiMedianBase {
 	 */
 	public void computeGraph(ProgressListener progressListener, Set<String> inputSequences, double[] weights, PhyloGraph graph) throws CanceledException {
 		System.err.println("Computing the median joining network for epsilon=" + getOptionEpsilon());
-		var outputSequences = new HashSet<String>();
-		computeMedianJoiningMainLoop(progressListener, inputSequences, weights, getOptionEpsilon(), outputSequences);
+		final var network = new MedianNetwork(inputSequences, weights);
+		computeMedianJoiningMainLoop(progressListener, network, getOptionEpsilon());
 
-		var feasibleLinks = new EdgeSet(graph);
-		boolean changed;
+		List<MedianNetwork.Link> links;
 		do {
-			graph.clear();
-			feasibleLinks.clear();
-			computeMinimumSpanningNetwork(outputSequences, weights, 0, graph, feasibleLinks);
-			for (var e : graph.edges()) {
-				if (!feasibleLinks.contains(e))
-					graph.deleteEdge(e);
-			}
-			changed = removeObsoleteNodes(graph, inputSequences, outputSequences, feasibleLinks);
+			links = network.computeFeasibleLinks(0);
 			progressListener.incrementProgress();
 		}
-		while (changed);
+		while (network.removeObsoleteNodes(links));
+
+		graph.clear();
+		final var id2node = new HashMap<Integer, Node>();
+		for (var id : network.getIds()) {
+			final var sequence = network.decode(id);
+			final var v = graph.newNode(sequence);
+			graph.setLabel(v, sequence);
+			id2node.put(id, v);
+		}
+		for (var link : links) {
+			final var e = graph.newEdge(id2node.get(link.a()), id2node.get(link.b()));
+			graph.setWeight(e, link.distance());
+		}
 	}
 
 	/**
 	 * Algorithm loop of the median joining algorithm
 	 */
-	private void computeMedianJoiningMainLoop(ProgressListener progress, Set<String> input,
-											  double[] weights, int epsilon, Set<String> outputSequences) throws CanceledException {
-		outputSequences.addAll(input);
-
+	private void computeMedianJoiningMainLoop(ProgressListener progress, MedianNetwork network, int epsilon) throws CanceledException {
 		var changed = true;
 		while (changed) {
-			System.err.println("Median joining: " + outputSequences.size() + " sequences");
+			System.err.println("Median joining: " + network.size() + " sequences");
 			progress.incrementProgress();
 			changed = false;
 
-			var graph = new PhyloGraph();
-			var feasibleLinks = new EdgeSet(graph);
-
-			// Build MSN + compute feasible links
-			computeMinimumSpanningNetwork(outputSequences, weights, epsilon, graph, feasibleLinks);
+			// Build MSN restricted to the feasible links
+			final var links = network.computeFeasibleLinks(epsilon);
 
-			// --- NEW: prune graph to feasible links before removing obsolete nodes ---
-			for (var e : graph.getEdgesAsList()) {
-				if (!feasibleLinks.contains(e)) {
-					graph.deleteEdge(e);
-				}
-			}
-
-			// Now the degree test considers exactly the edges we keep:
-			if (removeObsoleteNodes(graph, input, outputSequences, feasibleLinks)) {
-				changed = true;   // sequences changed, recompute graph
+			// the degree test considers exactly the feasible links
+			if (network.removeObsoleteNodes(links)) {
+				changed = true;   // sequences changed, recompute links
 				continue;
 			}
 
-			// determine min connection cost:
+			// all quasi-medians of all pairs of links that share a node, with their connection costs
+			final var adjacent = new HashMap<Integer, List<Integer>>();
+			for (var link : links) {
+				adjacent.computeIfAbsent(link.a(), k -> new ArrayList<>()).add(link.b());
+				adjacent.computeIfAbsent(link.b(), k -> new ArrayList<>()).add(link.a());
+			}
+			final var candidates = new HashMap<MedianNetwork.Haplotype, Double>();
 			var minConnectionCost = Double.POSITIVE_INFINITY;
-
-			for (var u : graph.nodes()) {
-				var seqU = (String) u.getInfo();
-				for (var e = u.getFirstAdjacentEdge(); e != null; e = u.getNextAdjacentEdge(e)) {
-					var v = e.getOpposite(u);
-					var seqV = (String) v.getInfo();
-					for (var f = u.getNextAdjacentEdge(e); f != null; f = u.getNextAdjacentEdge(f)) {
-						var w = f.getOpposite(u);
-						var seqW = (String) w.getInfo();
-						var qm = computeQuasiMedian(seqU, seqV, seqW);
-						for (var aQm : qm) {
-							if (!outputSequences.contains(aQm)) {
-								var cost = computeConnectionCost(seqU, seqV, seqW, aQm, weights);
+			for (var entry : adjacent.entrySet()) {
+				final var seqU = network.get(entry.getKey());
+				final var neighbors = entry.getValue();
+				for (var i = 0; i < neighbors.size(); i++) {
+					final var seqV = network.get(neighbors.get(i));
+					for (var j = i + 1; j < neighbors.size(); j++) {
+						final var seqW = network.get(neighbors.get(j));
+						for (var median : network.computeQuasiMedian(seqU, seqV, seqW)) {
+							if (!network.contains(median)) {
+								final var cost = network.computeConnectionCost(seqU, seqV, seqW, median);
+								candidates.merge(median, cost, Math::min);
 								if (cost < minConnectionCost)
 									minConnectionCost = cost;
 							}
 						}
 					}
-					progress.checkForCancel();
-				}
-			}
-			for (var e : feasibleLinks) {
-				var u = e.getSource();
-				var v = e.getTarget();
-				var seqU = (String) u.getInfo();
-				var seqV = (String) v.getInfo();
-				for (var f : feasibleLinks.successors(e)) {
-					Node w;
-					if (f.getSource() == u || f.getSource() == v)
-						w = f.getTarget();
-					else if (f.getTarget() == u || f.getTarget() == v)
-						w = f.getSource();
-					else
-						continue;
-					var seqW = (String) w.getInfo();
-					var qm = computeQuasiMedian(seqU, seqV, seqW);
-					for (var aQm : qm) {
-						if (!outputSequences.contains(aQm)) {
-							var cost = computeConnectionCost(seqU, seqV, seqW, aQm, weights);
-							if (cost <= minConnectionCost + epsilon) {
-								outputSequences.add(aQm);
-								changed = true;
-							}
-						}
-					}
 				}
 				progress.checkForCancel();
 			}
+
+			final var medians = new ArrayList<MedianNetwork.Haplotype>();
+			for (var entry : candidates.entrySet()) {
+				if (entry.getValue() <= minConnectionCost + epsilon)
+					medians.add(entry.getKey());
+			}
+			if (!medians.isEmpty()) {
+				network.add(medians);
+				changed = true;
+			}
 		}
 	}
 
 	/**
-	 * computes the minimum spanning network upto a tolerance of epsilon
+	 * the sequences of the median joining network, reduced to the variable sites and encoded as bytes, with the list
+	 * of all pairs of them sorted by distance
 	 */
-	private void computeMinimumSpanningNetwork(Set<String> sequences, double[] weights, int epsilon,
-											   PhyloGraph graph, EdgeSet feasibleLinks) {
-		var array = sequences.toArray(new String[0]);
-
-		// distances upper triangle + buckets
-		var matrix = new double[array.length][array.length];
-		var value2pairs = new TreeMap<Double, List<Pair<Integer, Integer>>>();
-
-		for (var i = 0; i < array.length; i++) {
-			for (var j = i + 1; j < array.length; j++) {
-				matrix[i][j] = computeDistance(array[i], array[j], weights);
-				var value = matrix[i][j];
-				var pairs = value2pairs.computeIfAbsent(value, k -> new LinkedList<>());
-				pairs.add(new Pair<>(i, j));
+	static class MedianNetwork {
+		/**
+		 * a sequence, encoded as one byte per variable site
+		 */
+		static final class Haplotype {
+			private final byte[] states;
+			private final int hash;
+
+			Haplotype(byte[] states) {
+				this.states = states;
+				this.hash = Arrays.hashCode(states);
+			}
+
+			@Override
+			public boolean equals(Object other) {
+				return other instanceof Haplotype that && hash == that.hash && Arrays.equals(states, that.states);
+			}
+
+			@Override
+			public int hashCode() {
+				return hash;
 			}
 		}
 
-		var nodes = new Node[array.length];
-		var compMSN = new int[array.length];             // components for the true MSN
-		var compThresh = new int[array.length];          // components for threshold graph (uses < (value - ε))
+		/**
+		 * a link of the minimum spanning network, between the sequences with ids a and b
+		 */
+		record Link(int a, int b, double distance) {
+		}
 
-		for (var i = 0; i < array.length; i++) {
-			nodes[i] = graph.newNode(array[i]);
-			graph.setLabel(nodes[i], array[i]);
-			compMSN[i] = i;
-			compThresh[i] = i;
+		private final String template; // the first input sequence, supplying the states of the invariable sites
+		private final int[] sites; // the variable sites
+		private final char[][] site2states; // the states at each variable site, indexed by code
+		private final double[] siteWeights;
+
+		private final Set<Haplotype> input = new HashSet<>();
+		private final Map<Haplotype, Integer> haplotype2id = new HashMap<>();
+		private final ArrayList<Haplotype> id2haplotype = new ArrayList<>(); // null for removed sequences
+		private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+
+		// all pairs of current sequences, sorted by distance
+		private int numberOfPairs = 0;
+		private double[] pairDistances = new double[0];
+		private int[] pairA = new int[0];
+		private int[] pairB = new int[0];
+
+		MedianNetwork(Collection<String> inputSequences, double[] weights) {
+			final var sequences = new ArrayList<>(inputSequences);
+			template = (sequences.isEmpty() ? "" : sequences.get(0));
+			final var siteList = new ArrayList<Integer>();
+			for (var i = 0; i < template.length(); i++) {
+				final var ch = template.charAt(i);
+				final var pos = i;
+				if (sequences.stream().anyMatch(s -> s.charAt(pos) != ch))
+					siteList.add(i);
+			}
+			sites = siteList.stream().mapToInt(Integer::intValue).toArray();
+			site2states = new char[sites.length][];
+			siteWeights = new double[sites.length];
+			for (var k = 0; k < sites.length; k++) {
+				final var pos = sites[k];
+				site2states[k] = sequences.stream().map(s -> s.charAt(pos)).distinct().sorted()
+						.map(String::valueOf).reduce("", String::concat).toCharArray();
+				siteWeights[k] = (weights != null ? weights[pos] : 1.0);
+			}
+			final var haplotypes = new ArrayList<Haplotype>();
+			for (var sequence : sequences) {
+				final var haplotype = encode(sequence);
+				input.add(haplotype);
+				haplotypes.add(haplotype);
+			}
+			add(haplotypes);
 		}
 
-		var numMSN = array.length;
-		var maxValue = Double.POSITIVE_INFINITY; // once MSN connected, allow edges up to this value (value+ε)
-
-		for (var value : value2pairs.keySet()) {
-			if (value > maxValue)
-				break;
-
-			// Update threshold components for all pairs strictly less than (value - ε)
-			for (var i = 0; i < array.length; i++) {
-				for (var j = i + 1; j < array.length; j++) {
-					if (compThresh[i] != compThresh[j] && matrix[i][j] < value - epsilon) {
-						var oldC = compThresh[i];
-						var newC = compThresh[j];
-						for (var k = 0; k < array.length; k++)
-							if (compThresh[k] == oldC)
-								compThresh[k] = newC;
-					}
-				}
+		private Haplotype encode(String sequence) {
+			final var states = new byte[sites.length];
+			for (var k = 0; k < sites.length; k++) {
+				final var ch = sequence.charAt(sites[k]);
+				var code = 0;
+				while (site2states[k][code] != ch)
+					code++;
+				states[k] = (byte) code;
 			}
+			return new Haplotype(states);
+		}
 
-			var ijPairs = value2pairs.get(value);
-
-			// First pass: decide feasible links (w.r.t. threshold graph) at this level
-			if (feasibleLinks != null) {
-				for (var ij : ijPairs) {
-					var i = ij.getFirst();
-					var j = ij.getSecond();
-					if (compThresh[i] != compThresh[j]) {
-						var e = graph.newEdge(nodes[i], nodes[j]);
-						graph.setWeight(e, matrix[i][j]);
-						feasibleLinks.add(e);
+		/**
+		 * gets the full sequence of a haplotype
+		 */
+		String decode(int id) {
+			final var buf = new StringBuilder(template);
+			final var states = id2haplotype.get(id).states;
+			for (var k = 0; k < sites.length; k++)
+				buf.setCharAt(sites[k], site2states[k][states[k]]);
+			return buf.toString();
+		}
+
+		Haplotype get(int id) {
+			return id2haplotype.get(id);
+		}
+
+		boolean contains(Haplotype haplotype) {
+			return haplotype2id.containsKey(haplotype);
+		}
+
+		int size() {
+			return haplotype2id.size();
+		}
+
+		/**
+		 * gets the ids of all current sequences
+		 */
+		List<Integer> getIds() {
+			return haplotype2id.values().stream().sorted().toList();
+		}
+
+		/**
+		 * adds sequences, computing their distances to all others and merging the new pairs into the sorted list of pairs
+		 */
+		void add(Collection<Haplotype> haplotypes) {
+			final var newIds = new ArrayList<Integer>();
+			for (var haplotype : haplotypes) {
+				if (!haplotype2id.containsKey(haplotype)) {
+					final int id;
+					if (!freeIds.isEmpty()) {
+						id = freeIds.poll();
+						id2haplotype.set(id, haplotype);
+					} else {
+						id = id2haplotype.size();
+						id2haplotype.add(haplotype);
 					}
+					haplotype2id.put(haplotype, id);
+					newIds.add(id);
 				}
 			}
-
-			// Second pass: actually add MSN edges:
-			for (var ij : ijPairs) {
-				var i = ij.getFirst();
-				var j = ij.getSecond();
-
-				// Before connected: only connect different components
-				if (numMSN > 1) {
-					if (compMSN[i] == compMSN[j]) continue; // skip intra-component edge
-					var e = graph.newEdge(nodes[i], nodes[j]);
-					graph.setWeight(e, matrix[i][j]);
-
-					// union
-					var oldC = compMSN[i];
-					var newC = compMSN[j];
-					for (var k = 0; k < array.length; k++)
-						if (compMSN[k] == oldC)
-							compMSN[k] = newC;
-
-					numMSN--;
-					if (numMSN == 1 && maxValue == Double.POSITIVE_INFINITY) {
-						maxValue = value + epsilon; // once connected, allow extra edges up to value+ε
+			final var isNew = new BitSet();
+			newIds.forEach(isNew::set);
+			var count = 0;
+			var newPairDistances = new double[16];
+			var newPairA = new int[16];
+			var newPairB = new int[16];
+			for (var a : newIds) {
+				for (var b : haplotype2id.values()) {
+					if (a != b && (!isNew.get(b) || a < b)) {
+						final var distance = computeDistance(id2haplotype.get(a), id2haplotype.get(b));
+						if (count == newPairA.length) {
+							newPairDistances = Arrays.copyOf(newPairDistances, 2 * count);
+							newPairA = Arrays.copyOf(newPairA, 2 * count);
+							newPairB = Arrays.copyOf(newPairB, 2 * count);
+						}
+						newPairDistances[count] = distance;
+						newPairA[count] = Math.min(a, b);
+						newPairB[count] = Math.max(a, b);
+						count++;
 					}
 				}
-				// After connected: allow extra edges whose length is within ε of the connection level
-				else if (value <= maxValue) {
-					var e = graph.newEdge(nodes[i], nodes[j]);
-					graph.setWeight(e, matrix[i][j]);
+			}
+			final var order = sortByDistance(newPairDistances, count);
+
+			// merge the new pairs into the list, dropping pairs of removed sequences
+			final var total = numberOfPairs + count;
+			final var mergedDistances = new double[total];
+			final var mergedA = new int[total];
+			final var mergedB = new int[total];
+			var size = 0;
+			var i = 0;
+			var j = 0;
+			while (i < numberOfPairs || j < count) {
+				if (j == count || (i < numberOfPairs && pairDistances[i] <= newPairDistances[order[j]])) {
+					if (id2haplotype.get(pairA[i]) != null && id2haplotype.get(pairB[i]) != null && !isNew.get(pairA[i]) && !isNew.get(pairB[i])) {
+						mergedDistances[size] = pairDistances[i];
+						mergedA[size] = pairA[i];
+						mergedB[size] = pairB[i];
+						size++;
+					}
+					i++;
+				} else {
+					mergedDistances[size] = newPairDistances[order[j]];
+					mergedA[size] = newPairA[order[j]];
+					mergedB[size] = newPairB[order[j]];
+					size++;
+					j++;
 				}
 			}
+			numberOfPairs = size;
+			pairDistances = mergedDistances;
+			pairA = mergedA;
+			pairB = mergedB;
 		}
-	}
 
-	/**
-	 * determine whether v and target are connected by a chain of edges all of weight-threshold. Use for debugging
-	 *
-	 * @return true, if connected
-	 */
-	private boolean areConnected(PhyloGraph graph, Node v, Node target, NodeSet visited, double threshold) {
-		if (v == target)
-			return true;
+		private static int[] sortByDistance(double[] values, int count) {
+			final var order = new Integer[count];
+			for (var i = 0; i < count; i++)
+				order[i] = i;
+			Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+			return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+		}
 
-		if (!visited.contains(v)) {
-			visited.add(v);
+		/**
+		 * removes a sequence. Its pairs are dropped from the sorted list when next sequences are added
+		 */
+		void remove(int id) {
+			haplotype2id.remove(id2haplotype.get(id));
+			id2haplotype.set(id, null);
+			freeIds.add(id);
+		}
 
-			for (var e : v.adjacentEdges()) {
-				if (graph.getWeight(e) < threshold) {
-					var w = e.getOpposite(v);
-					if (areConnected(graph, w, target, visited, threshold))
-						return true;
+		/**
+		 * computes the links of the minimum spanning network up to a tolerance of epsilon that are feasible, that is,
+		 * that join two sequences that are not joined by a path of links that are all shorter by more than epsilon
+		 */
+		List<Link> computeFeasibleLinks(int epsilon) {
+			final var compMSN = new UnionFind(id2haplotype.size()); // components for the true MSN
+			final var compThresh = new UnionFind(id2haplotype.size()); // components for threshold graph (uses < (value - ε))
+			var numMSN = haplotype2id.size();
+			var maxValue = Double.POSITIVE_INFINITY; // once MSN connected, allow edges up to this value (value+ε)
+
+			final var links = new ArrayList<Link>();
+			var threshold = 0; // pairs before this have been added to the threshold graph
+			for (var start = 0; start < numberOfPairs; ) {
+				final var value = pairDistances[start];
+				if (value > maxValue)
+					break;
+				var end = start;
+				while (end < numberOfPairs && pairDistances[end] == value)
+					end++;
+
+				// Update threshold components for all pairs strictly less than (value - ε)
+				for (; threshold < numberOfPairs && pairDistances[threshold] < value - epsilon; threshold++) {
+					if (isCurrent(threshold))
+						compThresh.union(pairA[threshold], pairB[threshold]);
+				}
+				// decide feasible links (w.r.t. threshold graph) at this level
+				for (var p = start; p < end; p++) {
+					if (isCurrent(p) && compThresh.find(pairA[p]) != compThresh.find(pairB[p]))
+						links.add(new Link(pairA[p], pairB[p], value));
+				}
+				// connect the MSN components
+				for (var p = start; p < end && numMSN > 1; p++) {
+					if (isCurrent(p) && compMSN.union(pairA[p], pairB[p])) {
+						numMSN--;
+						if (numMSN == 1)
+							maxValue = value + epsilon;
+					}
 				}
+				start = end;
 			}
+			return links;
 		}
-		return false;
-	}
 
-	private boolean removeObsoleteNodes(PhyloGraph graph, Set<String> input, Set<String> sequences, EdgeSet feasibleLinks) {
-		var removed = 0;
-		var changed = true;
-		while (changed) {
-			changed = false;
-			var toDelete = new ArrayList<Node>();
-
-			for (var v : graph.nodes()) {
-				var seqV = (String) v.getInfo();
-				if (!input.contains(seqV)) {
-					var count = 0;
-					for (var e = v.getFirstAdjacentEdge(); count <= 2 && e != null; e = v.getNextAdjacentEdge(e)) {
-						// graph is already pruned to feasible links
-						count++;
-					}
-					if (count <= 2)
-						toDelete.add(v);
+		private boolean isCurrent(int pair) {
+			return id2haplotype.get(pairA[pair]) != null && id2haplotype.get(pairB[pair]) != null;
+		}
+
+		/**
+		 * repeatedly removes all median vectors that are joined to at most two others by the given links, and the links
+		 * to them
+		 *
+		 * @return true, if some sequence was removed
+		 */
+		boolean removeObsoleteNodes(List<Link> links) {
+			var removed = false;
+			var changed = true;
+			while (changed) {
+				changed = false;
+				final var degree = new int[id2haplotype.size()];
+				for (var link : links) {
+					degree[link.a()]++;
+					degree[link.b()]++;
 				}
-			}
-			if (!toDelete.isEmpty()) {
-				changed = true;
-				removed += toDelete.size();
-				for (var v : toDelete) {
-					sequences.remove((String) v.getInfo());
-					graph.deleteNode(v);
+				final var toDelete = new BitSet();
+				for (var id : haplotype2id.values()) {
+					if (!input.contains(id2haplotype.get(id)) && degree[id] <= 2)
+						toDelete.set(id);
+				}
+				if (!toDelete.isEmpty()) {
+					changed = removed = true;
+					toDelete.stream().forEach(this::remove);
+					links.removeIf(link -> toDelete.get(link.a()) || toDelete.get(link.b()));
 				}
 			}
+			return removed;
 		}
-		return removed > 0;
-	}
 
-	/**
-	 * compute the cost of connecting seqM to the other three sequences
-	 *
-	 * @return cost
-	 */
-	private double computeConnectionCost(String seqU, String seqV, String seqW, String seqM, double[] weights) {
-		return computeDistance(seqU, seqM, weights) + computeDistance(seqV, seqM, weights) + computeDistance(seqW, seqM, weights);
-	}
+		/**
+		 * compute weighted distance between two sequences
+		 *
+		 * @return distance
+		 */
+		double computeDistance(Haplotype a, Haplotype b) {
+			var cost = 0.0;
+			for (var k = 0; k < sites.length; k++) {
+				if (a.states[k] != b.states[k])
+					cost += siteWeights[k];
+			}
+			return cost;
+		}
 
-	/**
-	 * compute weighted distance between two sequences
-	 *
-	 * @return distance
-	 */
-	private double computeDistance(String seqA, String seqB, double[] weights) {
-		double cost = 0;
-		for (int i = 0; i < seqA.length(); i++) {
-			if (seqA.charAt(i) != seqB.charAt(i))
-				if (weights != null)
-					cost += weights[i];
+		/**
+		 * compute the cost of connecting m to the other three sequences
+		 *
+		 * @return cost
+		 */
+		double computeConnectionCost(Haplotype u, Haplotype v, Haplotype w, Haplotype m) {
+			return computeDistance(u, m) + computeDistance(v, m) + computeDistance(w, m);
+		}
+
+		/**
+		 * computes the quasi median for three sequences: at each site, the majority state, or, if all three
+		 * differ, each of the three states
+		 *
+		 * @return quasi median
+		 */
+		Collection<Haplotype> computeQuasiMedian(Haplotype a, Haplotype b, Haplotype c) {
+			final var median = new byte[sites.length];
+			final var stars = new ArrayList<Integer>();
+			for (var k = 0; k < sites.length; k++) {
+				if (a.states[k] == b.states[k] || a.states[k] == c.states[k])
+					median[k] = a.states[k];
+				else if (b.states[k] == c.states[k])
+					median[k] = b.states[k];
 				else
-					cost++;
+					stars.add(k);
+			}
+			if (stars.isEmpty())
+				return List.of(new Haplotype(median));
+
+			var list = List.of(median);
+			for (var k : stars) {
+				final var next = new ArrayList<byte[]>(3 * list.size());
+				for (var states : list) {
+					for (var choice : new byte[]{a.states[k], b.states[k], c.states[k]}) {
+						final var copy = states.clone();
+						copy[k] = choice;
+						next.add(copy);
+					}
+				}
+				list = next;
+			}
+			final var result = new HashSet<Haplotype>();
+			for (var states : list)
+				result.add(new Haplotype(states));
+			return result;
 		}
-		return cost;
 	}
 
-
 	/**
-	 * computes the quasi median for three sequences
-	 *
-	 * @return quasi median
+	 * union-find with path halving
 	 */
-	private String[] computeQuasiMedian(String seqA, String seqB, String seqC) {
-		var buf = new StringBuilder();
-		var hasStar = false;
-		for (var i = 0; i < seqA.length(); i++) {
-			if (seqA.charAt(i) == seqB.charAt(i) || seqA.charAt(i) == seqC.charAt(i))
-				buf.append(seqA.charAt(i));
-			else if (seqB.charAt(i) == seqC.charAt(i))
-				buf.append(seqB.charAt(i));
-			else {
-				buf.append("*");
-				hasStar = true;
-			}
+	private static class UnionFind {
+		private final int[] parent;
+
+		UnionFind(int size) {
+			parent = new int[size];
+			for (var i = 0; i < size; i++)
+				parent[i] = i;
 		}
-		if (!hasStar)
-			return new String[]{buf.toString()};
-
-		var median = new HashSet<String>();
-		var stack = new Stack<String>();
-		stack.add(buf.toString());
-		while (!stack.empty()) {
-			var seq = stack.pop();
-			var pos = seq.indexOf('*');
-			var pos2 = seq.indexOf('*', pos + 1);
-			var first = seq.substring(0, pos) + seqA.charAt(pos) + seq.substring(pos + 1);
-			var second = seq.substring(0, pos) + seqB.charAt(pos) + seq.substring(pos + 1);
-			var third = seq.substring(0, pos) + seqC.charAt(pos) + seq.substring(pos + 1);
-			if (pos2 == -1) {
-				median.add(first);
-				median.add(second);
-				median.add(third);
-			} else {
-				stack.add(first);
-				stack.add(second);
-				stack.add(third);
+
+		int find(int i) {
+			while (parent[i] != i) {
+				parent[i] = parent[parent[i]];
+				i = parent[i];
 			}
+			return i;
+		}
+
+		/**
+		 * @return true, if the two were in different sets
+		 */
+		boolean union(int i, int j) {
+			final var a = find(i);
+			final var b = find(j);
+			if (a == b)
+				return false;
+			parent[a] = b;
+			return true;
 		}
-		return median.toArray(new String[0]);
 	}
 
 	public int getOptionEpsilon() {
@@ -42,12 +42,18 @@
 public class PhiTest extends AnalyzeCharactersBase {
 
 	final static int WINDOWSIZE = 100;
+	/**
+	 * maximum number of distinct informative patterns for which pair scores are memoized
+	 */
+	final static int MAX_MEMOIZED_PATTERNS = 4096;
 
 	private int num_inform;
 	private int ntax;
 	private int[] nstates;
 	private char[][] alignment;
 	private int[] sitePositions;
+	private int[] sitePattern; // for each informative site, the informative pattern that it shows
+	private int[] pairScores; // memoized scores of pairs of informative patterns, triangular, -1 if not computed yet
 	private char missing;
 
 	@Override
@@ -88,7 +94,22 @@ public static class node {
 		public node next;
 	}
 
+	/**
+	 * gets the incompatibility score of two informative sites. This depends only on the patterns that the two sites
+	 * show, so it is computed once per pair of patterns, if there are not too many of them
+	 */
 	private int pair_score(int char_a, int char_b) {
+		if (pairScores == null)
+			return compute_pair_score(char_a, char_b);
+		var a = Math.min(sitePattern[char_a], sitePattern[char_b]);
+		var b = Math.max(sitePattern[char_a], sitePattern[char_b]);
+		var index = (int) ((long) b * (b + 1) / 2 + a);
+		if (pairScores[index] == -1)
+			pairScores[index] = compute_pair_score(char_a, char_b);
+		return pairScores[index];
+	}
+
+	private int compute_pair_score(int char_a, int char_b) {
 		/* Keep both list & matrix - one for quick adding, other for quick DFS */
 		node[] adjacency_list;
 		boolean[][] adjacency_matrix;
@@ -230,7 +251,7 @@ private int pair_score(int char_a, int char_b) {
 	 * where nstates is the number of symbols in the Format block of the characters block.
 	 * <p/>
 	 * For each site i in the resulting alignment, sitePositions[i] is the corresponding site
-	 * in the original alignment
+	 * in the original alignment. Sites that show the same pattern share their row, which is computed only once
 	 */
 	private void get_sorted_alignment(ProgressListener progress, CharactersBlock characters) throws CanceledException {
 
@@ -247,19 +268,25 @@ private void get_sorted_alignment(ProgressListener progress, CharactersBlock cha
 		this.alignment = new char[nchar][];
 		this.nstates = new int[nchar];
 
-		int charCount = 0;
-		int appearsTwice;
-		boolean informative;
+		var sitePatterns = characters.getSitePatterns();
+		var patterns = sitePatterns.getCompressedCharacters();
+		var npatterns = sitePatterns.getNumberOfPatterns();
 
-		for (int j = 1; j <= nchar; j++) {
+		// recode each pattern once, the sites keep their order, as this matters for the window
+		var patternSite = new char[npatterns][];
+		var patternStates = new int[npatterns];
+		var informativePattern = new int[npatterns]; // the number of the pattern among the informative ones, or -1
+		var numInformativePatterns = 0;
+
+		for (int p = 0; p < npatterns; p++) {
 			//Form a table of states in this character - array mapping states to ids.
 			char[] thisSite = new char[ntax];
 			Arrays.fill(symbol_map, unassigned);
-			informative = false;
+			boolean informative = false;
 			int numassigned = 0;
-			appearsTwice = -1;
-			for (int i = 1; i <= ntax; i++) {
-				int state = symbols.lastIndexOf(characters.get(i, j));
+			int appearsTwice = -1;
+			for (int i = 0; i < ntax; i++) {
+				int state = symbols.lastIndexOf(patterns.getRow0ReadOnly(i)[p]);
 				int index = -1;
 				if (state >= 0) {
 					index = symbol_map[state];
@@ -274,19 +301,34 @@ else if (!informative && state != appearsTwice)
 					}
 				}
 				if (index >= 0)
-					thisSite[i - 1] = (char) index;
+					thisSite[i] = (char) index;
 				else
-					thisSite[i - 1] = missing;
+					thisSite[i] = missing;
 			}
+			patternSite[p] = thisSite;
+			patternStates[p] = numassigned;
 			//Check if informative or not
-			if (informative || !true) {
-				this.nstates[charCount] = numassigned;
-				this.alignment[charCount] = thisSite;
+			informativePattern[p] = (informative ? numInformativePatterns++ : -1);
+			progress.checkForCancel();
+		}
+
+		this.sitePattern = new int[nchar];
+		int charCount = 0;
+		for (int j = 1; j <= nchar; j++) {
+			var p = sitePatterns.getPattern(j - 1);
+			if (informativePattern[p] >= 0) {
+				this.nstates[charCount] = patternStates[p];
+				this.alignment[charCount] = patternSite[p];
+				this.sitePattern[charCount] = informativePattern[p];
 				sitePositions[charCount] = j;
 				charCount++;
 			}
-			progress.checkForCancel();
 		}
+		if (numInformativePatterns <= MAX_MEMOIZED_PATTERNS) {
+			this.pairScores = new int[numInformativePatterns * (numInformativePatterns + 1) / 2];
+			Arrays.fill(this.pairScores, -1);
+		} else
+			this.pairScores = null;
 		System.err.println("Found " + charCount + " informative sites");
 
 		this.num_inform = charCount;
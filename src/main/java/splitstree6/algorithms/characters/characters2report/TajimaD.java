@@ -70,7 +70,7 @@ public String getShortDescription() {
 
 	@Override
 	String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, CharactersBlock charactersBlock, Collection<Taxon> selectedTaxa) throws CanceledException {
-		char[][] alignment = charactersBlock.getMatrix();
+		char[][] alignment = charactersBlock.getMatrixReadOnly();
 		var n = alignment.length;
 		var length = alignment[0].length;
 
@@ -110,7 +110,7 @@ String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, CharactersBlo
 		var variance = e1 * S + e2 * S * (S - 1);
 
 		var wattersonEstimator = S / a1;
-		var piEstimator = calculatePiEstimator(charactersBlock.getMatrix());
+		var piEstimator = calculatePiEstimator(charactersBlock.getMatrixReadOnly());
 
 		var D = (piEstimator - wattersonEstimator) / Math.sqrt(variance);
 
@@ -22,6 +22,7 @@
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.utils.SplitsBlockUtilities;
 import splitstree6.data.CharactersBlock;
 import splitstree6.data.SplitsBlock;
@@ -38,7 +39,7 @@
  * p-splits method
  * Daniel Huson, 2003
  */
-public class ParsimonySplits extends Characters2Splits {
+public class ParsimonySplits extends Characters2Splits implements IUsesSitePatterns {
 	private final BooleanProperty optionGapsAsMissing = new SimpleBooleanProperty(this, "optionGapsAsMissing", false);
 
 	@Override
@@ -69,6 +70,12 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 		progress.setMaximum(taxaBlock.getNtax());
 		progress.setProgress(0);
 
+		// the score of a quartet is a sum over sites, so each distinct site pattern is scored once and counted as
+		// often as it occurs
+		final var sitePatterns = chars.getSitePatterns();
+		final var patterns = new Patterns(recodeAmbiguityCodes(sitePatterns.getCompressedCharacters()), sitePatterns.getMultiplicities(),
+				chars.getMissingCharacter(), chars.getGapCharacter());
+
 		for (var t = 1; t <= taxaBlock.getNtax(); t++) {
 			// initally, just add 1 to set of previous taxa
 			if (t == 1) {
@@ -81,7 +88,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 
 			//System.err.println("wgt1 stuff: t=" + t + " AT=" + At);
 			{
-				final var wgt = pIndex(optionGapsAsMissing.getValue(), t, At, chars);
+				final var wgt = pIndex(optionGapsAsMissing.getValue(), t, At, patterns);
 				//System.err.println("wgt1: " + wgt);
 				if (wgt > 0) {
 					currentSplits.add(new ASplit(At, t, wgt));
@@ -95,7 +102,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 				// is Au{t} vs B a split?
 				A.set(t);
 				{
-					final int wgt = Math.min((int) prevSplit.getWeight(), pIndex(optionGapsAsMissing.getValue(), t, A, chars));
+					final int wgt = Math.min((int) prevSplit.getWeight(), pIndex(optionGapsAsMissing.getValue(), t, A, patterns));
 					//System.err.println("wgt2: "+wgt);
 					if (wgt > 0) {
 						currentSplits.add(new ASplit(A, t, wgt));
@@ -106,7 +113,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 				// is A vs Bu{t} a split?
 				B.set(t);
 				{
-					final var wgt = Math.min((int) prevSplit.getWeight(), pIndex(optionGapsAsMissing.getValue(), t, B, chars));
+					final var wgt = Math.min((int) prevSplit.getWeight(), pIndex(optionGapsAsMissing.getValue(), t, B, patterns));
 					//System.err.println("wgt3: "+wgt);
 					if (wgt > 0)
 						currentSplits.add(new ASplit(B, t, wgt));
@@ -136,7 +143,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, CharactersBl
 	/**
 	 * Computes the p-index of a split:
 	 */
-	private int pIndex(boolean gapsAsMissing, int t, BitSet A, CharactersBlock characters) {
+	private int pIndex(boolean gapsAsMissing, int t, BitSet A, Patterns patterns) {
 		var value = Integer.MAX_VALUE;
 
 		if (!A.get(t)) // a1==t
@@ -148,7 +155,7 @@ private int pIndex(boolean gapsAsMissing, int t, BitSet A, CharactersBlock chara
 					if (!A.get(b1))
 						for (var b2 = b1; b2 <= t; b2++) {
 							if (!A.get(b2)) {
-								var val_a1a2b1b2 = pScore(gapsAsMissing, t, a2, b1, b2, characters);
+								var val_a1a2b1b2 = pScore(gapsAsMissing, t, a2, b1, b2, patterns);
 								//System.err.println(" a1, a2, b1, b2 = "+ a1+"; "+ a2+"; " +b1+"; "+ b2);
 								if (val_a1a2b1b2 != 0)
 									value = Math.min(value, val_a1a2b1b2);
@@ -162,43 +169,59 @@ private int pIndex(boolean gapsAsMissing, int t, BitSet A, CharactersBlock chara
 	}
 
 	/**
-	 * Computes the parsimony-score for the four given taxa:
+	 * the distinct site patterns, as rows, and the number of sites showing each
 	 */
-	private int pScore(boolean gapMissingMode, int a1, int a2, int b1, int b2, CharactersBlock characters) {
-		final char missingChar = characters.getMissingCharacter();
-		final char gapChar = characters.getGapCharacter();
-		final int nchar = characters.getNchar();
+	private record Patterns(char[][] rows, int[] multiplicities, char missingChar, char gapChar) {
+	}
 
-		int a1a2_b1b2 = 0, a1b1_a2b2 = 0, a1b2_a2b1 = 0;
-		for (int pos = 1; pos <= nchar; pos++) {
-			char c_a1 = characters.get(a1, pos);
-			char c_a2 = characters.get(a2, pos);
-			char c_b1 = characters.get(b1, pos);
-			char c_b2 = characters.get(b2, pos);
-			// ambiguity characters are treated as gaps:
+	/**
+	 * copies the rows, replacing nucleotide ambiguity characters by the gap character, as these are treated as gaps
+	 */
+	private static char[][] recodeAmbiguityCodes(CharactersBlock characters) {
+		final var rows = new char[characters.getNtax()][];
+		for (var t = 0; t < rows.length; t++) {
+			rows[t] = characters.getRow0ReadOnly(t).clone();
 			if (characters.getDataType().isNucleotides()) {
-				if (AmbiguityCodes.isAmbiguityCode(c_a1))
-					c_a1 = gapChar;
-				if (AmbiguityCodes.isAmbiguityCode(c_a2))
-					c_a2 = gapChar;
-				if (AmbiguityCodes.isAmbiguityCode(c_b1))
-					c_b1 = gapChar;
-				if (AmbiguityCodes.isAmbiguityCode(c_b2))
-					c_b2 = gapChar;
+				for (var pos = 0; pos < rows[t].length; pos++) {
+					if (AmbiguityCodes.isAmbiguityCode(rows[t][pos]))
+						rows[t][pos] = characters.getGapCharacter();
+				}
 			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Computes the parsimony-score for the four given taxa:
+	 */
+	private int pScore(boolean gapMissingMode, int a1, int a2, int b1, int b2, Patterns patterns) {
+		final char missingChar = patterns.missingChar();
+		final char gapChar = patterns.gapChar();
+		final char[] row_a1 = patterns.rows()[a1 - 1];
+		final char[] row_a2 = patterns.rows()[a2 - 1];
+		final char[] row_b1 = patterns.rows()[b1 - 1];
+		final char[] row_b2 = patterns.rows()[b2 - 1];
+		final int[] multiplicities = patterns.multiplicities();
+
+		int a1a2_b1b2 = 0, a1b1_a2b2 = 0, a1b2_a2b1 = 0;
+		for (int pos = 0; pos < multiplicities.length; pos++) {
+			char c_a1 = row_a1[pos];
+			char c_a2 = row_a2[pos];
+			char c_b1 = row_b1[pos];
+			char c_b2 = row_b2[pos];
 
 			if (c_a1 == missingChar || c_a2 == missingChar || c_b1 == missingChar || c_b2 == missingChar)
 				continue;
 			if (gapMissingMode && (c_a1 == gapChar || c_a2 == gapChar || c_b1 == gapChar || c_b2 == gapChar))
 				continue;
 			if (c_a1 == c_a2 && c_b1 == c_b2) {
-				a1a2_b1b2++;
+				a1a2_b1b2 += multiplicities[pos];
 				//System.err.println("CHARS: "+c_a1+c_a2+c_b1+c_b2);
 			}
 			if (c_a1 == c_b1 && c_a2 == c_b2)
-				a1b1_a2b2++;
+				a1b1_a2b2 += multiplicities[pos];
 			if (c_a1 == c_b2 && c_a2 == c_b1)
-				a1b2_a2b1++;
+				a1b2_a2b1 += multiplicities[pos];
 		}
 		final int min_val = Math.min(a1b1_a2b2, a1b2_a2b1);
 		//System.err.println("min_val: " + min_val);
@@ -40,19 +40,11 @@ public void filter(ProgressListener progress, TaxaBlock originalTaxaBlock, TaxaB
 			setShortDescription("using all " + modifiedTaxaBlock.size() + " taxa");
 
 		} else {
-			progress.setMaximum(modifiedTaxaBlock.getNtax());
-			outputData.setNtax(modifiedTaxaBlock.getNtax());
-
-			for (Taxon a : modifiedTaxaBlock.getTaxa()) {
-				final int originalI = originalTaxaBlock.indexOf(a);
-				final int modifiedI = modifiedTaxaBlock.indexOf(a);
-				for (Taxon b : modifiedTaxaBlock.getTaxa()) {
-					final int originalJ = originalTaxaBlock.indexOf(b);
-					final int modifiedJ = modifiedTaxaBlock.indexOf(b);
-					outputData.set(modifiedI, modifiedJ, inputData.get(originalI, originalJ));
-				}
-				progress.incrementProgress();
-			}
+			// the distances are shared, not copied, see DistancesBlock.copy(DistancesBlock,int[])
+			final var taxa = new int[modifiedTaxaBlock.getNtax()]; // original index of each modified taxon
+			for (Taxon a : modifiedTaxaBlock.getTaxa())
+				taxa[modifiedTaxaBlock.indexOf(a) - 1] = originalTaxaBlock.indexOf(a);
+			outputData.copy(inputData, taxa);
 			setShortDescription("using " + modifiedTaxaBlock.size() + " of " + originalTaxaBlock.size() + " taxa");
 		}
 	}
@@ -39,11 +39,16 @@
  * Daniel Huson, 9.2025
  */
 public class CheckPairwiseDistances {
-	public static void apply(PhyloGraph graph, DistancesBlock distancesBlock, double epsilon) {
-		apply(graph, distancesBlock.getDistances(), epsilon);
+	public static void apply(PhyloGraph graph, double[][] D, double epsilon) {
+		final var distancesBlock = new DistancesBlock();
+		distancesBlock.set(D);
+		apply(graph, distancesBlock, epsilon);
 	}
 
-	public static void apply(PhyloGraph graph, double[][] D, double epsilon) {
+	/**
+	 * the distances are read row by row, so this works for all storage types of the block
+	 */
+	public static void apply(PhyloGraph graph, DistancesBlock distancesBlock, double epsilon) {
 		System.err.println("Checking pairwise distances on graph (" + graph.getNumberOfNodes() + " nodes, " + graph.getNumberOfEdges() + " edges):");
 		var taxonNodePairs = graph.nodeStream().filter(graph::hasTaxa)
 				.map(v -> new Pair<>(graph.getTaxon(v), v)).toList();
@@ -51,13 +56,15 @@ public static void apply(PhyloGraph graph, double[][] D, double epsilon) {
 		var totalDifference = 0.0;
 		var totalInput = 0.0;
 		var totalOutput = 0.0;
+		var row = new double[distancesBlock.getNtax()];
 		for (var i = 0; i < taxonNodePairs.size(); i++) {
 			var a = taxonNodePairs.get(i);
+			distancesBlock.getRow(a.getKey(), row, 0);
 			// ONE shortest-path solve per row, not one per pair: see graphDistances
 			var distanceFromA = graphDistances(graph, a.getValue());
 			for (var j = i + 1; j < taxonNodePairs.size(); j++) {
 				var b = taxonNodePairs.get(j);
-				var inputDistance = D[a.getKey() - 1][b.getKey() - 1];
+				var inputDistance = row[b.getKey() - 1];
 				totalInput += inputDistance;
 				var outputDistance = distanceFromA.get(b.getValue());
 				if (Double.isInfinite(outputDistance))
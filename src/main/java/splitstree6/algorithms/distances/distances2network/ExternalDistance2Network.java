@@ -116,10 +116,12 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 		outputFile.deleteOnExit();
 
 		{
-			var distances = distancesBlock.getDistances();
+			var ntax = distancesBlock.getNtax();
+			var row = new double[ntax];
 			try (var w = new FileWriter(inputFile)) {
-				w.write(distances.length + "\n");
-				for (var row : distances) {
+				w.write(ntax + "\n");
+				for (var i = 1; i <= ntax; i++) {
+					distancesBlock.getRow(i, row, 0);
 					var first = true;
 					for (var val : row) {
 						if (first)
@@ -174,7 +176,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 		if (charactersBlock != null) {
 			graph.nodeStream().filter(v -> graph.getNumberOfTaxa(v) == 1).forEach(v -> {
 				var row = graph.getTaxon(v) - 1;
-				var sequence = String.valueOf(charactersBlock.getRow0(row));
+				var sequence = String.valueOf(charactersBlock.getRow0ReadOnly(row));
 				networkBlock.getNodeData(v).put(NetworkBlock.NODE_STATES_KEY, sequence);
 			});
 
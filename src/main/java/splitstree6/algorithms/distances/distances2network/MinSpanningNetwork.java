@@ -166,7 +166,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 		if (charactersBlock != null) {
 			graph.nodeStream().filter(v -> graph.getNumberOfTaxa(v) == 1).forEach(v -> {
 				var row = graph.getTaxon(v) - 1;
-				var sequence = String.valueOf(charactersBlock.getRow0(row));
+				var sequence = String.valueOf(charactersBlock.getRow0ReadOnly(row));
 				networkBlock.getNodeData(v).put(NetworkBlock.NODE_STATES_KEY, sequence);
 			});
 
@@ -26,6 +26,7 @@
 import splitstree6.algorithms.distances.distances2splits.neighbornet.NeighborNetCycleSplitsTree4;
 import splitstree6.algorithms.distances.distances2splits.neighbornet.NeighborNetSplitWeightOptimizerSplitsTree4;
 import splitstree6.algorithms.distances.distances2splits.neighbornet.NeighborNetSplitWeightsClean;
+import splitstree6.algorithms.distances.distances2splits.neighbornet.NeighborNetSplitWeights_MultiThreaded;
 import splitstree6.algorithms.splits.IToCircularSplits;
 import splitstree6.algorithms.utils.SplitsBlockUtilities;
 import splitstree6.data.DistancesBlock;
@@ -43,7 +44,7 @@
 
 public class NeighborNet extends Distances2Splits implements IToCircularSplits {
 
-	public enum InferenceAlgorithm {GradientProjection, ActiveSet, APGD, SplitsTree4}
+	public enum InferenceAlgorithm {GradientProjection, ActiveSet, ActiveSetParallel, APGD, SplitsTree4}
 
 	public enum CircularOrderingAlgorithm {SplitsTree4, BryantHuson2023}
 
@@ -62,7 +63,7 @@ public String getToolTip(String optionName) {
 		if (!optionName.startsWith("option"))
 			optionName = "option" + optionName;
 		if (optionInferenceAlgorithm.getName().equals(optionName))
-			return "the inference algorithm to be used";
+			return "the inference algorithm to be used, ActiveSetParallel uses all available cores";
 		else return super.getToolTip(optionName);
 	}
 
@@ -90,7 +91,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 
 		var cycle = switch (getOptionCircularOrdering()) {
 			case SplitsTree4 ->
-					NeighborNetCycleSplitsTree4.compute(distancesBlock.size(), distancesBlock.getDistances());
+					NeighborNetCycleSplitsTree4.compute(distancesBlock);
 			case BryantHuson2023 -> NeighborNetCycle2023.computeOrdering(distancesBlock);
 		};
 
@@ -125,7 +126,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 		var params = new NeighborNetSplitWeightsClean.NNLSParams();
 		params.activeCleanup = getOptionActiveCleanup();
 
-		if (getOptionInferenceAlgorithm() == InferenceAlgorithm.ActiveSet)
+		if (getOptionInferenceAlgorithm() == InferenceAlgorithm.ActiveSet || getOptionInferenceAlgorithm() == InferenceAlgorithm.ActiveSetParallel)
 			params.method = NeighborNetSplitWeightsClean.NNLSParams.MethodTypes.ACTIVESET;
 		else if (getOptionInferenceAlgorithm() == InferenceAlgorithm.APGD)
 			params.method = NeighborNetSplitWeightsClean.NNLSParams.MethodTypes.APGD;
@@ -137,9 +138,10 @@ else if (getOptionInferenceAlgorithm() == InferenceAlgorithm.GradientProjection)
 			params.method = NeighborNetSplitWeightsClean.NNLSParams.MethodTypes.SPLITSTREE4;
 
 		ArrayList<ASplit> splits;
-		if (getOptionInferenceAlgorithm() != InferenceAlgorithm.SplitsTree4) {
-			//splits = NeighborNetSplitWeightsClean.compute(cycle, distancesBlock.getDistances(), params, progress);
-			splits = NeighborNetSplitWeightsClean.compute(cycle, distancesBlock.getDistances(), params, progress);
+		if (getOptionInferenceAlgorithm() == InferenceAlgorithm.ActiveSetParallel) {
+			splits = NeighborNetSplitWeights_MultiThreaded.compute(cycle, distancesBlock, params, progress);
+		} else if (getOptionInferenceAlgorithm() != InferenceAlgorithm.SplitsTree4) {
+			splits = NeighborNetSplitWeightsClean.compute(cycle, distancesBlock, params, progress);
 //			System.err.println("OLD");
 //			for(int i=0;i<splits.size();i++)
 //				System.err.println(splits.get(i));
@@ -157,7 +159,7 @@ else if (getOptionInferenceAlgorithm() == InferenceAlgorithm.GradientProjection)
 		else
 			splitsBlock.setCompatibility(Compatibility.circular);
 		splitsBlock.setCycle(cycle);
-		splitsBlock.setFit(SplitsBlockUtilities.computeLeastSquaresFit(distancesBlock, splits));
+		splitsBlock.setFit(SplitsBlockUtilities.computeLeastSquaresFit(distancesBlock, cycle, splits));
 
 		splitsBlock.getSplits().addAll(splits);
 
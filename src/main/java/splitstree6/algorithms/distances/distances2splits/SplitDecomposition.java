@@ -121,8 +121,8 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, DistancesBlo
 		// copy splits to splits
 		splitsBlock.getSplits().addAll(previousSplits);
 
-		splitsBlock.setFit(SplitsBlockUtilities.computeSplitDecompositionFit(distancesBlock, splitsBlock.getSplits()));
 		splitsBlock.setCycle(SplitsBlockUtilities.computeCycle(taxaBlock.getNtax(), splitsBlock.getSplits()));
+		splitsBlock.setFit(SplitsBlockUtilities.computeSplitDecompositionFit(distancesBlock, splitsBlock.getCycle(), splitsBlock.getSplits()));
 		splitsBlock.setCompatibility(Compatibility.compute(taxaBlock.getNtax(), splitsBlock.getSplits(), splitsBlock.getCycle()));
 
 		progress.setProgress(taxaBlock.getNtax());   //set progress to 100%
@@ -19,6 +19,8 @@
 
 package splitstree6.algorithms.distances.distances2splits.neighbornet;
 
+import splitstree6.data.DistancesBlock;
+
 import java.util.Arrays;
 import java.util.Stack;
 
@@ -33,15 +35,39 @@ public class NeighborNetCycleSplitsTree4 {
 	 */
 	public static int[] compute(int nTax, double[][] dist) {
 		//Special cases. When nTax<=3, the default circular ordering will work.
-		if (nTax <= 3) {
-			int[] cycle = new int[nTax + 1];
-			for (int i = 1; i <= nTax; i++)
-				cycle[i] = i;
-			return cycle;
-		}
+		if (nTax <= 3)
+			return defaultCycle(nTax);
+		return computeCycle(nTax, setupMatrix(nTax, dist));
+	}
 
-		final double[][] mat = setupMatrix(nTax, dist);
+	/**
+	 * Run the neighbor net algorithm to compute the circular ordering of the taxa, reading the distances row by
+	 * row, so that a block with packed storage is not expanded to a full matrix first
+	 * @return cycle 1-based
+	 */
+	public static int[] compute(DistancesBlock distances) {
+		final var nTax = distances.getNtax();
+		if (nTax <= 3)
+			return defaultCycle(nTax);
+
+		final var mat = new double[3 * nTax - 5][3 * nTax - 5];
+		for (int i = 1; i <= nTax; i++)
+			distances.getRow(i, mat[i], 1);
+		return computeCycle(nTax, mat);
+	}
 
+	private static int[] defaultCycle(int nTax) {
+		int[] cycle = new int[nTax + 1];
+		for (int i = 1; i <= nTax; i++)
+			cycle[i] = i;
+		return cycle;
+	}
+
+	/**
+	 * Run the neighbor net algorithm on the working matrix set up by setupMatrix
+	 * @return cycle 1-based
+	 */
+	private static int[] computeCycle(int nTax, double[][] mat) {
 		final NetNode nodesHeader = new NetNode(0);
 
 		/* Nodes are stored in a doubly linked list that we set up here */
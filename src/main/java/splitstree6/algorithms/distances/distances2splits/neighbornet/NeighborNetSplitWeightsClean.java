@@ -21,12 +21,14 @@
 
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
+import splitstree6.data.DistancesBlock;
 import splitstree6.splits.ASplit;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.function.Function;
 
 import static java.lang.Math.*;
 import static splitstree6.algorithms.distances.distances2splits.neighbornet.NeighborNetUtilities.*;
@@ -96,6 +98,67 @@ public enum MethodTypes {GRADPROJECTION, ACTIVESET, APGD, IPG, SPLITSTREE4}
 	 * @throws CanceledException User pressed cancel in progress bar
 	 */
 	static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSParams params, ProgressListener progress) throws CanceledException {
+		return compute(cycle, getDistancesInCycleOrder(cycle, distances), params, progress, SerialBandOperator::new);
+	}
+
+	/**
+	 * Estimate the split weights using non-negative least squares. The distances are read row by row, so this
+	 * works for all storage types of the block, without a copy of the full matrix
+	 *
+	 * @param cycle     Neighbor-net cycle
+	 * @param distances the distances
+	 * @param params    Parameters
+	 * @param progress  Progress bar - used to implement cancel
+	 * @return Array list of splits with associated weights.
+	 * @throws CanceledException User pressed cancel in progress bar
+	 */
+	static public ArrayList<ASplit> compute(int[] cycle, DistancesBlock distances, NNLSParams params, ProgressListener progress) throws CanceledException {
+		return compute(cycle, getDistancesInCycleOrder(cycle, distances), params, progress, SerialBandOperator::new);
+	}
+
+	/**
+	 * gets the distances between all pairs i&lt;j of positions in the cycle, as a vector, ordered by i and then j
+	 *
+	 * @param distances Array of distances, indexed 0..(n-1)
+	 */
+	static double[] getDistancesInCycleOrder(int[] cycle, double[][] distances) {
+		var n = cycle.length - 1;
+		var d = new double[n * (n - 1) / 2];
+		var index = 0;
+		for (var i = 1; i <= n; i++)
+			for (var j = i + 1; j <= n; j++) {
+				d[index] = distances[cycle[i] - 1][cycle[j] - 1];
+				index++;
+			}
+		return d;
+	}
+
+	/**
+	 * gets the distances between all pairs i&lt;j of positions in the cycle, as a vector, ordered by i and then j
+	 */
+	static double[] getDistancesInCycleOrder(int[] cycle, DistancesBlock distances) {
+		var n = cycle.length - 1;
+		var d = new double[n * (n - 1) / 2];
+		var row = new double[n];
+		var index = 0;
+		for (var i = 1; i <= n; i++) {
+			distances.getRow(cycle[i], row, 0);
+			for (var j = i + 1; j <= n; j++) {
+				d[index] = row[cycle[j] - 1];
+				index++;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Estimate the split weights using non-negative least squares, with the given implementation of the
+	 * multiplications by A and A^T used by the active-set method
+	 *
+	 * @param d               distances between all pairs of positions in the cycle, see getDistancesInCycleOrder()
+	 * @param operatorFactory creates the band operator for a given layout
+	 */
+	static ArrayList<ASplit> compute(int[] cycle, double[] d, NNLSParams params, ProgressListener progress, Function<BandIndex, BandOperator> operatorFactory) throws CanceledException {
 		if (params == null)
 			params = new NNLSParams();
 		var n = cycle.length - 1;  //Number of taxa
@@ -107,7 +170,7 @@ static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSP
 		}
 		if (n == 2) {
 			final var splits = new ArrayList<ASplit>();
-			var d_ij = (float) distances[cycle[1] - 1][cycle[2] - 1];
+			var d_ij = (float) d[0];
 			if (d_ij > 0.0) {
 				final var A = new BitSet();
 				A.set(cycle[1]);
@@ -116,15 +179,6 @@ static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSP
 			return splits;
 		}
 
-		//Set up vector distances indexed 1..n in order of the cycle
-		var d = new double[npairs];
-		var index = 0;
-		for (var i = 1; i <= n; i++)
-			for (var j = i + 1; j <= n; j++) {
-				d[index] = distances[cycle[i] - 1][cycle[j] - 1];
-				index++;
-			}
-
 		var Atd = new double[npairs];
 		calcAtx(d, Atd, n);
 		var normAtd = sqrt(sumArraySquared(Atd, n));
@@ -146,7 +200,7 @@ static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSP
 					params.cgnrTolerance = params.projGradBound / 2;
 					params.cgnrIterations = max(50, n * (n - 1) / 2);
 					params.activeSetRho = 0.4;
-					activeSetMethodFast(x, d, n, params, progress);
+					activeSetMethodFast(x, d, n, params, operatorFactory, progress);
 				}
 				case APGD -> {
 					params.maxIterations = 100 * n * n;
@@ -163,14 +217,14 @@ static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSP
 					params.cgnrTolerance = params.projGradBound / 2;
 					params.cgnrIterations = max(50, n * (n - 1) / 2);
 					params.activeSetRho = 0.4;
-					activeSetMethodFast(x, d, n, params, progress);
+					activeSetMethodFast(x, d, n, params, operatorFactory, progress);
 				}
 			}
 			if (params.activeCleanup) {
 				params.cgnrTolerance = params.projGradBound / 2;
 				params.cgnrIterations = max(50, n * (n - 1) / 2);
 				params.activeSetRho = 0.4;
-				activeSetMethodFast(x, d, n, params, progress);
+				activeSetMethodFast(x, d, n, params, operatorFactory, progress);
 			}
 		}
 		if (progress != null)
@@ -178,7 +232,7 @@ static public ArrayList<ASplit> compute(int[] cycle, double[][] distances, NNLSP
 
 		//Construct the corresponding set of weighted splits
 		final var splitList = new ArrayList<ASplit>();
-		index = 0;
+		var index = 0;
 		for (var i = 1; i <= n; i++) {
 			final var A = new BitSet();
 			for (var j = i + 1; j <= n; j++) {
@@ -1051,7 +1105,7 @@ private static void logResidual(NNLSParams params, String line) {
 	 * design matrix A and its adjoint A^T use contiguous slices,
 	 * to reduce cache misses and enable vectorize tight loops.
 	 */
-	private static final class BandIndex {
+	static final class BandIndex {
 		final int n;
 		final int npairs;
 		final int[] bandOffsets;
@@ -1097,6 +1151,53 @@ private static void rowToBand(boolean[] src, boolean[] dst, BandIndex band) {
 			dst[band.rowToBand[row]] = src[row];
 	}
 
+	/**
+	 * Multiplication by the circular split matrix A and its adjoint, on vectors in band-major order
+	 */
+	interface BandOperator {
+		BandIndex band();
+
+		/**
+		 * y = A*x
+		 */
+		void forward(double[] x, double[] y);
+
+		/**
+		 * y = A^T*x
+		 */
+		void adjoint(double[] x, double[] y);
+	}
+
+	/**
+	 * The single-threaded band operator, with its own scratch space
+	 */
+	private static final class SerialBandOperator implements BandOperator {
+		private final BandIndex band;
+		private final double[] rowSums;
+		private final double[] shifted;
+
+		SerialBandOperator(BandIndex band) {
+			this.band = band;
+			this.rowSums = new double[band.n];
+			this.shifted = new double[band.n];
+		}
+
+		@Override
+		public BandIndex band() {
+			return band;
+		}
+
+		@Override
+		public void forward(double[] x, double[] y) {
+			calculateForwardBand(x, y, band, rowSums, shifted);
+		}
+
+		@Override
+		public void adjoint(double[] x, double[] y) {
+			calculateAdjointBand(x, y, band, rowSums, shifted);
+		}
+	}
+
 	private static void batchRowSumsBand(double[] b, double[] sums, BandIndex band) {
 		if (false) { // old ordering
 			Arrays.fill(sums, 0.0);
@@ -1178,20 +1279,20 @@ private static void calculateAdjointBand(double[] x, double[] y, BandIndex band,
 		}
 	}
 
-	private static double calculateForwardBandWithNorm(double[] x, double[] y, BandIndex band, double[] rowSums, double[] shifted) {
-		calculateForwardBand(x, y, band, rowSums, shifted);
+	private static double calculateForwardBandWithNorm(double[] x, double[] y, BandOperator operator) {
+		operator.forward(x, y);
 		var sum = 0.0;
-		for (var i = 0; i < band.npairs; i++) {
+		for (var i = 0; i < y.length; i++) {
 			var v = y[i];
 			sum += v * v;
 		}
 		return sum;
 	}
 
-	private static double calculateAdjointBandWithMaskedNorm(double[] x, double[] y, boolean[] activeSet, BandIndex band, double[] rowSums, double[] shifted) {
-		calculateAdjointBand(x, y, band, rowSums, shifted);
+	private static double calculateAdjointBandWithMaskedNorm(double[] x, double[] y, boolean[] activeSet, BandOperator operator) {
+		operator.adjoint(x, y);
 		var sum = 0.0;
-		for (var i = 0; i < band.npairs; i++) {
+		for (var i = 0; i < y.length; i++) {
 			if (activeSet[i]) {
 				y[i] = 0.0;            // mask in-place, no extra pass
 			} else {
@@ -1202,16 +1303,17 @@ private static double calculateAdjointBandWithMaskedNorm(double[] x, double[] y,
 		return sum;
 	}
 
-	private static void evalGradientBand(double[] x, double[] d, double[] gradient, double[] residual, BandIndex band, double[] rowSums, double[] shifted) {
-		calculateForwardBand(x, residual, band, rowSums, shifted);
+	private static void evalGradientBand(double[] x, double[] d, double[] gradient, double[] residual, BandOperator operator) {
+		operator.forward(x, residual);
 		for (var i = 0; i < residual.length; i++)
 			residual[i] -= d[i];
-		calculateAdjointBand(residual, gradient, band, rowSums, shifted);
+		operator.adjoint(residual, gradient);
 	}
 
-	private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNLSParams params, ProgressListener progress) throws CanceledException {
+	private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNLSParams params, Function<BandIndex, BandOperator> operatorFactory, ProgressListener progress) throws CanceledException {
 		final var npairs = n * (n - 1) / 2;
 		final var band = new BandIndex(n);
+		final var operator = operatorFactory.apply(band);
 		final var x = new double[npairs];
 		final var d = new double[npairs];
 		rowToBand(xRow, x, band);
@@ -1224,8 +1326,6 @@ private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNL
 
 		final var xstar = new double[npairs];
 		final var scratch = new double[4][npairs]; // p, r, z, w
-		final var rowSums = new double[n];
-		final var shifted = new double[n];
 		final var infeasible = new int[npairs];
 		final var order = new int[npairs];
 		final var vals = new double[npairs];
@@ -1235,7 +1335,7 @@ private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNL
 		while (true) {
 			while (true) {
 				System.arraycopy(x, 0, xstar, 0, npairs);
-				int numIterations = cgnrBand(xstar, d, activeSet, params, scratch, band, rowSums, shifted, progress, startTime);
+				int numIterations = cgnrBand(xstar, d, activeSet, params, scratch, operator, progress, startTime);
 				k++;
 				if (progress != null)
 					progress.checkForCancel();
@@ -1243,7 +1343,7 @@ private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNL
 				var xstarFeasible = feasibleMoveActiveSetFast(x, xstar, activeSet, infeasible, order, vals, params);
 
 				if (params.printResiduals) {
-					double pg = evalProjectedGradientSquaredBand(x, d, scratch[0], scratch[1], activeSet, band, rowSums, shifted);
+					double pg = evalProjectedGradientSquaredBand(x, d, scratch[0], scratch[1], activeSet, operator);
 					logResidual(params, "\t" + k + "\t" + params.cgnrIterations + "\t" + params.activeSetRho + "\t" + (System.currentTimeMillis() - startTime) + "\t" + pg + "\t" + numberNonzero(x));
 				}
 
@@ -1256,14 +1356,14 @@ private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNL
 			}
 
 			System.arraycopy(xstar, 0, x, 0, npairs);
-			var pg = evalProjectedGradientSquaredBand(x, d, scratch[0], scratch[1], activeSet, band, rowSums, shifted);
+			var pg = evalProjectedGradientSquaredBand(x, d, scratch[0], scratch[1], activeSet, operator);
 			if (pg < params.projGradBound) {
 				bandToRow(x, xRow, band);
 				return;
 			}
 
 			// Release the active constraint with the most negative projected gradient.
-			evalGradientBand(x, d, scratch[0], scratch[1], band, rowSums, shifted);
+			evalGradientBand(x, d, scratch[0], scratch[1], operator);
 			var imin = -1;
 			var gmin = 0.0;
 			for (var i = 0; i < npairs; i++) {
@@ -1278,21 +1378,21 @@ private static void activeSetMethodFast(double[] xRow, double[] dRow, int n, NNL
 		}
 	}
 
-	private static int cgnrBand(double[] x, double[] d, boolean[] activeSet, NNLSParams params, double[][] scratch, BandIndex band, double[] rowSums, double[] shifted, ProgressListener progress, long startTime) throws CanceledException {
+	private static int cgnrBand(double[] x, double[] d, boolean[] activeSet, NNLSParams params, double[][] scratch, BandOperator operator, ProgressListener progress, long startTime) throws CanceledException {
 		final var npairs = x.length;
-		final var n = band.n;
+		final var n = operator.band().n;
 		final var p = scratch[0];
 		final var r = scratch[1];
 		final var z = scratch[2];
 		final var w = scratch[3];
 
 		zeroNegativeEntries(x);
-		calculateForwardBand(x, r, band, rowSums, shifted);
+		operator.forward(x, r);
 		for (var i = 0; i < npairs; i++)
 			r[i] = d[i] - r[i];
 
 		// z = A^T r (full vector); ztz = ||z||^2 over the free (non-active) set
-		var ztz = calculateAdjointBandWithMaskedNorm(r, z, activeSet, band, rowSums, shifted);
+		var ztz = calculateAdjointBandWithMaskedNorm(r, z, activeSet, operator);
 
 		// p = z on the free set, 0 on the active set (single pass, no separate fill)
 		for (var i = 0; i < npairs; i++)
@@ -1303,7 +1403,7 @@ private static int cgnrBand(double[] x, double[] d, boolean[] activeSet, NNLSPar
 
 		var k = 1;
 		while (true) {
-			var denom = calculateForwardBandWithNorm(p, w, band, rowSums, shifted);
+			var denom = calculateForwardBandWithNorm(p, w, operator);
 			if (denom <= 1e-300 || !Double.isFinite(denom))
 				break;
 			var alpha = ztz / denom;
@@ -1317,7 +1417,7 @@ private static int cgnrBand(double[] x, double[] d, boolean[] activeSet, NNLSPar
 				r[i] -= alpha * w[i];
 			}
 
-			var ztz2 = calculateAdjointBandWithMaskedNorm(r, z, activeSet, band, rowSums, shifted);
+			var ztz2 = calculateAdjointBandWithMaskedNorm(r, z, activeSet, operator);
 			if (ztz2 < params.cgnrTolerance || k >= params.cgnrIterations)
 				break;
 			var beta = ztz2 / ztz;
@@ -1336,8 +1436,8 @@ private static int cgnrBand(double[] x, double[] d, boolean[] activeSet, NNLSPar
 		return k;
 	}
 
-	private static double evalProjectedGradientSquaredBand(double[] x, double[] d, double[] gradient, double[] residual, boolean[] activeSet, BandIndex band, double[] rowSums, double[] shifted) {
-		evalGradientBand(x, d, gradient, residual, band, rowSums, shifted);
+	private static double evalProjectedGradientSquaredBand(double[] x, double[] d, double[] gradient, double[] residual, boolean[] activeSet, BandOperator operator) {
+		evalGradientBand(x, d, gradient, residual, operator);
 		var sum = 0.0;
 		for (var i = 0; i < x.length; i++) {
 			var g = (x[i] == 0.0 || activeSet[i]) ? Math.min(0.0, gradient[i]) : gradient[i];
@@ -135,6 +135,52 @@ public static void compareCalcAx(int n, int nreps) {
 	}
 
 
+	/**
+	 * compares the split weights computed by the active-set method of NeighborNetSplitWeightsClean with those of
+	 * NeighborNetSplitWeights_MultiThreaded, which should be identical
+	 */
+	public static void compareMultiThreaded(int n, int nreps) {
+		double p = 0.2;
+
+		for (var rep = 0; rep < nreps; rep++) {
+			double[][] x = new double[n + 1][n + 1];
+			double[][] y = new double[n + 1][n + 1];
+			double sigma = 0.05;
+			randomData(x, y, p, sigma);
+
+			var distances = new double[n][n];
+			for (int i = 1; i <= n; i++)
+				for (int j = 1; j <= n; j++)
+					distances[i - 1][j - 1] = y[i][j];
+			var cycle = new int[n + 1];
+			for (int i = 1; i <= n; i++)
+				cycle[i] = i;
+
+			try {
+				var params = new NNLSParams();
+				params.method = NNLSParams.MethodTypes.ACTIVESET;
+				long startTime = System.currentTimeMillis();
+				var splits = NeighborNetSplitWeightsClean.compute(cycle, distances, params, null);
+				long runTimeSingle = System.currentTimeMillis() - startTime;
+
+				startTime = System.currentTimeMillis();
+				var splitsMultiThreaded = NeighborNetSplitWeights_MultiThreaded.compute(cycle, distances, new NNLSParams(), null);
+				long runTimeMulti = System.currentTimeMillis() - startTime;
+
+				var same = splits.size() == splitsMultiThreaded.size();
+				for (int i = 0; same && i < splits.size(); i++)
+					same = splits.get(i).equals(splitsMultiThreaded.get(i)) && splits.get(i).getWeight() == splitsMultiThreaded.get(i).getWeight();
+
+				System.out.println("Compared single- and multi-threaded active set. n=" + n);
+				System.out.println(" Single-threaded = time = " + runTimeSingle);
+				System.out.println(" Multi-threaded = time = " + runTimeMulti);
+				System.out.println(" Identical splits and weights = " + same);
+			} catch (CanceledException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	public static void printGraphs(double[][] d, String filename) {
 		int n = d.length - 1;
 
@@ -27,6 +27,7 @@
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
 import splitstree6.data.TreesBlock;
+import splitstree6.data.parts.DistanceMatrix;
 
 import java.io.IOException;
 import java.util.BitSet;
@@ -98,16 +99,18 @@ public static PhyloTree computeBioNJTree(ProgressListener progress, TaxaBlock ta
 
 		active.set(1, nTax + 1);
 
-		for (int i = 1; i <= nTax; i++) {
+		for (int i = 1; i <= nTax; i++) { //fill up the distance matix h
+			distances.getRow(i, h[i], 1);
 			h[i][i] = 0.0;
-			for (int j = 1; j <= nTax; j++) { //fill up the distance matix h
-				if (i < j)
-					h[i][j] = distances.get(i, j);//
-				else
-					h[i][j] = distances.get(j, i);
-				var[i][j] = h[i][j];
+		}
+		if (distances.getStorage() == DistanceMatrix.Storage.Full) { // use the upper triangle
+			for (int i = 1; i <= nTax; i++) {
+				for (int j = i + 1; j <= nTax; j++)
+					h[j][i] = h[i][j];
 			}
 		}
+		for (int i = 1; i <= nTax; i++)
+			System.arraycopy(h[i], 1, var[i], 1, nTax);
 
 		// calculate b:
 		for (int i = 1; i <= nTax; i++) {
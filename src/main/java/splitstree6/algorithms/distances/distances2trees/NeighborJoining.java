@@ -28,6 +28,7 @@
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
 import splitstree6.data.TreesBlock;
+import splitstree6.data.parts.DistanceMatrix;
 
 import java.util.BitSet;
 
@@ -83,9 +84,14 @@ private PhyloTree computeNJTree(ProgressListener progressListener, TaxaBlock tax
 
 		final var rowSum = new float[ntax]; // 0-based
 
-		for (var i : BitSetUtils.members(alive)) {
-			for (var j : BitSetUtils.members(alive, i + 1)) {
-				matrix[i][j] = matrix[j][i] = (float) distances.get(i + 1, j + 1);
+		for (var i = 0; i < ntax; i++) {
+			distances.getRow(i + 1, matrix[i], 0);
+			matrix[i][i] = 0f;
+		}
+		if (distances.getStorage() == DistanceMatrix.Storage.Full) { // use the upper triangle
+			for (var i = 0; i < ntax; i++) {
+				for (var j = i + 1; j < ntax; j++)
+					matrix[j][i] = matrix[i][j];
 			}
 		}
 
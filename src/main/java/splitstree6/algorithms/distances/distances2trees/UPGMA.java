@@ -27,6 +27,7 @@
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
 import splitstree6.data.TreesBlock;
+import splitstree6.data.parts.DistanceMatrix;
 
 import java.io.IOException;
 
@@ -84,13 +85,19 @@ public static PhyloTree computeUPGMATree(ProgressListener progress, TaxaBlock ta
 		//Initialise d
 		//Compute the closest values for each taxa.
 		for (var i = 1; i <= ntax; i++) {
-			for (var j = i + 1; j <= ntax; j++) {
-				//d[i][j] = d[j][i] = (distances.get(i, j) + distances.get(j, i)) / 2.0;
-				final var sum = distances.get(i, j) + distances.get(j, i);
-				if (sum == distances.get(i, j) || sum == distances.get(j, i)) {
-					d[i][j] = d[j][i] = sum;
-				} else {
-					d[i][j] = d[j][i] = sum / 2.0;
+			distances.getRow(i, d[i], 1);
+			d[i][i] = 0.0;
+		}
+		if (distances.getStorage() == DistanceMatrix.Storage.Full) { // packed storage is symmetric
+			for (var i = 1; i <= ntax; i++) {
+				for (var j = i + 1; j <= ntax; j++) {
+					//d[i][j] = d[j][i] = (distances.get(i, j) + distances.get(j, i)) / 2.0;
+					final var sum = d[i][j] + d[j][i];
+					if (sum == d[i][j] || sum == d[j][i]) {
+						d[i][j] = d[j][i] = sum;
+					} else {
+						d[i][j] = d[j][i] = sum / 2.0;
+					}
 				}
 			}
 		}
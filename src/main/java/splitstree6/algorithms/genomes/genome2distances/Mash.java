@@ -26,18 +26,18 @@
 import jloda.kmers.mash.MashSketch;
 import jloda.util.*;
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.utils.ParallelPairs;
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.GenomesBlock;
 import splitstree6.data.GenomesFormat;
 import splitstree6.data.TaxaBlock;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -121,42 +121,25 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, GenomesBlock
 			if (countTooSmall > 0)
 				NotificationManager.showWarning(String.format("Too few k-mers for %,d genomes- rerun with smaller sketch size", countTooSmall));
 
-			var triplets = new ArrayList<Triplet<MashSketch, MashSketch, Double>>();
-
-			for (var i = 0; i < sketches.length; i++) {
-				for (var j = i + 1; j < sketches.length; j++) {
-					triplets.add(new Triplet<>(sketches[i], sketches[j], 0.0));
-				}
-			}
-
-			progress.setSubtask("distances");
-			ExecuteInParallel.apply(triplets, t -> t.setThird(MashDistance.compute(t.getFirst(), t.getSecond(), getOptionDistances())), ProgramExecutorService.getNumberOfCoresToUse(), progress);
-			progress.reportTaskCompleted();
-
-			var name2rank = new HashMap<String, Integer>();
-
-			for (var i = 0; i < sketches.length; i++) {
-				final String name = sketches[i].getName();
-				name2rank.put(name, i + 1);
-			}
-
+			// sketch g belongs to genome g+1, which is taxon g+1. Each pair is computed once, directly into the matrix
 			distancesBlock.clear();
-
-			int countUndefined = 0;
-
 			distancesBlock.setNtax(taxaBlock.getNtax());
-			for (var triplet : triplets) {
-				final var t1 = name2rank.get(triplet.getFirst().getName());
-				final var t2 = name2rank.get(triplet.getSecond().getName());
-				final var dist = triplet.getThird();
+
+			progress.setSubtask("distances");
+			final var distanceType = getOptionDistances();
+			final var undefined = new LongAdder();
+			ParallelPairs.apply(progress, sketches.length, () -> null, (state, s, t) -> {
+				final var dist = MashDistance.compute(sketches[s - 1], sketches[t - 1], distanceType);
 				if (verbose) {
-					System.out.println(triplet.getFirst().getName() + "\t" + triplet.getSecond().getName() + "\t" + triplet.getThird());
+					System.out.println(sketches[s - 1].getName() + "\t" + sketches[t - 1].getName() + "\t" + dist);
 				}
-				distancesBlock.set(t1, t2, dist);
-				distancesBlock.set(t2, t1, dist);
+				distancesBlock.setBoth(s, t, dist);
 				if (dist == 0.75)
-					countUndefined++;
-			}
+					undefined.increment();
+			});
+			progress.reportTaskCompleted();
+
+			final var countUndefined = undefined.sum();
 			if (countUndefined > 0)
 				NotificationManager.showWarning(String.format("Failed to estimate distance for %d pairs (distances set to 0.75) - increase sketch size or decrease k", countUndefined));
 		} catch (IOException ex) {
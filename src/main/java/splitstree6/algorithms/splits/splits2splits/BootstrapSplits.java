@@ -174,7 +174,7 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, SplitsBlock
 								System.err.println("Bootstrap workflow: " + BootstrappingUtils.toString(charactersBlock, path));
 
 							for (var r = thread; r < getOptionReplicates(); r += numberOfThreads) {
-								var replicateSplits = (SplitsBlock) run(new ProgressSilent(), taxaBlock, BootstrappingUtils.createReplicate(charactersBlock, new Random(seeds[r])), path);
+								var replicateSplits = (SplitsBlock) run(new ProgressSilent(), taxaBlock, BootstrappingUtils.createReplicate(charactersBlock, new Random(seeds[r]), path), path);
 								for (var split : replicateSplits.getSplits()) {
 									if (isOptionShowAllSplits() || splitCountMap.containsKey(split)) {
 										// merge, not get-then-put: the maps are shared by every worker thread,
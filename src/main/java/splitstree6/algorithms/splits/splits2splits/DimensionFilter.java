@@ -22,13 +22,10 @@
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import jloda.fx.window.NotificationManager;
-import jloda.graph.Edge;
-import jloda.graph.Graph;
-import jloda.graph.Node;
-import jloda.graph.NodeSet;
 import jloda.util.Basic;
 import jloda.util.CanceledException;
-import jloda.util.Pair;
+import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
 import jloda.util.progress.ProgressListener;
 import splitstree6.algorithms.IFilter;
 import splitstree6.algorithms.utils.SplitsBlockUtilities;
@@ -38,14 +35,21 @@
 import splitstree6.splits.BiPartition;
 import splitstree6.splits.Compatibility;
 
+import java.util.ArrayDeque;
 import java.util.BitSet;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * heuristic dimension filter
- * Daniel Huson, 5.2004
+ * <p>
+ * The incompatibility graph is held as a packed bit matrix, built in parallel. If the splits are circular with
+ * respect to a given cycle, then two splits are incompatible if and only if their intervals along the cycle overlap
+ * without being nested, otherwise the BiPartitions are compared. Blocks that are known to be compatible, circular or
+ * weakly compatible are not filtered, so, in compute(), this only applies to splits of unknown compatibility, such
+ * as imported ones.
+ * <p>
+ * Daniel Huson, 5.2004, 10.2026
  */
 public class DimensionFilter extends Splits2Splits implements IFilter {
 	private final IntegerProperty optionMaxDimension = new SimpleIntegerProperty(this, "optionMaxDimension", 4);
@@ -80,7 +84,9 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, SplitsBlock
 		active = false;
 
 		if (parent.getCompatibility() != Compatibility.compatible && parent.getCompatibility() != Compatibility.circular && parent.getCompatibility() != Compatibility.weaklyCompatible) {
-			apply(progress, getOptionMaxDimension(), parent.getSplits(), child.getSplits());
+			// splits known to be incompatible are not circular with respect to the cycle, so only look for intervals otherwise
+			final int[] cycle = (parent.getCompatibility() == Compatibility.unknown ? parent.getCycle() : null);
+			apply(progress, getOptionMaxDimension(), parent.getSplits(), cycle, child.getSplits());
 			if (parent.getNsplits() == child.getNsplits()) {
 				child.setCycle(parent.getCycle().clone());
 				child.setCompatibility(parent.getCompatibility());
@@ -100,12 +106,22 @@ public void compute(ProgressListener progress, TaxaBlock taxaBlock, SplitsBlock
 	 * does the work
 	 */
 	public static void apply(ProgressListener progress, int maxDimension, List<ASplit> srcSplits, List<ASplit> targetSplits) {
+		apply(progress, maxDimension, srcSplits, null, targetSplits);
+	}
+
+	/**
+	 * does the work
+	 *
+	 * @param cycle a cycle for the splits, 1-based, or null. Used to speed up the determination of incompatible splits,
+	 *              if all splits are circular with respect to it
+	 */
+	public static void apply(ProgressListener progress, int maxDimension, List<ASplit> srcSplits, int[] cycle, List<ASplit> targetSplits) {
 		final BitSet toDelete = new BitSet(); // set of splits to be removed from split set
 
 		try {
 			progress.setTasks("Dimension filter", "optionMaxDimension=" + maxDimension);
 			// build initial incompatibility graph:
-			Graph graph = buildIncompatibilityGraph(srcSplits);
+			IncompatibilityGraph graph = buildIncompatibilityGraph(progress, srcSplits, cycle);
 
 			//System.err.println("Init: "+graph);
 			int origNumberOfNodes = graph.getNumberOfNodes();
@@ -122,10 +138,9 @@ public static void apply(ProgressListener progress, int maxDimension, List<ASpli
 			//System.err.println("relaxed: "+graph);
 
 			while (graph.getNumberOfNodes() > 0) {
-				Node worstNode = getWorstNode(graph);
-				int s = ((Pair<Integer, Integer>) worstNode.getInfo()).getFirst();
+				int s = getWorstNode(graph);
 				toDelete.set(s);
-				graph.deleteNode(worstNode);
+				graph.deleteNode(s);
 				//System.err.println("deleted: "+graph);
 
 				if (maxDimension <= COMPUTE_DSUBGRAPH_MAXDIMENSION)
@@ -148,124 +163,177 @@ public static void apply(ProgressListener progress, int maxDimension, List<ASpli
 	}
 
 	/**
-	 * build the incompatibility graph
+	 * build the incompatibility graph. Each row of the matrix is computed by a different task, for the columns
+	 * above the diagonal, and is then mirrored
 	 *
+	 * @param cycle cycle, or null
 	 * @return incompatibility graph
 	 */
-	private static Graph buildIncompatibilityGraph(List<ASplit> splits) {
-		final Graph graph = new Graph();
-
-		final Node[] split2node = new Node[splits.size()];
-
+	private static IncompatibilityGraph buildIncompatibilityGraph(ProgressListener progress, List<ASplit> splits, int[] cycle) throws Exception {
+		final IncompatibilityGraph graph = new IncompatibilityGraph(splits.size());
 		for (int s = 0; s < splits.size(); s++) {
-			final Pair<Integer, Integer> pair = new Pair<>(s, (int) (10000 * splits.get(s).getWeight()));
-			split2node[s] = graph.newNode(pair);
+			graph.weight[s] = (int) (10000 * splits.get(s).getWeight());
 		}
-		for (int s = 0; s < splits.size(); s++) {
 
-			for (int t = s + 1; t < splits.size(); t++)
-				if (!BiPartition.areCompatible(splits.get(s), splits.get(t))) {
-					graph.newEdge(split2node[s], split2node[t]);
-				}
+		final int[][] intervals = computeCircularIntervals(splits, cycle);
+
+		progress.setMaximum(splits.size());
+		progress.setProgress(0);
+		ExecuteInParallel.apply(IntStream.range(0, splits.size()).boxed().toList(), s -> {
+			final long[] row = graph.rows[s];
+			for (int t = s + 1; t < splits.size(); t++) {
+				final boolean incompatible;
+				if (intervals != null)
+					incompatible = areIncompatible(intervals[s], intervals[t]);
+				else
+					incompatible = !BiPartition.areCompatible(splits.get(s), splits.get(t));
+				if (incompatible)
+					row[t >>> 6] |= (1L << t);
+			}
+		}, ProgramExecutorService.getNumberOfCoresToUse(), progress);
+
+		for (int s = 0; s < graph.size; s++) {
+			for (int t = graph.nextNeighbor(s, s + 1); t != -1; t = graph.nextNeighbor(s, t + 1)) {
+				graph.rows[t][s >>> 6] |= (1L << s);
+				graph.degree[s]++;
+				graph.degree[t]++;
+			}
 		}
 		return graph;
 	}
 
+	/**
+	 * for each split, computes the interval of positions along the cycle that is covered by the part not containing
+	 * the first taxon in the cycle
+	 *
+	 * @return the intervals, or null, if no cycle is given or some split is not circular with respect to it
+	 */
+	private static int[][] computeCircularIntervals(List<ASplit> splits, int[] cycle) {
+		if (cycle == null || cycle.length < 2)
+			return null;
+		final int ntax = cycle.length - 1;
+		final int[] inverse = new int[ntax + 1];
+		for (int i = 1; i <= ntax; i++) {
+			if (cycle[i] < 1 || cycle[i] > ntax)
+				return null;
+			inverse[cycle[i]] = i;
+		}
+
+		final int[][] intervals = new int[splits.size()][];
+		for (int s = 0; s < splits.size(); s++) {
+			final ASplit split = splits.get(s);
+			if (split.ntax() != ntax || split.getA().length() > ntax + 1 || split.getB().length() > ntax + 1 || !(split.isContainedInA(cycle[1]) || split.isContainedInB(cycle[1])))
+				return null;
+			final BitSet part = split.getPartNotContaining(cycle[1]);
+			int min = ntax;
+			int max = 1;
+			for (int t = part.nextSetBit(1); t != -1; t = part.nextSetBit(t + 1)) {
+				min = Math.min(min, inverse[t]);
+				max = Math.max(max, inverse[t]);
+			}
+			if (max - min + 1 != part.cardinality())
+				return null;
+			intervals[s] = new int[]{min, max};
+		}
+		return intervals;
+	}
+
+	/**
+	 * two circular splits are incompatible, if their intervals overlap, but neither contains the other
+	 */
+	private static boolean areIncompatible(int[] interval1, int[] interval2) {
+		return (interval1[0] < interval2[0] && interval2[0] <= interval1[1] && interval1[1] < interval2[1])
+			   || (interval2[0] < interval1[0] && interval1[0] <= interval2[1] && interval2[1] < interval1[1]);
+	}
+
 	/**
 	 * computes the subgraph in which every node is contained in a d-clique
 	 *
 	 * @param d clique size
 	 */
-	private static void computeDSubgraph(ProgressListener progress, Graph graph, int d) throws CanceledException {
+	private static void computeDSubgraph(ProgressListener progress, IncompatibilityGraph graph, int d) throws CanceledException {
 		//System.err.print("Compute D-subgraph: ");
-		NodeSet keep = new NodeSet(graph);
-		NodeSet discard = new NodeSet(graph);
-		NodeSet clique = new NodeSet(graph);
-		for (Node v : graph.nodes()) {
-			if (!keep.contains(v)) {
-				clique.clear();
-				clique.add(v);
-				if (findClique(graph, v, v.getFirstAdjacentEdge(), 1, d, clique, discard))
-					keep.addAll(clique);
-				else
-					discard.add(v);
+		final BitSet keep = new BitSet();
+		final long[] discard = new long[graph.words];
+		final int[] clique = new int[d];
+		final long[][] candidates = new long[d][graph.words];
+		for (int v = graph.nextNode(0); v != -1; v = graph.nextNode(v + 1)) {
+			if (!keep.get(v)) {
+				clique[0] = v;
+				for (int w = 0; w < graph.words; w++)
+					candidates[0][w] = graph.rows[v][w] & graph.alive[w] & ~discard[w];
+				if (findClique(graph, 0, 1, d, clique, candidates)) {
+					for (int i = 0; i < d; i++)
+						keep.set(clique[i]);
+				} else
+					discard[v >>> 6] |= (1L << v);
 			}
 			progress.checkForCancel();
 		}
 
 		// remove all nodes not contained in a d-clique
-		for (Node v : discard) {
-			graph.deleteNode(v);
+		for (int w = 0; w < graph.words; w++) {
+			for (long bits = discard[w]; bits != 0; bits &= bits - 1)
+				graph.deleteNode((w << 6) + Long.numberOfTrailingZeros(bits));
 		}
 		//System.err.println(" "+graph.getNumberOfNodes());
 	}
 
 	/**
-	 * recursively determine whether v is contained in a d-clique.
+	 * recursively determine whether the clique of size i can be extended to a d-clique, using nodes from candidates[i-1],
+	 * which contains all nodes that are adjacent to all nodes in the clique and not discarded,
+	 * starting at node from
 	 *
-	 * @return true, if v contained in a d-clique
+	 * @return true, if the clique can be extended to a d-clique
 	 */
-	private static boolean findClique(Graph graph, Node v, Edge e, int i, int d, NodeSet clique, NodeSet discard) {
+	private static boolean findClique(IncompatibilityGraph graph, int from, int i, int d, int[] clique, long[][] candidates) {
 		if (i == d)
 			return true;  // found clique, retreat
 		else {
-			while (e != null) {
-				Node w = graph.getOpposite(v, e);
-				e = v.getNextAdjacentEdge(e);
-
-				if (isConnectedTo(w, clique) && !discard.contains(w)) {
-					clique.add(w);
-					if (findClique(graph, v, e, i + 1, d, clique, discard))
-						return true;
-					clique.remove(w);
+			final long[] available = candidates[i - 1];
+			for (int w = nextSetBit(available, from); w != -1; w = nextSetBit(available, w + 1)) {
+				clique[i] = w;
+				if (i + 1 < d) {
+					for (int k = 0; k < graph.words; k++)
+						candidates[i][k] = available[k] & graph.rows[w][k];
 				}
-			}
-			return false; // didn't work out, try different combination
-		}
-	}
-
-	/**
-	 * determines whether node w is connected to all nodes in U
-	 *
-	 * @return true, if w is connected to all nodes in U
-	 */
-	private static boolean isConnectedTo(Node w, NodeSet U) {
-		int count = 0;
-		for (Node u : w.adjacentNodes()) {
-			if (U.contains(u)) {
-				count++;
-				if (count == U.size())
+				if (findClique(graph, w + 1, i + 1, d, clique, candidates))
 					return true;
 			}
+			return false; // didn't work out, try different combination
 		}
-		return false;
 	}
 
 	/**
 	 * Modify graph to become the maximal induced graph in which all nodes have degree >maxDegree
 	 * If maxDegree==1, then we additionally require that all remaining nodes are contained in a triangle
 	 */
-	private static void relaxGraph(ProgressListener progress, Graph graph, int maxDegree) throws CanceledException {
+	private static void relaxGraph(ProgressListener progress, IncompatibilityGraph graph, int maxDegree) throws CanceledException {
 		System.err.print("Relax graph: ");
 
 		int maxDegreeHeuristicThreshold = 6; // use heuristic for max degrees above this threshold
-		Set<Node> active = new HashSet<>();
-		for (Node v : graph.nodes()) {
-			if (v.getDegree() < maxDegree
-				|| (maxDegree <= maxDegreeHeuristicThreshold && hasDegreeDButNotInClique(maxDegree + 1, graph, v)))
-				active.add(v);
+		final ArrayDeque<Integer> queue = new ArrayDeque<>();
+		final BitSet active = new BitSet();
+		for (int v = graph.nextNode(0); v != -1; v = graph.nextNode(v + 1)) {
+			if (graph.degree[v] < maxDegree
+				|| (maxDegree <= maxDegreeHeuristicThreshold && hasDegreeDButNotInClique(maxDegree + 1, graph, v))) {
+				queue.add(v);
+				active.set(v);
+			}
 		}
 
-		while (!active.isEmpty()) {
-			Node v = active.iterator().next();
-			if (v.getDegree() < maxDegree || (maxDegree <= maxDegreeHeuristicThreshold && hasDegreeDButNotInClique(maxDegree + 1, graph, v))) {
-				for (Node w : v.adjacentNodes()) {
-					active.add(w);
+		while (!queue.isEmpty()) {
+			int v = queue.poll();
+			active.clear(v);
+			if (graph.degree[v] < maxDegree || (maxDegree <= maxDegreeHeuristicThreshold && hasDegreeDButNotInClique(maxDegree + 1, graph, v))) {
+				for (int w = graph.nextNeighbor(v, 0); w != -1; w = graph.nextNeighbor(v, w + 1)) {
+					if (!active.get(w)) {
+						queue.add(w);
+						active.set(w);
+					}
 				}
-				active.remove(v);
 				graph.deleteNode(v);
-			} else
-				active.remove(v);
+			}
 			progress.checkForCancel();
 		}
 		System.err.println("" + graph.getNumberOfNodes());
@@ -277,12 +345,12 @@ private static void relaxGraph(ProgressListener progress, Graph graph, int maxDe
 	 *
 	 * @return worst node
 	 */
-	private static Node getWorstNode(Graph graph) {
+	private static int getWorstNode(IncompatibilityGraph graph) {
 		float worstCompatibility = 0;
-		Node worstNode = null;
-		for (Node v : graph.nodes()) {
-			float compatibility = getCompatibilityScore(v);
-			if (worstNode == null || compatibility < worstCompatibility) {
+		int worstNode = -1;
+		for (int v = graph.nextNode(0); v != -1; v = graph.nextNode(v + 1)) {
+			float compatibility = getCompatibilityScore(graph, v);
+			if (worstNode == -1 || compatibility < worstCompatibility) {
 				worstNode = v;
 				worstCompatibility = compatibility;
 			}
@@ -296,10 +364,10 @@ private static Node getWorstNode(Graph graph) {
 	 *
 	 * @return compatibility score
 	 */
-	private static int getCompatibilityScore(Node v) {
-		int score = ((Pair<Integer, Integer>) v.getInfo()).getSecond();
-		for (Node w : v.adjacentNodes()) {
-			score -= ((Pair<Integer, Integer>) w.getInfo()).getSecond();
+	private static int getCompatibilityScore(IncompatibilityGraph graph, int v) {
+		int score = graph.weight[v];
+		for (int w = graph.nextNeighbor(v, 0); w != -1; w = graph.nextNeighbor(v, w + 1)) {
+			score -= graph.weight[w];
 		}
 		return score;
 	}
@@ -308,23 +376,100 @@ private static int getCompatibilityScore(Node v) {
 	/**
 	 * determines whether the node v has degree==d but  is not contained in a clique of size d+1
 	 *
-	 * @param d* @param graph
 	 * @return false, if the node v has degree!=d or is contained in a d+1 clique
 	 */
-	private static boolean hasDegreeDButNotInClique(int d, Graph graph, Node v) {
-		if (v.getDegree() != d)
+	private static boolean hasDegreeDButNotInClique(int d, IncompatibilityGraph graph, int v) {
+		if (graph.degree[v] != d)
 			return false;
-		for (Edge e = v.getFirstAdjacentEdge(); e != null; e = v.getNextAdjacentEdge(e)) {
-			Node a = graph.getOpposite(v, e);
-			for (Edge f = v.getNextAdjacentEdge(e); f != null; f = v.getNextAdjacentEdge(f)) {
-				Node b = graph.getOpposite(v, f);
-				if (!a.isAdjacent(b))
+		for (int a = graph.nextNeighbor(v, 0); a != -1; a = graph.nextNeighbor(v, a + 1)) {
+			for (int w = 0; w < graph.words; w++) {
+				long others = graph.rows[v][w] & graph.alive[w] & ~graph.rows[a][w];
+				if (w == a >>> 6)
+					others &= ~(1L << a);
+				if (others != 0)
 					return true;
 			}
 		}
 		return false;
 	}
 
+	private static int nextSetBit(long[] bits, int from) {
+		int w = from >>> 6;
+		if (w >= bits.length)
+			return -1;
+		long word = bits[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == bits.length)
+				return -1;
+			word = bits[w];
+		}
+	}
+
+	/**
+	 * the incompatibility graph, as a packed bit matrix. Nodes are the indices of the splits, deleted nodes are
+	 * removed from the set of alive nodes, but not from the rows of the matrix
+	 */
+	private static class IncompatibilityGraph {
+		private final int size;
+		private final int words;
+		private final long[][] rows;
+		private final long[] alive;
+		private final int[] degree;
+		private final int[] weight;
+		private int numberOfNodes;
+
+		IncompatibilityGraph(int size) {
+			this.size = size;
+			this.words = (size + 63) >>> 6;
+			this.rows = new long[size][words];
+			this.alive = new long[words];
+			for (int v = 0; v < size; v++)
+				alive[v >>> 6] |= (1L << v);
+			this.degree = new int[size];
+			this.weight = new int[size];
+			this.numberOfNodes = size;
+		}
+
+		int getNumberOfNodes() {
+			return numberOfNodes;
+		}
+
+		/**
+		 * gets the first alive node &ge; from, or -1
+		 */
+		int nextNode(int from) {
+			return nextSetBit(alive, from);
+		}
+
+		/**
+		 * gets the first alive neighbor of v that is &ge; from, or -1
+		 */
+		int nextNeighbor(int v, int from) {
+			final long[] row = rows[v];
+			int w = from >>> 6;
+			if (w >= words)
+				return -1;
+			long word = row[w] & alive[w] & (-1L << from);
+			while (true) {
+				if (word != 0)
+					return (w << 6) + Long.numberOfTrailingZeros(word);
+				if (++w == words)
+					return -1;
+				word = row[w] & alive[w];
+			}
+		}
+
+		void deleteNode(int v) {
+			for (int w = nextNeighbor(v, 0); w != -1; w = nextNeighbor(v, w + 1))
+				degree[w]--;
+			alive[v >>> 6] &= ~(1L << v);
+			degree[v] = 0;
+			numberOfNodes--;
+		}
+	}
+
 	public int getOptionMaxDimension() {
 		return optionMaxDimension.get();
 	}
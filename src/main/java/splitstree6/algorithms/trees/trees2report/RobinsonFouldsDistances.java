@@ -22,29 +22,37 @@
 
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import jloda.util.CanceledException;
-import jloda.util.IteratorUtils;
-import jloda.util.SetUtils;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import jloda.util.FileUtils;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
+import splitstree6.algorithms.utils.RobinsonFouldsMatrix;
+import splitstree6.data.DistancesBlock;
 import splitstree6.data.TaxaBlock;
 import splitstree6.data.TreesBlock;
 import splitstree6.data.parts.Taxon;
-import splitstree6.splits.ASplit;
-import splitstree6.splits.SplitUtils;
+import splitstree6.io.writers.distances.NexusWriter;
 
-import java.util.*;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * calculate the Robinson-Foulds distances between trees
- * Daniel Huson, 11.2024
+ * <p>
+ * If a matrix file is set, the matrix of distances, indexed by the trees, is written to it in Nexus format and the
+ * report only says so, as listing all pairs is impractical for many trees
+ * <p>
+ * Daniel Huson, 11.2024, 10.2026
  */
 public class RobinsonFouldsDistances extends Trees2ReportBase {
 	private final BooleanProperty optionNormalize = new SimpleBooleanProperty(this, "optionNormalize", false);
+	private final StringProperty optionMatrixFile = new SimpleStringProperty(this, "optionMatrixFile", "");
 
 	@Override
 	public List<String> listOptions() {
-		return List.of(optionNormalize.getName());
+		return List.of(optionNormalize.getName(), optionMatrixFile.getName());
 	}
 
 	@Override
@@ -53,6 +61,8 @@ public String getToolTip(String optionName) {
 			optionName = "option" + optionName;
 		if (optionName.equals(optionNormalize.getName()))
 			return "normalized distances";
+		else if (optionName.equals(optionMatrixFile.getName()))
+			return "if set, write the matrix of distances between the trees to this file in Nexus format, rather than listing them in the report";
 		else return "";
 	}
 
@@ -61,27 +71,42 @@ public RobinsonFouldsDistances() {
 	}
 
 	@Override
-	String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, Collection<Taxon> selectedTaxa) throws CanceledException {
-		var splitsList = new ArrayList<Set<ASplit>>();
-		for (var tree : treesBlock.getTrees()) {
-			var splits = new HashSet<ASplit>();
-			SplitUtils.computeSplits(taxaBlock.getTaxaSet(), tree, splits);
-			splitsList.add(splits);
+	String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, Collection<Taxon> selectedTaxa) throws IOException {
+		var distances = new DistancesBlock();
+		var splitIds = RobinsonFouldsMatrix.computeSplitIds(progress, taxaBlock, treesBlock.getTrees());
+		RobinsonFouldsMatrix.apply(progress, splitIds, taxaBlock.getNtax(), isOptionNormalize(), distances);
+
+		if (!getOptionMatrixFile().isBlank()) {
+			writeMatrix(getOptionMatrixFile(), treesBlock, distances);
+			return "Wrote %,d x %,d matrix of Robinson-Foulds distances to: %s%n".formatted(treesBlock.getNTrees(), treesBlock.getNTrees(), getOptionMatrixFile());
 		}
+
 		var buf = new StringBuilder();
-		for (var i = 0; i < splitsList.size(); i++) {
-			for (var j = i + 1; j < splitsList.size(); j++) {
-				var symm = (double) IteratorUtils.size(SetUtils.symmetricDifference(splitsList.get(i), splitsList.get(j)));
-				if (isOptionNormalize()) {
-					symm /= (IteratorUtils.size(SetUtils.union(splitsList.get(i), splitsList.get(j))) - taxaBlock.getNtax());
-				}
-				buf.append("D(%s,%s) = %s%n".formatted(treesBlock.getTree(i + 1).getName(), treesBlock.getTree(j + 1).getName(),
-						StringUtils.trim(symm)));
+		for (var i = 1; i <= treesBlock.getNTrees(); i++) {
+			for (var j = i + 1; j <= treesBlock.getNTrees(); j++) {
+				buf.append("D(%s,%s) = %s%n".formatted(treesBlock.getTree(i).getName(), treesBlock.getTree(j).getName(),
+						StringUtils.trim(distances.get(i, j))));
 			}
 		}
 		return buf.toString();
 	}
 
+	/**
+	 * writes the matrix of distances between the trees in Nexus format, preceded by a taxa block of the names of the trees
+	 */
+	private static void writeMatrix(String fileName, TreesBlock treesBlock, DistancesBlock distances) throws IOException {
+		var treeNames = new TaxaBlock();
+		for (var i = 1; i <= treesBlock.getNTrees(); i++) {
+			var name = treesBlock.getTree(i).getName();
+			treeNames.addTaxonByName(name != null && !name.isBlank() ? name : "tree" + i);
+		}
+		var writer = new NexusWriter();
+		writer.optionPrependTaxaProperty().set(true);
+		try (var w = FileUtils.getOutputWriterPossiblyZIPorGZIP(fileName)) {
+			writer.write(w, treeNames, distances);
+		}
+	}
+
 	@Override
 	public String getShortDescription() {
 		return "Calculates the Robinson-Foulds distance between each pair of trees";
@@ -104,4 +129,16 @@ public boolean isOptionNormalize() {
 	public BooleanProperty optionNormalizeProperty() {
 		return optionNormalize;
 	}
+
+	public String getOptionMatrixFile() {
+		return optionMatrixFile.get();
+	}
+
+	public StringProperty optionMatrixFileProperty() {
+		return optionMatrixFile;
+	}
+
+	public void setOptionMatrixFile(String optionMatrixFile) {
+		this.optionMatrixFile.set(optionMatrixFile);
+	}
 }
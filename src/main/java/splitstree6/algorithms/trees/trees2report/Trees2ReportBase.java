@@ -26,7 +26,6 @@
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
-import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 import splitstree6.data.IViewChoice;
 import splitstree6.data.ReportBlock;
@@ -37,6 +36,7 @@
 import splitstree6.workflow.AlgorithmNode;
 import splitstree6.workflow.DataNode;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
@@ -91,7 +91,7 @@ public Trees2ReportBase() {
 	 * @param selectedTaxa selected taxa, if required
 	 * @return text to present
 	 */
-	abstract String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, Collection<Taxon> selectedTaxa) throws CanceledException;
+	abstract String runAnalysis(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, Collection<Taxon> selectedTaxa) throws IOException;
 
 	@Override
 	public void setNode(AlgorithmNode node) {
@@ -104,7 +104,7 @@ public void setNode(AlgorithmNode node) {
 	}
 
 	@Override
-	public void compute(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, ReportBlock reportBlock) throws CanceledException {
+	public void compute(ProgressListener progress, TaxaBlock taxaBlock, TreesBlock treesBlock, ReportBlock reportBlock) throws IOException {
 		reportBlock.setInputBlockName(TreesBlock.BLOCK_NAME);
 
 		// The view is optional. Guard it so that a report can be computed headless - from a
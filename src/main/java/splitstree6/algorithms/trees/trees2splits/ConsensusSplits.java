@@ -230,7 +230,8 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 		splits.clear();
 		final var sync = new Object();
 		final var trees = treesBlock.getTrees();
-		final var splitsAndWeights = new HashMap<BitSet, Pair<BitSet, WeightStats>>();
+		final var keepWeights = (edgeWeights == EdgeWeights.Median);
+		final HashMap<BitSet, WeightStats> splitsAndWeights;
 		final var taxaInTree = taxaBlock.getTaxaSet();
 
 		final var executor = ProgramExecutorService.getInstance();
@@ -244,11 +245,16 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 			final var numberOfThreads = Math.max(1, NumberUtils.min(trees.size(), ProgramExecutorService.getNumberOfCoresToUse(), Runtime.getRuntime().availableProcessors()));
 			final var countDownLatch = new CountDownLatch(numberOfThreads);
 			final var exception = new Single<CanceledException>();
+			// each thread collects the splits of its trees in its own table, the tables are merged once all are done
+			final var threadTables = new ArrayList<HashMap<BitSet, WeightStats>>(numberOfThreads);
+			for (var i = 0; i < numberOfThreads; i++)
+				threadTables.add(new HashMap<>());
 
 			final var warnedAboutZeroWeight = new Single<>(false);
 
 			for (var i = 0; i < numberOfThreads; i++) {
 				final var threadNumber = i;
+				final var table = threadTables.get(i);
 				executor.execute(() -> {
 					try {
 						for (var which = threadNumber + 1; which <= trees.size(); which += numberOfThreads) {
@@ -282,12 +288,9 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 							}
 
 							for (var split : treeSplits) {
-								synchronized (sync) {
-									final var pair = splitsAndWeights.computeIfAbsent(split.getPartContaining(1), k -> new Pair<>(k, new WeightStats()));
-									pair.getSecond().add((float) (factor * split.getWeight()));
-									progress.checkForCancel();
-								}
+								table.computeIfAbsent(split.getPartContaining(1), k -> new WeightStats(keepWeights)).add((float) (factor * split.getWeight()));
 							}
+							progress.checkForCancel();
 							if (threadNumber == 0) {
 								progress.setProgress((long) (which * 80.0 / trees.size()));
 							}
@@ -310,6 +313,21 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 			if (exception.get() != null) {
 				throw exception.get();
 			}
+
+			// merge into the largest table, in thread order
+			var largest = 0;
+			for (var i = 1; i < numberOfThreads; i++) {
+				if (threadTables.get(i).size() > threadTables.get(largest).size())
+					largest = i;
+			}
+			splitsAndWeights = threadTables.get(largest);
+			for (var i = 0; i < numberOfThreads; i++) {
+				if (i != largest) {
+					for (var entry : threadTables.get(i).entrySet()) {
+						splitsAndWeights.merge(entry.getKey(), entry.getValue(), WeightStats::addAll);
+					}
+				}
+			}
 		}
 
 		var computedSplits = new SplitsBlock();
@@ -320,15 +338,15 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 
 			final var threshold = (thresholdPercent < 100 ? thresholdPercent / 100.0 : 0.999999);
 
-			final var array = new ArrayList<>(splitsAndWeights.values());
+			final var array = new ArrayList<>(splitsAndWeights.entrySet());
 
 			for (var i = 0; i < numberOfThreads; i++) {
 				final var threadNumber = i;
 				executor.execute(() -> {
 					try {
 						for (var which = threadNumber; which < array.size(); which += numberOfThreads) {
-							final var side = array.get(which).getFirst();
-							final var weightStats = array.get(which).getSecond();
+							final var side = array.get(which).getKey();
+							final var weightStats = array.get(which).getValue();
 							final double wgt;
 							if (weightStats.getCount() / (double) trees.size() > threshold) {
 								wgt = switch (edgeWeights) {
@@ -381,18 +399,21 @@ public static void compute(ProgressListener progress, TaxaBlock taxaBlock, Trees
 	}
 
 	/**
-	 * a value object contains a set of all weights seen so far and their counts
+	 * a value object that contains the number and sum of all weights seen so far, and the weights themselves, if
+	 * the median is required
 	 */
 	private static class WeightStats {
-		private final ArrayList<Float> weights;
+		private float[] weights;
 		private int totalCount;
 		private double sum;
 
 		/**
 		 * construct a new values map
+		 *
+		 * @param keepWeights keep all weights, so as to compute the median
 		 */
-		WeightStats() {
-			weights = new ArrayList<>();
+		WeightStats(boolean keepWeights) {
+			weights = (keepWeights ? new float[4] : null);
 			totalCount = 0;
 			sum = 0;
 		}
@@ -401,11 +422,31 @@ private static class WeightStats {
 		 * add the given weight and count
 		 */
 		void add(float weight) {
-			weights.add(weight);
+			if (weights != null) {
+				if (totalCount == weights.length)
+					weights = Arrays.copyOf(weights, 2 * totalCount);
+				weights[totalCount] = weight;
+			}
 			totalCount++;
 			sum += weight;
 		}
 
+		/**
+		 * adds all weights and counts of other to this
+		 *
+		 * @return this
+		 */
+		WeightStats addAll(WeightStats other) {
+			if (weights != null) {
+				if (totalCount + other.totalCount > weights.length)
+					weights = Arrays.copyOf(weights, Math.max(2 * weights.length, totalCount + other.totalCount));
+				System.arraycopy(other.weights, 0, weights, totalCount, other.totalCount);
+			}
+			totalCount += other.totalCount;
+			sum += other.sum;
+			return this;
+		}
+
 		/**
 		 * returns the number of values
 		 *
@@ -430,9 +471,9 @@ int getCount() {
 		 * @return median
 		 */
 		public double getMedian() {
-			Object[] array = weights.toArray();
+			final var array = Arrays.copyOf(weights, totalCount);
 			Arrays.sort(array);
-			return (Float) array[array.length / 2];
+			return array[array.length / 2];
 		}
 
 		/**
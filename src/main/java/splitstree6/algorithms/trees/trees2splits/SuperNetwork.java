@@ -24,6 +24,8 @@
 import jloda.graph.Edge;
 import jloda.graph.Node;
 import jloda.util.CanceledException;
+import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
 import jloda.util.progress.ProgressListener;
 import splitstree6.algorithms.splits.splits2splits.DimensionFilter;
 import splitstree6.algorithms.utils.PartialSplit;
@@ -37,6 +39,7 @@
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * compute network from partial trees
@@ -384,28 +387,33 @@ private BitSet computePSplitsFromTreeRecursively(Node v, Edge e, TreesBlock tree
 	Random rand = null;
 
 	/**
-	 * runs the closure method. Does this multiple times, if desired
+	 * runs the closure method. Does this multiple times, if desired, the runs being independent of each other and
+	 * executed concurrently. The random permutations are drawn up front, from a single generator, so the result does
+	 * not depend on the order in which the runs finish
 	 */
-	private void computeClosureOuterLoop(ProgressListener progress, Set<PartialSplit> partialSplits) throws CanceledException {
+	private void computeClosureOuterLoop(ProgressListener progress, Set<PartialSplit> partialSplits) throws IOException {
 		this.rand = new Random(getOptionSeed());
 
-		final var allEverComputed = new HashSet<>(partialSplits);
-
+		final var permutations = new ArrayList<List<PartialSplit>>();
 		for (var i = 0; i < getOptionNumberOfRuns(); i++) {
-			////doc.notifySubtask("compute closure" + (i == 0 ? "" : "(" + (i + 1) + ")"));
-
-			var clone = new LinkedHashSet<>(partialSplits);
-
-			{
-				final var tmp = new Vector<>(clone);
-				Collections.shuffle(tmp, rand);
-				clone = new LinkedHashSet<>(tmp);
-				computeClosure(progress, clone);
-				progress.checkForCancel();
-			}
-
-			allEverComputed.addAll(clone);
+			final var tmp = new ArrayList<>(partialSplits);
+			Collections.shuffle(tmp, rand);
+			permutations.add(tmp);
+		}
 
+		final Set<PartialSplit> allEverComputed = ConcurrentHashMap.newKeySet();
+		allEverComputed.addAll(partialSplits);
+
+		progress.setSubtask("compute closure");
+		progress.setMaximum(permutations.size());
+		progress.setProgress(0);
+		try {
+			ExecuteInParallel.apply(permutations, permutation -> allEverComputed.addAll(computeClosure(progress, permutation)),
+					ProgramExecutorService.getNumberOfCoresToUse(), progress);
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IOException(ex);
 		}
 		partialSplits.clear();
 		partialSplits.addAll(allEverComputed);
@@ -427,75 +435,73 @@ public int getNumberOfFullSplits(int numAllTaxa, Set<PartialSplit> partialSplits
 
 	/**
 	 * computes the split closure obtained using the zig-zap rule
+	 * <p>
+	 * The sides of the splits are held as packed bit sets, all of the same number of words, so that the tests for
+	 * intersection in the inner loop run over a few longs. A split that is not changed is returned as is, any other
+	 * is returned as a new partial split
+	 *
+	 * @param partialSplits the splits, in the order in which they are to be processed
+	 * @return the closure
 	 */
-	private void computeClosure(ProgressListener progress, Set<PartialSplit> partialSplits) throws CanceledException {
-		PartialSplit[] splits;
-		var seniorSplits = new LinkedHashSet<Integer>();
-		var activeSplits = new LinkedHashSet<Integer>();
-		var newSplits = new LinkedHashSet<Integer>();
-		{
-			splits = new PartialSplit[partialSplits.size()];
-			var pos = 0;
-			for (var partialSplit : partialSplits) {
-				splits[pos] = partialSplit;
-				seniorSplits.add(pos);
-				pos++;
-				progress.checkForCancel();
-			}
+	private static Set<PartialSplit> computeClosure(ProgressListener progress, List<PartialSplit> partialSplits) throws CanceledException {
+		final var n = partialSplits.size();
+		var maxTaxon = 0;
+		for (var ps : partialSplits)
+			maxTaxon = Math.max(maxTaxon, Math.max(ps.getA().length(), ps.getB().length()));
+		final var words = Math.max(1, (maxTaxon + 63) >>> 6);
+
+		final var sideA = new long[n][];
+		final var sideB = new long[n][];
+		for (var pos = 0; pos < n; pos++) {
+			sideA[pos] = Arrays.copyOf(partialSplits.get(pos).getA().toLongArray(), words);
+			sideB[pos] = Arrays.copyOf(partialSplits.get(pos).getB().toLongArray(), words);
 		}
+		final var changed = new boolean[n];
+
+		// the splits changed in the current round, in the order in which they were first changed
+		final var isNew = new boolean[n];
+		var newSplits = new int[n];
+		var numberOfNew = 0;
 
 		// init:
-		{
-			for (var pos1 = 0; pos1 < splits.length; pos1++) {
-				for (var pos2 = pos1 + 1; pos2 < splits.length; pos2++) {
-					var ps1 = splits[pos1];
-					var ps2 = splits[pos2];
-					var qs1 = new PartialSplit();
-					var qs2 = new PartialSplit();
-					if (PartialSplit.applyZigZagRule(ps1, ps2, qs1, qs2)) {
-						splits[pos1] = qs1;
-						splits[pos2] = qs2;
-						newSplits.add(pos1);
-						newSplits.add(pos2);
+		for (var pos1 = 0; pos1 < n; pos1++) {
+			for (var pos2 = pos1 + 1; pos2 < n; pos2++) {
+				if (applyZigZagRule(sideA, sideB, pos1, pos2)) {
+					changed[pos1] = changed[pos2] = true;
+					if (!isNew[pos1]) {
+						isNew[pos1] = true;
+						newSplits[numberOfNew++] = pos1;
+					}
+					if (!isNew[pos2]) {
+						isNew[pos2] = true;
+						newSplits[numberOfNew++] = pos2;
 					}
 				}
-				progress.checkForCancel();
 			}
+			progress.checkForCancel();
 		}
 
-		// main loop:
-		{
-			while (newSplits.size() != 0) {
-				seniorSplits.addAll(activeSplits);
-				activeSplits = newSplits;
-				newSplits = new LinkedHashSet<>();
+		// main loop: test each split against those changed in the last round, and these against each other
+		while (numberOfNew > 0) {
+			final var activeSplits = Arrays.copyOf(newSplits, numberOfNew);
+			Arrays.fill(isNew, false);
+			numberOfNew = 0;
 
-				for (var pos1 : seniorSplits) {
+			for (var round = 0; round < 2; round++) {
+				final var count1 = (round == 0 ? n : activeSplits.length);
+				for (var k = 0; k < count1; k++) {
+					final var pos1 = (round == 0 ? k : activeSplits[k]);
 					for (var pos2 : activeSplits) {
-						var ps1 = splits[pos1];
-						var ps2 = splits[pos2];
-						var qs1 = new PartialSplit();
-						var qs2 = new PartialSplit();
-						if (PartialSplit.applyZigZagRule(ps1, ps2, qs1, qs2)) {
-							splits[pos1] = qs1;
-							splits[pos2] = qs2;
-							newSplits.add(pos1);
-							newSplits.add(pos2);
-						}
-					}
-					progress.checkForCancel();
-				}
-				for (var pos1 : activeSplits) {
-					for (var activeSplit : activeSplits) {
-						var ps1 = splits[pos1];
-						var ps2 = splits[activeSplit];
-						var qs1 = new PartialSplit();
-						var qs2 = new PartialSplit();
-						if (PartialSplit.applyZigZagRule(ps1, ps2, qs1, qs2)) {
-							splits[pos1] = qs1;
-							splits[activeSplit] = qs2;
-							newSplits.add(pos1);
-							newSplits.add(activeSplit);
+						if (applyZigZagRule(sideA, sideB, pos1, pos2)) {
+							changed[pos1] = changed[pos2] = true;
+							if (!isNew[pos1]) {
+								isNew[pos1] = true;
+								newSplits[numberOfNew++] = pos1;
+							}
+							if (!isNew[pos2]) {
+								isNew[pos2] = true;
+								newSplits[numberOfNew++] = pos2;
+							}
 						}
 					}
 					progress.checkForCancel();
@@ -503,15 +509,67 @@ private void computeClosure(ProgressListener progress, Set<PartialSplit> partial
 			}
 		}
 
-		partialSplits.clear();
-		for (var pos1 : seniorSplits) {
-			partialSplits.add(splits[pos1]);
-			progress.checkForCancel();
+		final var result = new LinkedHashSet<PartialSplit>();
+		for (var pos = 0; pos < n; pos++) {
+			if (changed[pos])
+				result.add(new PartialSplit(BitSet.valueOf(sideA[pos]), BitSet.valueOf(sideB[pos])));
+			else
+				result.add(partialSplits.get(pos));
 		}
-		for (var pos1 : activeSplits) {
-			partialSplits.add(splits[pos1]);
-			progress.checkForCancel();
+		return result;
+	}
+
+	/**
+	 * applies the zig-zag rule to the packed splits at pos1 and pos2, if applicable, as in
+	 * PartialSplit.applyZigZagRule(), replacing A1/B1 and A2/B2 by A1/(B1uB2) and (A1uA2)/B2
+	 *
+	 * @return true, if the rule was applied and the resulting splits differ from the original ones
+	 */
+	private static boolean applyZigZagRule(long[][] sideA, long[][] sideB, int pos1, int pos2) {
+		for (var i = 0; i <= 1; i++) {
+			final var A1 = (i == 0 ? sideA[pos1] : sideB[pos1]);
+			final var B1 = (i == 0 ? sideB[pos1] : sideA[pos1]);
+			for (var j = 0; j <= 1; j++) {
+				final var A2 = (j == 0 ? sideA[pos2] : sideB[pos2]);
+				final var B2 = (j == 0 ? sideB[pos2] : sideA[pos2]);
+
+				if (intersects(A1, A2) && intersects(A2, B1) && intersects(B1, B2) && !intersects(A1, B2)) {
+					final var B1uB2 = union(B1, B2);
+					final var A1uA2 = union(A1, A2);
+					if ((sameSplit(A1, B1uB2, sideA[pos1], sideB[pos1]) && sameSplit(A1uA2, B2, sideA[pos2], sideB[pos2]))
+						|| (sameSplit(A1, B1uB2, sideA[pos2], sideB[pos2]) && sameSplit(A1uA2, B2, sideA[pos1], sideB[pos1])))
+						return false;
+					sideA[pos1] = A1;
+					sideB[pos1] = B1uB2;
+					sideA[pos2] = A1uA2;
+					sideB[pos2] = B2;
+					return true;
+				}
+			}
 		}
+		return false;
+	}
+
+	private static boolean intersects(long[] a, long[] b) {
+		for (var w = 0; w < a.length; w++) {
+			if ((a[w] & b[w]) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	private static long[] union(long[] a, long[] b) {
+		final var result = new long[a.length];
+		for (var w = 0; w < a.length; w++)
+			result[w] = a[w] | b[w];
+		return result;
+	}
+
+	/**
+	 * do A1/B1 and A2/B2 have the same sides, in either order?
+	 */
+	private static boolean sameSplit(long[] A1, long[] B1, long[] A2, long[] B2) {
+		return (Arrays.equals(A1, A2) && Arrays.equals(B1, B2)) || (Arrays.equals(A1, B2) && Arrays.equals(B1, A2));
 	}
 
 	/**
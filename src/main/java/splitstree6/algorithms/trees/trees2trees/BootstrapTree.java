@@ -224,7 +224,7 @@ public static PhyloTree run(ProgressListener progress, TaxaBlock taxaBlock, Phyl
 								if (thread == 0)
 									System.err.println("Bootstrap workflow: " + BootstrappingUtils.toString(charactersBlock, path));
 								for (var r = thread; r < numberOfReplicates; r += numberOfThreads) {
-									var replicateTreeBlock = (TreesBlock) BootstrapSplits.run(new ProgressSilent(), taxaBlock, BootstrappingUtils.createReplicate(charactersBlock, new Random(seeds[r])), path);
+									var replicateTreeBlock = (TreesBlock) BootstrapSplits.run(new ProgressSilent(), taxaBlock, BootstrappingUtils.createReplicate(charactersBlock, new Random(seeds[r]), path), path);
 									var replicateTree = replicateTreeBlock.getTree(1);
 									try (var edgeClusterMap = computeEdgeToSplitSideNotContaining1Map(replicateTree)) {
 										var replicateClusters = new HashSet<>(edgeClusterMap.values());
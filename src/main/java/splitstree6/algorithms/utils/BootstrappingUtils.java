@@ -20,6 +20,7 @@
 package splitstree6.algorithms.utils;
 
 import jloda.util.Pair;
+import splitstree6.algorithms.characters.IUsesSitePatterns;
 import splitstree6.algorithms.splits.splits2splits.BootstrapSplits;
 import splitstree6.algorithms.trees.trees2splits.TreeSelectorSplits;
 import splitstree6.data.CharactersBlock;
@@ -48,7 +49,7 @@ public class BootstrappingUtils {
 	 * @return bootstrap replicate
 	 */
 	public static CharactersBlock createReplicate(CharactersBlock charactersBlock, Random random) {
-		final var srcMatrix = charactersBlock.getMatrix();
+		final var srcMatrix = charactersBlock.getMatrixReadOnly();
 		final var numRows = srcMatrix.length;
 		final var numCols = srcMatrix[0].length;
 		final var tarMatrix = new char[numRows][numCols];
@@ -61,6 +62,23 @@ public static CharactersBlock createReplicate(CharactersBlock charactersBlock, R
 		return new CharactersBlock(charactersBlock, tarMatrix);
 	}
 
+	/**
+	 * creates a bootstrap replicate for a pipeline. If its first algorithm reads the characters through their site
+	 * patterns, the replicate is just a vector of multiplicities over them, which costs O(nchar), otherwise it is
+	 * a new alignment of ntax*nchar characters. Both draw the same sites from the same random number generator
+	 *
+	 * @param charactersBlock characters
+	 * @param random          random number generator
+	 * @param path            the pipeline the replicate is to be run through
+	 * @return bootstrap replicate
+	 */
+	public static CharactersBlock createReplicate(CharactersBlock charactersBlock, Random random, Collection<Pair<Algorithm, DataBlock>> path) {
+		if (!path.isEmpty() && path.iterator().next().getFirst() instanceof IUsesSitePatterns)
+			return charactersBlock.getSitePatterns().createReplicate(random);
+		else
+			return createReplicate(charactersBlock, random);
+	}
+
 	/**
 	 * get's the path of algorithms and datanodes from the working datanode to the target datanode
 	 *
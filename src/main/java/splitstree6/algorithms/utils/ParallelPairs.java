@@ -0,0 +1,97 @@
+/*
+ *  ParallelPairs.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.algorithms.utils;
+
+import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
+import jloda.util.progress.ProgressListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * runs a computation on all pairs of taxa s&lt;t in parallel, or of any other items numbered 1..n, such as
+ * sketches or trees
+ * <p>
+ * The pairs are grouped into square tiles of TILE_SIZE by TILE_SIZE taxa, so that the rows of a tile stay in cache,
+ * and the tiles are spread over the available cores. Each thread obtains its own working state from the supplier,
+ * once, so that whatever a pair needs, a PairwiseCompare, say, is reused rather than allocated for every pair.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class ParallelPairs {
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * the computation to be applied to one pair
+	 *
+	 * @param <S> the per-thread working state
+	 */
+	public interface PairFunction<S> {
+		/**
+		 * @param state the calling thread's working state
+		 * @param s     first taxon, 1-based
+		 * @param t     second taxon, 1-based, s&lt;t
+		 */
+		void apply(S state, int s, int t) throws Exception;
+	}
+
+	/**
+	 * applies the function to all pairs 1&le;s&lt;t&le;ntax. Different pairs are processed concurrently, so the
+	 * function may only write to locations that belong to its pair, such as the entries (s,t) and (t,s) of a
+	 * distance matrix
+	 *
+	 * @param progress      progress listener, its maximum is set to the number of tiles
+	 * @param ntax          number of taxa
+	 * @param stateSupplier supplies the working state of a thread
+	 * @param function      the computation
+	 * @throws IOException an exception thrown by the function, or a cancellation
+	 */
+	public static <S> void apply(ProgressListener progress, int ntax, Supplier<S> stateSupplier, PairFunction<S> function) throws IOException {
+		var nTiles = (ntax + TILE_SIZE - 1) / TILE_SIZE;
+		var tiles = new ArrayList<int[]>();
+		for (var a = 0; a < nTiles; a++) {
+			for (var b = a; b < nTiles; b++) {
+				tiles.add(new int[]{a, b});
+			}
+		}
+		progress.setMaximum(tiles.size());
+		progress.setProgress(0);
+
+		var threadState = ThreadLocal.withInitial(stateSupplier);
+		try {
+			ExecuteInParallel.apply(tiles, tile -> {
+				var state = threadState.get();
+				var sEnd = Math.min(ntax, (tile[0] + 1) * TILE_SIZE);
+				var tEnd = Math.min(ntax, (tile[1] + 1) * TILE_SIZE);
+				for (var s = tile[0] * TILE_SIZE; s < sEnd; s++) {
+					for (var t = Math.max(s + 1, tile[1] * TILE_SIZE); t < tEnd; t++) {
+						function.apply(state, s + 1, t + 1);
+					}
+				}
+			}, ProgramExecutorService.getNumberOfCoresToUse(), progress);
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IOException(ex);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *  RobinsonFouldsMatrix.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.algorithms.utils;
+
+import jloda.phylo.PhyloTree;
+import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
+import jloda.util.progress.ProgressListener;
+import splitstree6.data.DistancesBlock;
+import splitstree6.data.TaxaBlock;
+import splitstree6.splits.ASplit;
+import splitstree6.splits.SplitUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * computes the Robinson-Foulds distances between all pairs of trees on the same taxa
+ * <p>
+ * Each split is hashed only once, into a dictionary that assigns it an id, and each tree is represented by the
+ * sorted ids of its splits, so that the number of splits that two trees share is counted by merging two arrays of
+ * ints. The splits of the trees are computed in parallel, and so are the pairs of trees, see ParallelPairs.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class RobinsonFouldsMatrix {
+	/**
+	 * computes the splits of each tree, trivial ones included, as sorted split ids
+	 *
+	 * @param progress  progress listener
+	 * @param taxaBlock the taxa, all of which must be present in each tree
+	 * @param trees     the trees
+	 * @return for each tree, 0-based, the sorted ids of its splits
+	 */
+	public static int[][] computeSplitIds(ProgressListener progress, TaxaBlock taxaBlock, List<PhyloTree> trees) throws IOException {
+		final var taxa = taxaBlock.getTaxaSet();
+		final var dictionary = new ConcurrentHashMap<ASplit, Integer>();
+		final var nextId = new AtomicInteger(0);
+		final var splitIds = new int[trees.size()][];
+
+		progress.setMaximum(trees.size());
+		progress.setProgress(0);
+		try {
+			ExecuteInParallel.apply(IntStream.range(0, trees.size()).boxed().toList(), which -> {
+				final var splits = new ArrayList<ASplit>();
+				SplitUtils.computeSplits(taxa, trees.get(which), splits);
+				splitIds[which] = splits.stream().mapToInt(split -> dictionary.computeIfAbsent(split, k -> nextId.getAndIncrement())).sorted().toArray();
+			}, ProgramExecutorService.getNumberOfCoresToUse(), progress);
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IOException(ex);
+		}
+		return splitIds;
+	}
+
+	/**
+	 * computes the Robinson-Foulds distances between all pairs of trees
+	 *
+	 * @param progress  progress listener
+	 * @param splitIds  the sorted split ids of each tree, see computeSplitIds()
+	 * @param ntax      the number of taxa
+	 * @param normalize divide each distance by the number of non-trivial splits contained in either tree
+	 * @param distances receives the distances, indexed by the trees, 1-based
+	 */
+	public static void apply(ProgressListener progress, int[][] splitIds, int ntax, boolean normalize, DistancesBlock distances) throws IOException {
+		distances.setNtax(splitIds.length);
+		ParallelPairs.apply(progress, splitIds.length, () -> null,
+				(state, s, t) -> distances.setBoth(s, t, computeDistance(splitIds[s - 1], splitIds[t - 1], ntax, normalize)));
+	}
+
+	/**
+	 * computes the Robinson-Foulds distance between two trees
+	 *
+	 * @param splitIds1 the sorted split ids of the first tree
+	 * @param splitIds2 the sorted split ids of the second tree
+	 * @param ntax      the number of taxa
+	 * @param normalize divide by the number of non-trivial splits contained in either tree
+	 * @return the number of splits contained in exactly one of the trees, possibly normalized
+	 */
+	public static double computeDistance(int[] splitIds1, int[] splitIds2, int ntax, boolean normalize) {
+		var common = 0;
+		for (int i = 0, j = 0; i < splitIds1.length && j < splitIds2.length; ) {
+			if (splitIds1[i] < splitIds2[j])
+				i++;
+			else if (splitIds1[i] > splitIds2[j])
+				j++;
+			else {
+				common++;
+				i++;
+				j++;
+			}
+		}
+		var distance = (double) (splitIds1.length + splitIds2.length - 2 * common);
+		if (normalize)
+			distance /= (splitIds1.length + splitIds2.length - common - ntax);
+		return distance;
+	}
+}
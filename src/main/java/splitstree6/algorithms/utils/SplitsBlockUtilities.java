@@ -50,21 +50,22 @@ public class SplitsBlockUtilities {
 	 * @return squares fit
 	 */
 	public static float computeLeastSquaresFit(DistancesBlock distancesBlock, List<ASplit> splits) {
+		return computeLeastSquaresFit(distancesBlock, null, splits);
+	}
+
+	/**
+	 * computes the least squares fit, in O(ntax^2) time, if all splits are circular with respect to the given cycle
+	 *
+	 * @param cycle cycle, 1-based, or null
+	 * @return squares fit
+	 */
+	public static float computeLeastSquaresFit(DistancesBlock distancesBlock, int[] cycle, List<ASplit> splits) {
 		final int nTax = distancesBlock.getNtax();
-		final double[][] splitDist = new double[nTax + 1][nTax + 1];
+		final double[][] splitDist = computeSplitDistances(nTax, cycle, splits, true);
 
 		double sumDSquared = 0.0;
 		double sumDiffSquared = 0.0;
 
-		for (ASplit split : splits) {
-			for (int i : BitSetUtils.members(split.getA())) {
-				for (int j : BitSetUtils.members(split.getB())) {
-					splitDist[i][j] += split.getWeight();
-					splitDist[j][i] = splitDist[i][j];
-				}
-			}
-		}
-
 		for (int i = 1; i <= nTax; i++) {
 			for (int j = i + 1; j <= nTax; j++) {
 				double sij = splitDist[i][j];
@@ -81,18 +82,22 @@ public static float computeLeastSquaresFit(DistancesBlock distancesBlock, List<A
 	 * Determines the decomposition-fit of a splits system
 	 */
 	static public float computeSplitDecompositionFit(DistancesBlock dist, List<ASplit> splits) {
+		return computeSplitDecompositionFit(dist, null, splits);
+	}
+
+	/**
+	 * Determines the decomposition-fit of a splits system, in O(ntax^2) time, if all splits are circular with respect
+	 * to the given cycle
+	 *
+	 * @param cycle cycle, 1-based, or null
+	 */
+	static public float computeSplitDecompositionFit(DistancesBlock dist, int[] cycle, List<ASplit> splits) {
 		if (splits == null || dist == null)
 			return 0f;
 
 		final var ntax = dist.getNtax();
 
-		var sdist = new double[ntax + 1][ntax + 1];
-
-		for (var a : BitSetUtils.range(1, ntax + 1)) {
-			for (var b : BitSetUtils.range(a + 1, ntax + 1)) {
-				sdist[a][b] = sdist[b][a] = (float) splits.stream().filter(s -> s.separates(a, b)).mapToDouble(ASplit::getWeight).sum();
-			}
-		}
+		var sdist = computeSplitDistances(ntax, cycle, splits, true);
 
 		float dsum = 0;
 		float ssum = 0;
@@ -115,15 +120,135 @@ static public float computeSplitDecompositionFit(DistancesBlock dist, List<ASpli
 	 * @param splits with 1-based taxa
 	 */
 	public static void splitsToDistances(List<ASplit> splits, boolean useWeights, DistancesBlock distancesBlock) {
-		for (var s : splits) {
-			for (var i : BitSetUtils.members(s.getA())) {
-				for (var j : BitSetUtils.members(s.getB())) {
-					var dist = distancesBlock.get(i, j) + (useWeights ? s.getWeight() : 1);
-					distancesBlock.set(i, j, dist);
-					distancesBlock.set(j, i, dist);
+		splitsToDistances(null, splits, useWeights, distancesBlock);
+	}
+
+	/**
+	 * Given splits, adds the split distances to the given distances, as the number or total weight of splits
+	 * separating each pair of taxa, in O(ntax^2) time, if all splits are circular with respect to the given cycle
+	 *
+	 * @param cycle  cycle, 1-based, or null
+	 * @param splits with 1-based taxa
+	 */
+	public static void splitsToDistances(int[] cycle, List<ASplit> splits, boolean useWeights, DistancesBlock distancesBlock) {
+		final var ntax = distancesBlock.getNtax();
+		final var splitDist = computeSplitDistances(ntax, cycle, splits, useWeights);
+		for (var i = 1; i <= ntax; i++) {
+			for (var j = i + 1; j <= ntax; j++) {
+				if (splitDist[i][j] != 0)
+					distancesBlock.setBoth(i, j, distancesBlock.get(i, j) + splitDist[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * computes the split distances, as the number or total weight of splits separating each pair of taxa. This takes
+	 * O(ntax^2) time, if all splits are circular with respect to the given cycle, and otherwise visits all pairs of
+	 * taxa separated by each split
+	 *
+	 * @param ntax       number of taxa
+	 * @param cycle      cycle, 1-based, or null
+	 * @param splits     splits with 1-based taxa
+	 * @param useWeights use split weights or otherwise give all splits weight 1
+	 * @return matrix, 1-based
+	 */
+	public static double[][] computeSplitDistances(int ntax, int[] cycle, List<ASplit> splits, boolean useWeights) {
+		final var circular = computeCircularSplitDistances(ntax, cycle, splits, useWeights);
+		if (circular != null)
+			return circular;
+
+		final var splitDist = new double[ntax + 1][ntax + 1];
+		for (var split : splits) {
+			final var weight = (useWeights ? split.getWeight() : 1);
+			for (var i : BitSetUtils.members(split.getA())) {
+				for (var j : BitSetUtils.members(split.getB())) {
+					splitDist[i][j] += weight;
+					splitDist[j][i] += weight;
 				}
 			}
 		}
+		return splitDist;
+	}
+
+	/**
+	 * computes the split distances of splits that are circular with respect to the given cycle, in O(ntax^2) time
+	 * <p>
+	 * Number the positions of the cycle 1..n, and describe each split by the interval i..j of positions, 2&le;i&le;j,
+	 * of the side that does not contain the first taxon of the cycle. Let d(p,q) be the split distance between the
+	 * taxa at positions p&lt;q. A split separates them, if exactly one of its cuts, after positions i-1 and j, lies in
+	 * p..q-1, so d(p,p+1) is the weight of all splits with i=p+1 or j=p, and for q&gt;p+1,
+	 * d(p,q)=d(p,q-1)+d(p+1,q)-d(p+1,q-1)-2w(p+1,q-1), where w(i,j) is the weight of the split for i..j and d(p,p)=0.
+	 *
+	 * @param ntax       number of taxa
+	 * @param cycle      cycle, 1-based, or null
+	 * @param splits     splits with 1-based taxa
+	 * @param useWeights use split weights or otherwise give all splits weight 1
+	 * @return matrix, 1-based, or null, if there is no cycle on all taxa or not all splits are circular
+	 */
+	public static double[][] computeCircularSplitDistances(int ntax, int[] cycle, List<ASplit> splits, boolean useWeights) {
+		if (cycle == null || cycle.length != ntax + 1 || ntax < 2)
+			return null;
+		final var position = new int[ntax + 1];
+		for (var p = 1; p <= ntax; p++) {
+			if (cycle[p] < 1 || cycle[p] > ntax || position[cycle[p]] != 0)
+				return null;
+			position[cycle[p]] = p;
+		}
+
+		// the weight of the split for interval i..j is kept in the lower triangle, at [j][i]
+		final var dist = new double[ntax + 1][ntax + 1];
+		for (var split : splits) {
+			if (split.getA().cardinality() + split.getB().cardinality() != ntax)
+				return null;
+			final var part = split.getPartNotContaining(cycle[1]);
+			if (part.isEmpty())
+				continue;
+			var i = ntax;
+			var j = 1;
+			for (var t = part.nextSetBit(0); t != -1; t = part.nextSetBit(t + 1)) {
+				if (t > ntax)
+					return null;
+				i = Math.min(i, position[t]);
+				j = Math.max(j, position[t]);
+			}
+			if (j - i + 1 != part.cardinality())
+				return null;
+			dist[j][i] += (useWeights ? split.getWeight() : 1);
+		}
+
+		// distances between neighbors in the upper triangle, at [p][p+1]
+		for (var p = 1; p < ntax; p++) {
+			var sum = 0.0;
+			for (var j = p + 1; j <= ntax; j++)
+				sum += dist[j][p + 1];
+			for (var i = 2; i <= p; i++)
+				sum += dist[p][i];
+			dist[p][p + 1] = sum;
+		}
+		for (var k = 2; k < ntax; k++) {
+			for (var p = 1; p + k <= ntax; p++) {
+				final var q = p + k;
+				dist[p][q] = dist[p][q - 1] + dist[p + 1][q] - (k > 2 ? dist[p + 1][q - 1] : 0) - 2 * dist[q - 1][p + 1];
+			}
+		}
+		for (var p = 1; p <= ntax; p++) {
+			dist[p][p] = 0;
+			for (var q = p + 1; q <= ntax; q++)
+				dist[q][p] = dist[p][q];
+		}
+
+		// from positions to taxa: permute the rows, then the entries of each row
+		final var rows = new double[ntax + 1][];
+		rows[0] = dist[0];
+		for (var p = 1; p <= ntax; p++)
+			rows[cycle[p]] = dist[p];
+		final var row = new double[ntax + 1];
+		for (var t = 1; t <= ntax; t++) {
+			System.arraycopy(rows[t], 0, row, 0, ntax + 1);
+			for (var p = 1; p <= ntax; p++)
+				rows[t][cycle[p]] = row[p];
+		}
+		return rows;
 	}
 
 	/**
@@ -213,17 +338,17 @@ public static boolean computeSplitsForLessThan4Taxa(TaxaBlock taxaBlock, Distanc
 	 * @return comparison value
 	 */
 	public static int compareMaxDistanceInSplitParts(int ntax, SplitsBlock splitsBlock, int split, boolean useWeights) {
-		var distances = splitsToDistances(ntax, splitsBlock.getSplits(), useWeights);
+		var distances = computeSplitDistances(ntax, splitsBlock.getCycle(false), splitsBlock.getSplits(), useWeights);
 
 		var maxA = 0.0;
 		for (var a : BitSetUtils.members(splitsBlock.get(split).getA())) {
 			for (var b : BitSetUtils.members(splitsBlock.get(split).getA(), a + 1))
-				maxA = Math.max(maxA, distances.get(a, b));
+				maxA = Math.max(maxA, distances[a][b]);
 		}
 		var maxB = 0.0;
 		for (var a : BitSetUtils.members(splitsBlock.get(split).getB())) {
 			for (var b : BitSetUtils.members(splitsBlock.get(split).getB(), a + 1))
-				maxB = Math.max(maxB, distances.get(a, b));
+				maxB = Math.max(maxB, distances[a][b]);
 		}
 		return Double.compare(maxA, maxB);
 	}
@@ -329,7 +454,7 @@ static public int[] computeCycle(int ntax, List<ASplit> splits) {
 					final var pso = Basic.hideSystemOut();
 					final var pse = Basic.hideSystemErr();
 					try {
-						return NeighborNetCycleSplitsTree4.compute(ntax, splitsToDistances(ntax, splits, true).getDistances());
+						return NeighborNetCycleSplitsTree4.compute(splitsToDistances(ntax, splits, true));
 					} finally {
 						Basic.restoreSystemErr(pse);
 						Basic.restoreSystemOut(pso);
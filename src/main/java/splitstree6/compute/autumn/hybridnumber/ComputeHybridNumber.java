@@ -21,7 +21,6 @@
 import jloda.phylo.PhyloTree;
 import jloda.util.*;
 import jloda.util.progress.ProgressListener;
-import org.apache.commons.collections4.map.LRUMap;
 import splitstree6.compute.autumn.*;
 import splitstree6.data.TaxaBlock;
 
@@ -40,7 +39,7 @@ public class ComputeHybridNumber {
 	final public static int LARGE = 1000;
 	public static final boolean checking = false;
 
-	final private LRUMap<String, Integer> lookupTable = new LRUMap<>(5000000);
+	final private LookupTable lookupTable = new LookupTable(ProgramProperties.get("hybrid-number-lookup-table-size", 5000000));
 	final private ProgressListener progressListener;
 
 	private long startTime = 0;
@@ -191,7 +190,7 @@ protected int done() {
 		System.err.println("Best score: " + bestScore.get());
 		if (verbose) {
 			System.err.println("Time: " + ((System.currentTimeMillis() - startTime) / 1000) + " secs");
-			System.err.println("(Size of lookup table: " + lookupTable.size() + ")");
+			System.err.println("(Lookup table: " + lookupTable + ")");
 		}
 		lookupTable.clear();
 		scheduledThreadPoolExecutor.shutdown();
@@ -225,23 +224,17 @@ private int computeHybridNumberRec(final Root root1, final Root root2, boolean i
 
 		BitSet taxa = root1.getTaxa();
 
-		String key = root1.toStringTreeSparse() + root2.toStringTreeSparse();
-		// System.err.println("Key: "+key);
-		Integer value;
-		synchronized (lookupTable) {
-			value = (Integer) lookupTable.get(key);
-			if (value != null)
-				return value;
-		}
+		final var key = LookupTable.computeKey(root1, root2);
+		var value = lookupTable.get(key);
+		if (value != null)
+			return value;
 
 		if (!root2.getTaxa().equals(taxa))
 			throw new RuntimeException("Unequal taxon sets: X=" + StringUtils.toString(root1.getTaxa()) + " vs " + StringUtils.toString(root2.getTaxa()));
 		if (!isReduced) {
 			switch (SubtreeReduction.apply(root1, root2, null)) {
 				case ISOMORPHIC:
-					synchronized (lookupTable) {
-						lookupTable.put(key, 0);
-					}
+					lookupTable.putIfSmaller(key, 0);
 					if (topLevel) {
 						bestScore.lowerTo(0);
 						progressListener.setSubtask("Best score: " + bestScore);
@@ -343,11 +336,7 @@ private int computeHybridNumberRec(final Root root1, final Root root2, boolean i
 					progressListener.setSubtask("Current best score: " + bestScore);
 				}
 
-				synchronized (lookupTable) {
-					Integer old = (Integer) lookupTable.get(key);
-					if (old == null || total < old)
-						lookupTable.put(key, total);
-				}
+				lookupTable.putIfSmaller(key, total);
 				return score1.get() + score2.get();
 			}
 		}
@@ -449,11 +438,7 @@ private int computeHybridNumberRec(final Root root1, final Root root2, boolean i
 			return LARGE;
 		}
 		// return the best value
-		synchronized (lookupTable) {
-			var old = (Integer) lookupTable.get(key);
-			if (old == null || old > bestSubH.get())
-				lookupTable.put(key, bestSubH.get());
-		}
+		lookupTable.putIfSmaller(key, bestSubH.get());
 		return bestSubH.get();
 	}
 }
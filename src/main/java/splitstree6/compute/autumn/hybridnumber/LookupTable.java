@@ -0,0 +1,342 @@
+/*
+ *  LookupTable.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.compute.autumn.hybridnumber;
+
+import splitstree6.compute.autumn.Root;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * size-bounded table of the hybrid numbers of pairs of reduced trees, shared by all worker threads
+ * <p>
+ * A pair of trees is keyed by a compact canonical code, one byte per node for up to 124 taxa, and by a 128-bit hash
+ * of that code. The hashes are compared first, the codes only to rule out collisions. The table is split into
+ * stripes, each with its own lock, and each stripe is set-associative: the hash determines a set of WAYS slots, and
+ * when all are in use, the one that was used least recently is evicted. A stripe grows until the table holds its
+ * maximum number of entries.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+class LookupTable {
+	private static final int STRIPES = 64;
+	private static final int WAYS = 8;
+	private static final int INITIAL_SETS = 16;
+
+	private final int maxSetsPerStripe;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder collisions = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * constructor
+	 *
+	 * @param maxSize maximum number of entries
+	 */
+	LookupTable(int maxSize) {
+		var sets = INITIAL_SETS;
+		while ((long) 2 * sets * WAYS * STRIPES <= maxSize)
+			sets *= 2;
+		maxSetsPerStripe = sets;
+		for (var i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * computes the key of a pair of trees
+	 *
+	 * @param root1 first tree, in lexicographic order
+	 * @param root2 second tree, in lexicographic order
+	 * @return key
+	 */
+	static Key computeKey(Root root1, Root root2) {
+		final var code = new CodeBuilder();
+		code.add(root1);
+		code.add(CodeBuilder.SEPARATOR);
+		code.add(root2);
+		return new Key(code.toArray());
+	}
+
+	/**
+	 * gets the value for a key
+	 *
+	 * @return value or null
+	 */
+	Integer get(Key key) {
+		final var value = stripe(key).get(key);
+		if (value != null)
+			hits.increment();
+		else
+			misses.increment();
+		return value;
+	}
+
+	/**
+	 * puts the value for a key, unless the table already contains a smaller one
+	 */
+	void putIfSmaller(Key key, int value) {
+		stripe(key).putIfSmaller(key, value);
+	}
+
+	/**
+	 * removes all entries and resets the counts
+	 */
+	void clear() {
+		for (var stripe : stripes)
+			stripe.clear();
+		hits.reset();
+		misses.reset();
+		collisions.reset();
+		evictions.reset();
+	}
+
+	/**
+	 * gets the number of entries
+	 */
+	int size() {
+		var size = 0;
+		for (var stripe : stripes)
+			size += stripe.size();
+		return size;
+	}
+
+	/**
+	 * gets the number of lookups that found a value
+	 */
+	long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * gets the number of lookups that found no value
+	 */
+	long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * gets the number of lookups that found an entry with the same hash, but a different code
+	 */
+	long getCollisions() {
+		return collisions.sum();
+	}
+
+	/**
+	 * gets the number of entries evicted to make room for others
+	 */
+	long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "size: " + size() + ", hits: " + getHits() + ", misses: " + getMisses() + ", collisions: " + getCollisions() + ", evictions: " + getEvictions();
+	}
+
+	private Stripe stripe(Key key) {
+		return stripes[(int) (key.hash1 >>> 58)];
+	}
+
+	/**
+	 * a pair of trees, as a code and its 128-bit hash
+	 */
+	static final class Key {
+		private final byte[] code;
+		private final long hash1;
+		private final long hash2;
+
+		private Key(byte[] code) {
+			this.code = code;
+			var h1 = 0x243F6A8885A308D3L ^ code.length;
+			var h2 = 0x13198A2E03707344L ^ ((long) code.length << 32);
+			for (var b : code) {
+				h1 = (h1 ^ (b & 0xff)) * 0x9E3779B97F4A7C15L;
+				h2 = Long.rotateLeft(h2 + (b & 0xff), 31) * 0xC2B2AE3D27D4EB4FL;
+			}
+			hash1 = mix(h1 ^ Long.rotateLeft(h2, 17));
+			hash2 = mix(h2 ^ Long.rotateLeft(h1, 41));
+		}
+
+		private static long mix(long h) {
+			h ^= (h >>> 33);
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= (h >>> 33);
+			h *= 0xC4CEB9FE1A85EC53L;
+			return h ^ (h >>> 33);
+		}
+	}
+
+	/**
+	 * writes a tree in bracket format, one byte for each parenthesis and a variable number for each leaf, whose
+	 * first taxon is written in groups of 7 bits
+	 */
+	private static final class CodeBuilder {
+		private static final int OPEN = 0;
+		private static final int CLOSE = 1;
+		static final int SEPARATOR = 2;
+		private static final int FIRST_TAXON = 3;
+
+		private byte[] bytes = new byte[64];
+		private int length = 0;
+
+		void add(Root v) {
+			if (v.getOutDegree() == 0) {
+				var value = v.getTaxa().nextSetBit(0) + FIRST_TAXON;
+				while (value >= 0x80) {
+					add((value & 0x7f) | 0x80);
+					value >>>= 7;
+				}
+				add(value);
+			} else {
+				add(OPEN);
+				for (var e : v.outEdges())
+					add((Root) e.getTarget());
+				add(CLOSE);
+			}
+		}
+
+		void add(int value) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, 2 * length);
+			bytes[length++] = (byte) value;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+	}
+
+	/**
+	 * a part of the table, guarded by its own lock
+	 */
+	private final class Stripe {
+		private long[] hashes1;
+		private long[] hashes2;
+		private byte[][] codes;
+		private int[] values;
+		private long[] lastUsed;
+		private int size;
+		private long clock;
+
+		Stripe() {
+			allocate(INITIAL_SETS);
+		}
+
+		private void allocate(int sets) {
+			hashes1 = new long[sets * WAYS];
+			hashes2 = new long[sets * WAYS];
+			codes = new byte[sets * WAYS][];
+			values = new int[sets * WAYS];
+			lastUsed = new long[sets * WAYS];
+			size = 0;
+		}
+
+		private int firstSlot(long hash2) {
+			return (int) (hash2 & (codes.length / WAYS - 1)) * WAYS;
+		}
+
+		/**
+		 * finds the slot of a key, counting collisions
+		 *
+		 * @return slot or -1
+		 */
+		private int find(Key key) {
+			final var first = firstSlot(key.hash2);
+			for (var slot = first; slot < first + WAYS; slot++) {
+				if (codes[slot] != null && hashes1[slot] == key.hash1 && hashes2[slot] == key.hash2) {
+					if (Arrays.equals(codes[slot], key.code))
+						return slot;
+					collisions.increment();
+				}
+			}
+			return -1;
+		}
+
+		synchronized Integer get(Key key) {
+			final var slot = find(key);
+			if (slot == -1)
+				return null;
+			lastUsed[slot] = ++clock;
+			return values[slot];
+		}
+
+		synchronized void putIfSmaller(Key key, int value) {
+			var slot = find(key);
+			if (slot != -1) {
+				if (value < values[slot])
+					values[slot] = value;
+				lastUsed[slot] = ++clock;
+				return;
+			}
+			if (size >= (codes.length / 4) * 3 && codes.length / WAYS < maxSetsPerStripe)
+				grow();
+			insert(key.hash1, key.hash2, key.code, value, ++clock);
+		}
+
+		/**
+		 * inserts an entry into a free slot of its set, or into the slot used least recently
+		 */
+		private void insert(long hash1, long hash2, byte[] code, int value, long used) {
+			final var first = firstSlot(hash2);
+			var slot = first;
+			for (var s = first; s < first + WAYS; s++) {
+				if (codes[s] == null) {
+					slot = s;
+					break;
+				} else if (lastUsed[s] < lastUsed[slot])
+					slot = s;
+			}
+			if (codes[slot] == null)
+				size++;
+			else
+				evictions.increment();
+			hashes1[slot] = hash1;
+			hashes2[slot] = hash2;
+			codes[slot] = code;
+			values[slot] = value;
+			lastUsed[slot] = used;
+		}
+
+		private void grow() {
+			final var oldHashes1 = hashes1;
+			final var oldHashes2 = hashes2;
+			final var oldCodes = codes;
+			final var oldValues = values;
+			final var oldLastUsed = lastUsed;
+			allocate(2 * codes.length / WAYS);
+			for (var slot = 0; slot < oldCodes.length; slot++) {
+				if (oldCodes[slot] != null)
+					insert(oldHashes1[slot], oldHashes2[slot], oldCodes[slot], oldValues[slot], oldLastUsed[slot]);
+			}
+		}
+
+		synchronized void clear() {
+			allocate(INITIAL_SETS);
+			clock = 0;
+		}
+
+		synchronized int size() {
+			return size;
+		}
+	}
+}
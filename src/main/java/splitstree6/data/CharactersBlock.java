@@ -22,6 +22,7 @@
 import splitstree6.algorithms.characters.characters2characters.CharactersTaxaFilter;
 import splitstree6.data.parts.AmbiguityCodes;
 import splitstree6.data.parts.CharactersType;
+import splitstree6.data.parts.SitePatterns;
 import splitstree6.data.parts.StateLabeler;
 import splitstree6.workflow.DataBlock;
 import splitstree6.workflow.DataTaxaFilter;
@@ -60,6 +61,10 @@ public class CharactersBlock extends DataBlock {
 
 	private CharactersFormat format;
 
+	private SitePatterns sitePatterns; // computed on demand, see getSitePatterns()
+
+	private BitSet sharedRows; // rows, 0-based, that belong to another block, see shareRow()
+
 	/**
 	 * Number of colors used.
 	 */
@@ -108,6 +113,8 @@ public CharactersBlock(CharactersBlock src, char[][] matrixToUse) {
 	public void clear() {
 		super.clear();
 		matrix = new char[0][0];
+		invalidateSitePatterns();
+		sharedRows = null;
 	}
 
 	/**
@@ -121,6 +128,8 @@ public int size() {
 
 	public void setDimension(int ntax, int nchar) {
 		matrix = new char[ntax][nchar];
+		invalidateSitePatterns();
+		sharedRows = null;
 	}
 
 	/**
@@ -159,13 +168,49 @@ public char get(int t, int pos) {
 	 * @param pos in range 1-nChar
 	 */
 	public void set(int t, int pos, char value) {
+		unshareRow(t - 1);
 		matrix[t - 1][pos - 1] = Character.toLowerCase(value);
+		invalidateSitePatterns();
 	}
 
+	/**
+	 * gets the matrix for writing. Rows shared with another block, see shareRow(), are copied first, and the site
+	 * patterns are discarded. Code that only reads should use getMatrixReadOnly()
+	 *
+	 * @return matrix
+	 */
 	public char[][] getMatrix() {
+		if (sharedRows != null) {
+			for (var t = sharedRows.nextSetBit(0); t != -1; t = sharedRows.nextSetBit(t + 1))
+				matrix[t] = matrix[t].clone();
+			sharedRows = null;
+		}
+		invalidateSitePatterns();
+		return matrix;
+	}
+
+	/**
+	 * gets the matrix for reading, without copying any rows. Its rows may belong to another block, see shareRow(),
+	 * so they must not be modified
+	 *
+	 * @return matrix
+	 */
+	public char[][] getMatrixReadOnly() {
 		return matrix;
 	}
 
+	/**
+	 * copies a row that is shared with another block, so that it can be written
+	 *
+	 * @param t 0-based index
+	 */
+	private void unshareRow(int t) {
+		if (sharedRows != null && sharedRows.get(t)) {
+			matrix[t] = matrix[t].clone();
+			sharedRows.clear(t);
+		}
+	}
+
 	public boolean isUseCharacterWeights() {
 		return characterWeights != null;
 	}
@@ -177,6 +222,7 @@ public void setUseCharacterWeights(boolean use) {
 		} else {
 			characterWeights = null;
 		}
+		invalidateSitePatterns();
 	}
 
 	/**
@@ -190,6 +236,7 @@ public void setCharacterWeights(double[] characterWeights) {
 		else {
 			this.characterWeights = characterWeights;
 		}
+		invalidateSitePatterns();
 	}
 
 	/**
@@ -216,6 +263,7 @@ public double getCharacterWeight(int pos) {
 	 */
 	public void setCharacterWeight(int pos, double w) {
 		this.characterWeights[pos - 1] = w;
+		invalidateSitePatterns();
 	}
 
 	public boolean isUseCharacterLabels() {
@@ -262,6 +310,7 @@ public CharactersType getDataType() {
 
 	public void setDataType(CharactersType dataType) {
 		this.dataType = dataType;
+		invalidateSitePatterns();
 		if (symbols.isBlank())
 			resetSymbols();
 		if (false) {
@@ -280,6 +329,7 @@ public boolean isDiploid() {
 
 	public void setDiploid(boolean diploid) {
 		this.diploid = diploid;
+		invalidateSitePatterns();
 	}
 
 	public char getGapCharacter() {
@@ -289,6 +339,7 @@ public char getGapCharacter() {
 	public void setGapCharacter(char gapCharacter) {
 		if (gapCharacter != 0)
 			this.gapCharacter = gapCharacter;
+		invalidateSitePatterns();
 	}
 
 	public char getMissingCharacter() {
@@ -298,6 +349,7 @@ public char getMissingCharacter() {
 	public void setMissingCharacter(char missingCharacter) {
 		if (missingCharacter != 0)
 			this.missingCharacter = missingCharacter;
+		invalidateSitePatterns();
 	}
 
 	public String getSymbolsForColor() {
@@ -349,6 +401,7 @@ public String getStateSymbols() {
 	public void setSymbols(String symbols) {
 		this.symbols = symbols.toLowerCase();
 		computeColors();
+		invalidateSitePatterns();
 	}
 
 	/**
@@ -425,6 +478,7 @@ public boolean isRespectCase() {
 
 	public void setRespectCase(boolean respectCase) {
 		this.respectCase = respectCase; // todo: respect case isn't implemented and is ignored
+		invalidateSitePatterns();
 	}
 
 	public StateLabeler getStateLabeler() {
@@ -451,6 +505,21 @@ public void copyRow(CharactersBlock parent, int parentIndex, int targetIndex) {
 		var tar = new char[src.length];
 		System.arraycopy(src, 0, tar, 0, src.length);
 		matrix[targetIndex - 1] = tar;
+		if (sharedRows != null)
+			sharedRows.clear(targetIndex - 1);
+		invalidateSitePatterns();
+	}
+
+	/**
+	 * uses a row of the parent as a row of this block, without copying it. The row is copied when it is first
+	 * written, through set(), getRow0() or getMatrix(), so the parent is never changed through this block
+	 */
+	public void shareRow(CharactersBlock parent, int parentIndex, int targetIndex) {
+		matrix[targetIndex - 1] = parent.matrix[parentIndex - 1];
+		if (sharedRows == null)
+			sharedRows = new BitSet();
+		sharedRows.set(targetIndex - 1);
+		invalidateSitePatterns();
 	}
 
 	/**
@@ -470,15 +539,62 @@ public char[] getRow1(int t) {
 
 
 	/**
-	 * gets row with coordinates starting at 0
+	 * gets row with coordinates starting at 0, for writing. A row shared with another block, see shareRow(), is
+	 * copied first, and the site patterns are discarded. Code that only reads should use getRow0ReadOnly()
 	 *
 	 * @param t 0-based index
 	 * @return row, 0-based
 	 */
 	public char[] getRow0(int t) {
+		unshareRow(t);
+		invalidateSitePatterns();
 		return matrix[t];
 	}
 
+	/**
+	 * gets row with coordinates starting at 0, for reading, without copying it. The row may belong to another block,
+	 * see shareRow(), so it must not be modified
+	 *
+	 * @param t 0-based index
+	 * @return row, 0-based
+	 */
+	public char[] getRow0ReadOnly(int t) {
+		return matrix[t];
+	}
+
+
+	/**
+	 * gets the distinct site patterns and the characters compressed to one site per pattern. These are computed on
+	 * first use and kept until the block is modified through one of its setters, or getMatrix() or getRow0() hand
+	 * out an array for writing
+	 *
+	 * @return site patterns
+	 */
+	public synchronized SitePatterns getSitePatterns() {
+		if (sitePatterns == null)
+			sitePatterns = SitePatterns.compute(this);
+		return sitePatterns;
+	}
+
+	/**
+	 * discards the site patterns, so that they are recomputed on next use. All setters call this, as do getMatrix()
+	 * and getRow0()
+	 */
+	public synchronized void invalidateSitePatterns() {
+		sitePatterns = null;
+	}
+
+	/**
+	 * sets the site patterns of a block that is itself the compressed characters of them, such as a bootstrap
+	 * replicate, see SitePatterns.createReplicate()
+	 *
+	 * @param sitePatterns site patterns whose compressed characters are this block
+	 */
+	public synchronized void setSitePatterns(SitePatterns sitePatterns) {
+		if (sitePatterns.getCompressedCharacters() != this)
+			throw new IllegalArgumentException("site patterns do not belong to this block");
+		this.sitePatterns = sitePatterns;
+	}
 
 	/**
 	 * "On demand" ambiguity check.
@@ -494,6 +610,7 @@ public boolean isHasAmbiguityCodes() {
 
 	public void setHasAmbiguityCodes(boolean hasAmbiguityCodes) {
 		this.hasAmbiguityCodes = hasAmbiguityCodes;
+		invalidateSitePatterns();
 	}
 
 	@Override
@@ -20,13 +20,23 @@
 package splitstree6.data;
 
 import splitstree6.algorithms.distances.distances2distances.DistancesTaxaFilter;
+import splitstree6.data.parts.DistanceMatrix;
 import splitstree6.workflow.DataBlock;
 import splitstree6.workflow.DataTaxaFilter;
 
 public class DistancesBlock extends DataBlock {
 	public static final String BLOCK_NAME = "DISTANCES";
 
-	private double[][] distances;
+	/**
+	 * from this number of taxa on, setNtax(int) uses packed storage
+	 */
+	public static final int PACKED_STORAGE_THRESHOLD = 5000;
+	/**
+	 * setNtax(int) maps a packed matrix that would take more than this fraction of the maximum heap size
+	 */
+	public static final double MAX_HEAP_FRACTION = 0.25;
+
+	private DistanceMatrix distances;
 
 	private DistancesFormat format = new DistancesFormat();
 
@@ -34,30 +44,73 @@ public class DistancesBlock extends DataBlock {
 	 * constructor
 	 */
 	public DistancesBlock() {
-		distances = new double[0][0];
+		distances = DistanceMatrix.create(0, DistanceMatrix.Storage.Full);
 	}
 
 	/**
 	 * shallow copy
 	 */
 	public void copy(DistancesBlock that) {
-		distances = that.getDistances();
+		distances = that.distances;
+		format = that.getFormat();
+	}
+
+	/**
+	 * shallow copy of the given rows and columns: the block shares the matrix of that rather than copying it, and
+	 * copies its values on the first call of set()
+	 *
+	 * @param that  the block to copy from
+	 * @param taxa  the taxon of that, 1-based, for each taxon of this block, 0-based
+	 */
+	public void copy(DistancesBlock that, int[] taxa) {
+		final var index = new int[taxa.length];
+		for (var i = 0; i < taxa.length; i++)
+			index[i] = taxa[i] - 1;
+		distances = DistanceMatrix.submatrix(that.distances, index);
 		format = that.getFormat();
 	}
 
 	@Override
 	public void clear() {
 		super.clear();
-		distances = new double[0][0];
+		distances = DistanceMatrix.create(0, DistanceMatrix.Storage.Full);
 	}
 
+	/**
+	 * sets the number of taxa, using full storage for small matrices and packed storage for large ones. Use
+	 * setNtax(int, DistanceMatrix.Storage) when the values to be set might not be symmetric
+	 */
 	public void setNtax(int n) {
-		distances = new double[n][n];
+		setNtax(n, getDefaultStorage(n));
+	}
+
+	/**
+	 * sets the number of taxa and the backing store, all values are 0
+	 */
+	public void setNtax(int n, DistanceMatrix.Storage storage) {
+		distances = DistanceMatrix.create(n, storage);
+	}
+
+	/**
+	 * gets the storage that setNtax(int) uses for the given number of taxa: full storage for small matrices, packed
+	 * storage for large ones, and a memory-mapped file for those that would take too much of the heap
+	 */
+	public static DistanceMatrix.Storage getDefaultStorage(int n) {
+		if (n < PACKED_STORAGE_THRESHOLD)
+			return DistanceMatrix.Storage.Full;
+		else if (n <= DistanceMatrix.MAX_PACKED_SIZE && (double) n * (n - 1) / 2 * Double.BYTES <= MAX_HEAP_FRACTION * Runtime.getRuntime().maxMemory())
+			return DistanceMatrix.Storage.Packed;
+		else
+			return DistanceMatrix.Storage.Mapped;
+	}
+
+	public DistanceMatrix.Storage getStorage() {
+		return distances.getStorage();
 	}
 
 	@Override
 	public int size() {
-		return distances.length;
+		return distances.size();
 	}
 
 	/**
@@ -68,14 +121,14 @@ public int size() {
 	 * @return value
 	 */
 	public double get(int i, int j) {
-		return distances[i - 1][j - 1];
+		return distances.get(i - 1, j - 1);
 	}
 
 	/**
-	 * sets the value, 1-based
+	 * sets the value, 1-based. For packed storage, this also sets the value for j and i
 	 */
 	public void set(int i, int j, double value) {
-		distances[i - 1][j - 1] = value;
+		distances.set(i - 1, j - 1, value);
 	}
 
 	public int getNtax() {
@@ -86,30 +139,81 @@ public int getNtax() {
 	 * sets the value for s and t, and t and s, 1-based
 	 */
 	public void setBoth(int s, int t, double value) {
-		distances[s - 1][t - 1] = distances[t - 1][s - 1] = value;
+		distances.setBoth(s - 1, t - 1, value);
+	}
+
+	/**
+	 * sets a value of a square matrix that is read row by row, 1-based. For full storage, this is set(). Packed and
+	 * mapped storage cannot hold two different values for row and col, and col and row: when col&lt;row, the value for
+	 * col and row has already been read, and both are set to the mean of the two, as a reader that symmetrizes the
+	 * matrix afterward would do
+	 *
+	 * @return true, if the value differs from the one already read for col and row
+	 */
+	public boolean setInSquareMatrix(int row, int col, double value) {
+		if (col < row && getStorage() != DistanceMatrix.Storage.Full) {
+			final var other = get(col, row);
+			if (other != value) {
+				set(row, col, 0.5 * (other + value));
+				return true;
+			}
+			return false;
+		}
+		set(row, col, value);
+		return false;
 	}
 
 	/**
-	 * set distances, change dimensions if necessary. If dimensions are changed, delete variances
+	 * set distances, change dimensions if necessary. A matrix that is not symmetric is kept in full storage
 	 */
 	public void set(double[][] distances) {
-		if (this.distances.length != distances.length) {
-			this.distances = new double[distances.length][distances.length];
+		final var n = distances.length;
+		var storage = getDefaultStorage(n);
+		if (storage != DistanceMatrix.Storage.Full && !isSymmetric(distances))
+			storage = DistanceMatrix.Storage.Full;
+		if (this.distances.size() != n || this.distances.getStorage() != storage)
+			this.distances = DistanceMatrix.create(n, storage);
+
+		for (int i = 0; i < n; i++) {
+			for (int j = (storage == DistanceMatrix.Storage.Full ? 0 : i); j < n; j++)
+				this.distances.set(i, j, distances[i][j]);
 		}
+	}
 
-		for (int i = 0; i < distances.length; i++) {
-			System.arraycopy(distances[i], 0, this.distances[i], 0, distances.length);
+	private static boolean isSymmetric(double[][] distances) {
+		for (var i = 0; i < distances.length; i++) {
+			for (var j = i + 1; j < distances.length; j++) {
+				if (distances[i][j] != distances[j][i])
+					return false;
+			}
 		}
+		return true;
 	}
 
+	/**
+	 * copies row i, 1-based, to target[offset],...,target[offset+ntax-1]. This is much faster than calling get()
+	 * for each entry, in particular for packed storage
+	 */
+	public void getRow(int i, double[] target, int offset) {
+		distances.getRow(i - 1, target, offset);
+	}
+
+	/**
+	 * copies row i, 1-based, to target[offset],...,target[offset+ntax-1], in single precision
+	 */
+	public void getRow(int i, float[] target, int offset) {
+		distances.getRow(i - 1, target, offset);
+	}
 
 	/**
-	 * gets distances, 0-based
+	 * gets a copy of the distances, 0-based. Changes are not written through. The copy needs as much memory as a
+	 * block in full storage, and twice or four times that of a packed one, so use get() or getRow() instead, where
+	 * possible
 	 *
 	 * @return distances matrix, 0-based
 	 */
 	public double[][] getDistances() {
-		return distances;
+		return distances.toArray();
 	}
 
 	@Override
@@ -65,7 +65,7 @@ public void setNode(DataNode node) {
 		if (getNode().getOwner() != null) {
 			var mainWindow = ((Workflow) getNode().getOwner()).getMainWindow();
 
-			if (viewTab == null) {
+			if (viewTab == null && mainWindow != null) { // a workflow without main window (headless / tool use) gets no UI
 				Platform.runLater(() -> {
 					viewTab = new ViewTab(mainWindow, getNode(), false);
 					var displayTextView = new DisplayTextView(mainWindow, getName(), false);
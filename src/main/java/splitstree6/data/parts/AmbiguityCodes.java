@@ -90,7 +90,7 @@ public static boolean isAmbiguityCode(CharactersBlock charactersBlock) {
 		}
 
 		for (int t = 0; t < charactersBlock.getNtax(); t++) {
-			for (char c : charactersBlock.getRow0(t))
+			for (char c : charactersBlock.getRow0ReadOnly(t))
 				if (isAmbiguityCode(c)) {
 					charactersBlock.setHasAmbiguityCodes(true);
 					return true;
@@ -0,0 +1,449 @@
+/*
+ *  DistanceMatrix.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.data.parts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * the backing store of a distances block, a square matrix, 0-based
+ * <p>
+ * Full keeps all n*n entries and so can hold a matrix that is not symmetric, as read from a file before it is
+ * symmetrized. Packed keeps the diagonal and the upper triangle, row by row, in a single array, and thus needs half
+ * the memory; setting (i,j) also sets (j,i). PackedFloat does the same in single precision, a quarter of the memory
+ * of Full. Mapped has the layout of Packed, but keeps the upper triangle off the heap, in a temporary file that is
+ * mapped into memory, so that the matrix may be larger than the heap and the operating system pages it in and out
+ * as needed. Rows are best accessed in order, using getRow().
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public abstract class DistanceMatrix {
+	public enum Storage {Full, Packed, PackedFloat, Mapped}
+
+	/**
+	 * the largest number of taxa whose upper triangle fits into a single array, larger matrices must be mapped
+	 */
+	public static final int MAX_PACKED_SIZE = 65536;
+
+	/**
+	 * creates a matrix of zeros
+	 *
+	 * @param n       number of rows and columns
+	 * @param storage the backing store
+	 * @return new matrix
+	 */
+	public static DistanceMatrix create(int n, Storage storage) {
+		return switch (storage) {
+			case Full -> new Full(new double[n][n]);
+			case Packed -> new Packed(n);
+			case PackedFloat -> new PackedFloat(n);
+			case Mapped -> new Mapped(n);
+		};
+	}
+
+	/**
+	 * creates a view of the given rows and columns of a matrix, which shares the matrix rather than copying it. The
+	 * view is copied to a matrix of its own, of the same storage, on the first call of set()
+	 *
+	 * @param base  matrix whose values are to be viewed
+	 * @param index the row and column of base, 0-based, for each row and column of the view
+	 * @return view
+	 */
+	public static DistanceMatrix submatrix(DistanceMatrix base, int[] index) {
+		if (base instanceof Submatrix submatrix && submatrix.materialized == null) {
+			final var composed = new int[index.length];
+			for (var i = 0; i < index.length; i++)
+				composed[i] = submatrix.index[index[i]];
+			return new Submatrix(submatrix.base, composed);
+		}
+		return new Submatrix(base, index.clone());
+	}
+
+	public abstract Storage getStorage();
+
+	/**
+	 * gets the number of rows and columns
+	 */
+	public abstract int size();
+
+	public abstract double get(int i, int j);
+
+	public abstract void set(int i, int j, double value);
+
+	/**
+	 * sets the values for i and j, and j and i
+	 */
+	public void setBoth(int i, int j, double value) {
+		set(i, j, value);
+		set(j, i, value);
+	}
+
+	/**
+	 * copies row i to target[offset],...,target[offset+n-1]
+	 */
+	public abstract void getRow(int i, double[] target, int offset);
+
+	/**
+	 * copies row i to target[offset],...,target[offset+n-1], in single precision
+	 */
+	public void getRow(int i, float[] target, int offset) {
+		for (var j = 0; j < size(); j++)
+			target[offset + j] = (float) get(i, j);
+	}
+
+	/**
+	 * gets a copy of the matrix as an array
+	 */
+	public double[][] toArray() {
+		final var n = size();
+		final var array = new double[n][n];
+		for (var i = 0; i < n; i++)
+			getRow(i, array[i], 0);
+		return array;
+	}
+
+	private static final class Full extends DistanceMatrix {
+		private final double[][] matrix;
+
+		private Full(double[][] matrix) {
+			this.matrix = matrix;
+		}
+
+		@Override
+		public Storage getStorage() {
+			return Storage.Full;
+		}
+
+		@Override
+		public int size() {
+			return matrix.length;
+		}
+
+		@Override
+		public double get(int i, int j) {
+			return matrix[i][j];
+		}
+
+		@Override
+		public void set(int i, int j, double value) {
+			matrix[i][j] = value;
+		}
+
+		@Override
+		public void getRow(int i, double[] target, int offset) {
+			System.arraycopy(matrix[i], 0, target, offset, matrix.length);
+		}
+	}
+
+	/**
+	 * the layout shared by the packed and mapped stores: the entries (i,j) with i&lt;j, row by row
+	 */
+	private static abstract class PackedBase extends DistanceMatrix {
+		final int n;
+		final double[] diagonal;
+
+		PackedBase(int n) {
+			this.n = n;
+			this.diagonal = new double[n];
+		}
+
+		static void checkPackedSize(int n) {
+			if (n > MAX_PACKED_SIZE)
+				throw new IllegalArgumentException("Too many taxa for packed storage: " + n);
+		}
+
+		static long numberOfPairs(int n) {
+			return (long) n * (n - 1) / 2;
+		}
+
+		/**
+		 * index of (i,j), i&lt;j
+		 */
+		final long index(int i, int j) {
+			return (long) i * (2L * n - i - 1) / 2 + (j - i - 1);
+		}
+
+		@Override
+		public int size() {
+			return n;
+		}
+
+		@Override
+		public double get(int i, int j) {
+			if (i < j)
+				return getAt(index(i, j));
+			else if (i > j)
+				return getAt(index(j, i));
+			else
+				return diagonal[i];
+		}
+
+		@Override
+		public void set(int i, int j, double value) {
+			if (i < j)
+				setAt(index(i, j), value);
+			else if (i > j)
+				setAt(index(j, i), value);
+			else
+				diagonal[i] = value;
+		}
+
+		@Override
+		public void setBoth(int i, int j, double value) {
+			set(i, j, value);
+		}
+
+		@Override
+		public void getRow(int i, double[] target, int offset) {
+			// column i of the rows above, then the diagonal, then the contiguous rest of row i
+			var k = (i > 0 ? index(0, i) : 0L);
+			for (var j = 0; j < i; j++) {
+				target[offset + j] = getAt(k);
+				k += n - j - 2;
+			}
+			target[offset + i] = diagonal[i];
+			if (i + 1 < n)
+				copyAt(index(i, i + 1), target, offset + i + 1, n - i - 1);
+		}
+
+		@Override
+		public void getRow(int i, float[] target, int offset) {
+			var k = (i > 0 ? index(0, i) : 0L);
+			for (var j = 0; j < i; j++) {
+				target[offset + j] = (float) getAt(k);
+				k += n - j - 2;
+			}
+			target[offset + i] = (float) diagonal[i];
+			k = (i + 1 < n ? index(i, i + 1) : 0L);
+			for (var j = i + 1; j < n; j++)
+				target[offset + j] = (float) getAt(k++);
+		}
+
+		abstract double getAt(long k);
+
+		abstract void setAt(long k, double value);
+
+		abstract void copyAt(long k, double[] target, int offset, int length);
+	}
+
+	private static final class Packed extends PackedBase {
+		private final double[] upper;
+
+		private Packed(int n) {
+			super(n);
+			checkPackedSize(n);
+			upper = new double[(int) numberOfPairs(n)];
+		}
+
+		@Override
+		public Storage getStorage() {
+			return Storage.Packed;
+		}
+
+		@Override
+		double getAt(long k) {
+			return upper[(int) k];
+		}
+
+		@Override
+		void setAt(long k, double value) {
+			upper[(int) k] = value;
+		}
+
+		@Override
+		void copyAt(long k, double[] target, int offset, int length) {
+			System.arraycopy(upper, (int) k, target, offset, length);
+		}
+	}
+
+	private static final class PackedFloat extends PackedBase {
+		private final float[] upper;
+
+		private PackedFloat(int n) {
+			super(n);
+			checkPackedSize(n);
+			upper = new float[(int) numberOfPairs(n)];
+		}
+
+		@Override
+		public Storage getStorage() {
+			return Storage.PackedFloat;
+		}
+
+		@Override
+		double getAt(long k) {
+			return upper[(int) k];
+		}
+
+		@Override
+		void setAt(long k, double value) {
+			upper[(int) k] = (float) value;
+		}
+
+		@Override
+		void copyAt(long k, double[] target, int offset, int length) {
+			for (var j = 0; j < length; j++)
+				target[offset + j] = upper[(int) k + j];
+		}
+
+		@Override
+		public void getRow(int i, float[] target, int offset) {
+			var k = (i > 0 ? index(0, i) : 0L);
+			for (var j = 0; j < i; j++) {
+				target[offset + j] = upper[(int) k];
+				k += n - j - 2;
+			}
+			target[offset + i] = (float) diagonal[i];
+			if (i + 1 < n)
+				System.arraycopy(upper, (int) index(i, i + 1), target, offset + i + 1, n - i - 1);
+		}
+	}
+
+	private static final class Mapped extends PackedBase {
+		private static final int SEGMENT_BITS = 27; // 2^27 doubles, that is, 1 GB, per mapping
+		private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+		private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+		private final DoubleBuffer[] segments;
+
+		private Mapped(int n) {
+			super(n);
+			final var pairs = numberOfPairs(n);
+			segments = new DoubleBuffer[(int) ((pairs + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+			try {
+				final var file = Files.createTempFile("distances", ".bin");
+				file.toFile().deleteOnExit();
+				try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					for (var s = 0; s < segments.length; s++) {
+						final var start = (long) s << SEGMENT_BITS;
+						final var length = Math.min(SEGMENT_SIZE, pairs - start);
+						segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start * Double.BYTES, length * Double.BYTES)
+								.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+					}
+				}
+				try {
+					Files.deleteIfExists(file); // the mappings remain valid, on systems that allow this
+				} catch (IOException ignored) {
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		@Override
+		public Storage getStorage() {
+			return Storage.Mapped;
+		}
+
+		@Override
+		double getAt(long k) {
+			return segments[(int) (k >>> SEGMENT_BITS)].get((int) (k & SEGMENT_MASK));
+		}
+
+		@Override
+		void setAt(long k, double value) {
+			segments[(int) (k >>> SEGMENT_BITS)].put((int) (k & SEGMENT_MASK), value);
+		}
+
+		@Override
+		void copyAt(long k, double[] target, int offset, int length) {
+			while (length > 0) {
+				final var segment = segments[(int) (k >>> SEGMENT_BITS)];
+				final var index = (int) (k & SEGMENT_MASK);
+				final var count = Math.min(length, SEGMENT_SIZE - index);
+				segment.get(index, target, offset, count);
+				k += count;
+				offset += count;
+				length -= count;
+			}
+		}
+	}
+
+	/**
+	 * a view of some rows and columns of another matrix, see submatrix()
+	 */
+	private static final class Submatrix extends DistanceMatrix {
+		private final DistanceMatrix base;
+		private final int[] index;
+		private volatile DistanceMatrix materialized;
+
+		private Submatrix(DistanceMatrix base, int[] index) {
+			this.base = base;
+			this.index = index;
+		}
+
+		@Override
+		public Storage getStorage() {
+			return base.getStorage();
+		}
+
+		@Override
+		public int size() {
+			return index.length;
+		}
+
+		@Override
+		public double get(int i, int j) {
+			final var matrix = materialized;
+			return (matrix != null ? matrix.get(i, j) : base.get(index[i], index[j]));
+		}
+
+		@Override
+		public void set(int i, int j, double value) {
+			materialize().set(i, j, value);
+		}
+
+		@Override
+		public void getRow(int i, double[] target, int offset) {
+			final var matrix = materialized;
+			if (matrix != null)
+				matrix.getRow(i, target, offset);
+			else if (base.getStorage() == Storage.Full) {
+				for (var j = 0; j < index.length; j++)
+					target[offset + j] = base.get(index[i], index[j]);
+			} else {
+				final var row = new double[base.size()];
+				base.getRow(index[i], row, 0);
+				for (var j = 0; j < index.length; j++)
+					target[offset + j] = row[index[j]];
+			}
+		}
+
+		private synchronized DistanceMatrix materialize() {
+			if (materialized == null) {
+				final var n = index.length;
+				final var matrix = create(n, base.getStorage());
+				final var row = new double[n];
+				for (var i = 0; i < n; i++) {
+					getRow(i, row, 0);
+					for (var j = (matrix.getStorage() == Storage.Full ? 0 : i); j < n; j++) // full storage may not be symmetric
+						matrix.set(i, j, row[j]);
+				}
+				materialized = matrix;
+			}
+			return materialized;
+		}
+	}
+}
@@ -184,11 +184,22 @@ public void setName(String name) {
 			this.name = name;
 		}
 
+		/**
+		 * gets the sequence. If only the location of the sequence is known, it is read from the file, using the index
+		 * of the file, see IndexedSequenceFile
+		 */
 		public byte[] getSequence() {
 			if (sequence != null)
 				return sequence;
 			else {
 				if (file != null) {
+					try {
+						final var indexedFile = IndexedSequenceFile.get(file);
+						if (indexedFile != null)
+							return indexedFile.read(offset, getLength());
+					} catch (IOException e) {
+						System.err.println("Warning: indexed access failed: " + file + ": " + e.getMessage());
+					}
 					try (BufferedReader ins = new BufferedReader(new InputStreamReader(FileUtils.getInputStreamPossiblyZIPorGZIP(file)))) {
 						long toSkip = offset;
 						while (toSkip > 0) {
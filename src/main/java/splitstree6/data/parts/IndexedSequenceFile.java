@@ -0,0 +1,440 @@
+/*
+ *  IndexedSequenceFile.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.data.parts;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * random access to the sequences of a FastA file, plain or gzipped, using an index kept in a file beside it
+ * <p>
+ * Like a samtools .fai index, the index records, for each FastA record, where its header and its sequence start,
+ * the number of letters in its sequence and the number of letters and bytes per line. A run of letters is thus
+ * located by arithmetic and copied line by line. The letters of a record whose lines differ in length are found by
+ * skipping line breaks. All offsets refer to the uncompressed file.
+ * <p>
+ * A plain file is memory-mapped. A file compressed with bgzip consists of independently compressed blocks, whose
+ * offsets are also indexed, so decompression starts at the block that contains the requested letters. Any other
+ * gzipped file must be decompressed from its start, but without splitting it into lines.
+ * <p>
+ * The index file is written when a file is first accessed and rebuilt when the file changes. If it can't be
+ * written, the index is only kept in memory.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class IndexedSequenceFile {
+	public static final String INDEX_SUFFIX = ".st6fai";
+	private static final String INDEX_HEADER = "#st6fai";
+	private static final int INDEX_VERSION = 1;
+
+	private enum Compression {plain, bgzf, gzip}
+
+	private static final Map<String, IndexedSequenceFile> cache = new ConcurrentHashMap<>();
+
+	private final File file;
+	private final long fileLength;
+	private final long lastModified;
+	private final Compression compression;
+	private final long uncompressedLength;
+
+	// per record:
+	private final long[] headerOffsets; // sorted
+	private final long[] sequenceOffsets;
+	private final int[] lengths;
+	private final int[] lineBases; // 0, if the lines of the record differ in length
+	private final int[] lineWidths;
+
+	// per bgzf block:
+	private final long[] blockOffsets;
+	private final long[] blockUncompressedOffsets;
+
+	private IndexedSequenceFile(File file, long fileLength, long lastModified, Compression compression, long uncompressedLength, ArrayList<long[]> records, ArrayList<long[]> blocks) {
+		this.file = file;
+		this.fileLength = fileLength;
+		this.lastModified = lastModified;
+		this.compression = compression;
+		this.uncompressedLength = uncompressedLength;
+		headerOffsets = records.stream().mapToLong(r -> r[0]).toArray();
+		sequenceOffsets = records.stream().mapToLong(r -> r[1]).toArray();
+		lengths = records.stream().mapToInt(r -> (int) r[2]).toArray();
+		lineBases = records.stream().mapToInt(r -> (int) r[3]).toArray();
+		lineWidths = records.stream().mapToInt(r -> (int) r[4]).toArray();
+		blockOffsets = blocks.stream().mapToLong(b -> b[0]).toArray();
+		blockUncompressedOffsets = blocks.stream().mapToLong(b -> b[1]).toArray();
+	}
+
+	/**
+	 * gets the indexed file, building or reading its index, if necessary
+	 *
+	 * @param fileName the FastA file
+	 * @return the indexed file, or null, if the file is in a format that is not supported, such as zip
+	 */
+	public static IndexedSequenceFile get(String fileName) throws IOException {
+		if (fileName.toLowerCase().endsWith(".zip"))
+			return null;
+		final var file = new File(fileName).getAbsoluteFile();
+		try {
+			return cache.compute(file.getPath(), (k, old) -> {
+				if (old != null && old.isCurrent())
+					return old;
+				try {
+					return load(file);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private boolean isCurrent() {
+		return file.length() == fileLength && file.lastModified() == lastModified;
+	}
+
+	/**
+	 * reads a run of letters. As the offset usually is that of a header line, that line is skipped. If more letters
+	 * are requested than the record contains, the following records are read, too
+	 *
+	 * @param offset the offset of a header line or of a letter, in the uncompressed file
+	 * @param length the number of letters
+	 * @return the letters, fewer, if the file ends before
+	 */
+	public byte[] read(long offset, int length) throws IOException {
+		var r = Arrays.binarySearch(headerOffsets, offset);
+		if (r < 0)
+			r = Math.max(0, -r - 2);
+		var startResidue = 0;
+		var startPosition = sequenceOffsets[r]; // only used for records with lines of different lengths
+		if (offset > sequenceOffsets[r]) { // offset in the middle of a sequence
+			final var relative = offset - sequenceOffsets[r];
+			if (lineBases[r] > 0)
+				startResidue = (int) Math.min(lengths[r], (relative / lineWidths[r]) * lineBases[r] + Math.min(relative % lineWidths[r], lineBases[r]));
+			else
+				startPosition = offset;
+		}
+
+		// determine the range of the uncompressed file needed
+		var remaining = length;
+		var regionEnd = 0L;
+		var lastRecord = r;
+		for (var s = r; s < lengths.length && remaining > 0; s++) {
+			final var first = (s == r ? startResidue : 0);
+			final var take = Math.min(remaining, lengths[s] - first);
+			if (lineBases[s] > 0)
+				regionEnd = (take > 0 ? positionOf(s, first + take - 1) + 1 : sequenceOffsets[s]);
+			else
+				regionEnd = getSequenceEnd(s);
+			remaining -= Math.max(0, take);
+			lastRecord = s;
+		}
+		final var regionStart = (lineBases[r] > 0 ? positionOf(r, startResidue) : startPosition);
+		if (regionEnd <= regionStart)
+			return new byte[0];
+		if (regionEnd - regionStart > Integer.MAX_VALUE)
+			throw new IOException("Sequence too long: " + length);
+
+		final var buffer = getRegion(regionStart, regionEnd);
+
+		final var result = new byte[length];
+		var count = 0;
+		for (var s = r; s <= lastRecord && count < length; s++) {
+			if (lineBases[s] > 0) {
+				var i = (s == r ? startResidue : 0);
+				final var end = i + Math.min(length - count, lengths[s] - i);
+				while (i < end) {
+					final var n = Math.min(lineBases[s] - i % lineBases[s], end - i);
+					buffer.get((int) (positionOf(s, i) - regionStart), result, count, n);
+					count += n;
+					i += n;
+				}
+			} else {
+				final var end = (int) (Math.min(getSequenceEnd(s), regionEnd) - regionStart);
+				for (var pos = (int) ((s == r ? startPosition : sequenceOffsets[s]) - regionStart); pos < end && count < length; pos++) {
+					final var b = buffer.get(pos);
+					if (b != '\n' && b != '\r')
+						result[count++] = b;
+				}
+			}
+		}
+		return (count == length ? result : Arrays.copyOf(result, count));
+	}
+
+	private long positionOf(int record, int residue) {
+		return sequenceOffsets[record] + (long) (residue / lineBases[record]) * lineWidths[record] + residue % lineBases[record];
+	}
+
+	private long getSequenceEnd(int record) {
+		return (record + 1 < headerOffsets.length ? headerOffsets[record + 1] : uncompressedLength);
+	}
+
+	/**
+	 * gets a range of the uncompressed file
+	 */
+	private ByteBuffer getRegion(long start, long end) throws IOException {
+		if (compression == Compression.plain) {
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			}
+		} else {
+			var compressedStart = 0L;
+			var uncompressedStart = 0L;
+			if (compression == Compression.bgzf && blockOffsets.length > 0) {
+				var b = Arrays.binarySearch(blockUncompressedOffsets, start);
+				if (b < 0)
+					b = Math.max(0, -b - 2);
+				compressedStart = blockOffsets[b];
+				uncompressedStart = blockUncompressedOffsets[b];
+			}
+			try (var fins = new FileInputStream(file)) {
+				fins.getChannel().position(compressedStart);
+				try (var ins = new GZIPInputStream(new BufferedInputStream(fins, 1 << 16), 1 << 16)) {
+					ins.skipNBytes(start - uncompressedStart);
+					return ByteBuffer.wrap(ins.readNBytes((int) (end - start)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * reads the index file, if it is up-to-date, or else builds the index and attempts to write the index file
+	 */
+	private static IndexedSequenceFile load(File file) throws IOException {
+		final var indexFile = new File(file.getPath() + INDEX_SUFFIX);
+		if (indexFile.isFile()) {
+			try {
+				final var index = readIndex(file, indexFile);
+				if (index != null)
+					return index;
+			} catch (IOException | RuntimeException ex) {
+				System.err.println("Warning: can't read index file: " + indexFile + ": " + ex.getMessage());
+			}
+		}
+		final var index = build(file);
+		try {
+			index.writeIndex(indexFile);
+		} catch (IOException ex) {
+			System.err.println("Warning: can't write index file: " + indexFile + ": " + ex.getMessage());
+		}
+		return index;
+	}
+
+	/**
+	 * builds the index in one pass over the uncompressed file
+	 */
+	private static IndexedSequenceFile build(File file) throws IOException {
+		final var fileLength = file.length();
+		final var lastModified = file.lastModified();
+		final var blocks = new ArrayList<long[]>();
+		final var compression = determineCompression(file, blocks);
+
+		final var records = new ArrayList<long[]>();
+		try (var ins = new BufferedInputStream(compression == Compression.plain ? new FileInputStream(file) : new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16)) {
+			final var record = new RecordBuilder();
+			var position = 0L;
+			var atLineStart = true;
+			var inHeader = false;
+			int b;
+			while ((b = ins.read()) != -1) {
+				if (atLineStart && b == '>') {
+					if (record.started)
+						records.add(record.finish());
+					record.start(position);
+					inHeader = true;
+				} else if (!record.started) { // sequence without header
+					record.start(position);
+					record.sequenceOffset = position;
+				}
+				atLineStart = (b == '\n');
+				if (inHeader) {
+					if (b == '\n') {
+						inHeader = false;
+						record.sequenceOffset = position + 1;
+					}
+				} else
+					record.add(b);
+				position++;
+			}
+			if (record.started)
+				records.add(record.finish());
+			return new IndexedSequenceFile(file, fileLength, lastModified, compression, position, records, blocks);
+		}
+	}
+
+	/**
+	 * determines how the file is compressed, and for a bgzf file, lists the offsets of its blocks
+	 */
+	private static Compression determineCompression(File file, ArrayList<long[]> blocks) throws IOException {
+		try (var raf = new RandomAccessFile(file, "r")) {
+			if (raf.length() < 2 || raf.read() != 0x1f || raf.read() != 0x8b)
+				return Compression.plain;
+			var position = 0L;
+			var uncompressed = 0L;
+			final var header = new byte[12];
+			while (position < raf.length()) {
+				raf.seek(position);
+				raf.readFully(header);
+				if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || (header[3] & 4) == 0) {
+					blocks.clear();
+					return Compression.gzip;
+				}
+				final var extra = new byte[(header[10] & 0xff) | (header[11] & 0xff) << 8];
+				raf.readFully(extra);
+				var blockSize = -1;
+				for (var i = 0; i + 4 <= extra.length; ) {
+					final var subfieldLength = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+					if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= extra.length)
+						blockSize = ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+					i += 4 + subfieldLength;
+				}
+				if (blockSize == -1) {
+					blocks.clear();
+					return Compression.gzip;
+				}
+				raf.seek(position + blockSize - 4);
+				final var size = (raf.read() | raf.read() << 8 | raf.read() << 16 | (long) raf.read() << 24);
+				blocks.add(new long[]{position, uncompressed});
+				uncompressed += size;
+				position += blockSize;
+			}
+			return Compression.bgzf;
+		} catch (EOFException ex) {
+			blocks.clear();
+			return Compression.gzip;
+		}
+	}
+
+	private void writeIndex(File indexFile) throws IOException {
+		final var tmpFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+		try {
+			try (var w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+				w.write(String.format("%s\t%d\t%s\t%d\t%d\t%d%n", INDEX_HEADER, INDEX_VERSION, compression, fileLength, lastModified, uncompressedLength));
+				for (var r = 0; r < headerOffsets.length; r++)
+					w.write(String.format("R\t%d\t%d\t%d\t%d\t%d%n", headerOffsets[r], sequenceOffsets[r], lengths[r], lineBases[r], lineWidths[r]));
+				for (var b = 0; b < blockOffsets.length; b++)
+					w.write(String.format("B\t%d\t%d%n", blockOffsets[b], blockUncompressedOffsets[b]));
+			}
+			Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+
+	/**
+	 * reads an index file
+	 *
+	 * @return the index, or null, if the index file is not of the current version of the file
+	 */
+	private static IndexedSequenceFile readIndex(File file, File indexFile) throws IOException {
+		try (var r = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+			final var header = r.readLine().split("\t");
+			if (header.length != 6 || !header[0].equals(INDEX_HEADER) || Integer.parseInt(header[1]) != INDEX_VERSION
+				|| Long.parseLong(header[3]) != file.length() || Long.parseLong(header[4]) != file.lastModified())
+				return null;
+			final var records = new ArrayList<long[]>();
+			final var blocks = new ArrayList<long[]>();
+			String line;
+			while ((line = r.readLine()) != null) {
+				final var tokens = line.split("\t");
+				final var values = Arrays.stream(tokens, 1, tokens.length).mapToLong(Long::parseLong).toArray();
+				if (tokens[0].equals("R") && values.length == 5)
+					records.add(values);
+				else if (tokens[0].equals("B") && values.length == 2)
+					blocks.add(values);
+				else
+					throw new IOException("Invalid line: " + line);
+			}
+			return new IndexedSequenceFile(file, Long.parseLong(header[3]), Long.parseLong(header[4]), Compression.valueOf(header[2]), Long.parseLong(header[5]), records, blocks);
+		}
+	}
+
+	/**
+	 * collects the offsets, the length and the line geometry of a record
+	 */
+	private static class RecordBuilder {
+		boolean started;
+		long headerOffset;
+		long sequenceOffset;
+		long length;
+		int lineBases;
+		int lineWidth;
+		int currentBases;
+		int currentWidth;
+		boolean shortLineSeen;
+		boolean irregular;
+
+		void start(long headerOffset) {
+			started = true;
+			this.headerOffset = headerOffset;
+			sequenceOffset = headerOffset;
+			length = 0;
+			lineBases = lineWidth = currentBases = currentWidth = 0;
+			shortLineSeen = irregular = false;
+		}
+
+		void add(int b) {
+			currentWidth++;
+			if (b == '\n')
+				endLine();
+			else if (b != '\r') {
+				currentBases++;
+				length++;
+			}
+		}
+
+		/**
+		 * all lines but the last must have the same number of letters and bytes
+		 */
+		private void endLine() {
+			if (lineWidth == 0) {
+				if (currentBases == 0)
+					shortLineSeen = true;
+				else if (shortLineSeen)
+					irregular = true;
+				else {
+					lineBases = currentBases;
+					lineWidth = currentWidth;
+				}
+			} else if (shortLineSeen || currentWidth - currentBases != lineWidth - lineBases || currentBases > lineBases)
+				irregular = true;
+			else if (currentBases < lineBases)
+				shortLineSeen = true;
+			currentBases = currentWidth = 0;
+		}
+
+		long[] finish() {
+			if (currentWidth > 0 && lineWidth > 0 && (shortLineSeen || currentBases > lineBases))
+				irregular = true;
+			if (length > 0 && lineWidth == 0) // a single line without line break
+				irregular = true;
+			return new long[]{headerOffset, sequenceOffset, length, irregular ? 0 : lineBases, irregular ? 0 : lineWidth};
+		}
+	}
+}
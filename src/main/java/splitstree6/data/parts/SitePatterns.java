@@ -0,0 +1,240 @@
+/*
+ *  SitePatterns.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.data.parts;
+
+import splitstree6.data.CharactersBlock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * the distinct site patterns of a characters block, that is, its distinct columns, and how often each occurs
+ * <p>
+ * Any computation that treats the sites of an alignment independently of their position gives the same result on
+ * the compressed characters as on the original ones: these have one site per pattern, and the weight of that site is
+ * the sum of the weights of the sites that show the pattern. Obtain this from CharactersBlock.getSitePatterns(),
+ * which computes it once and keeps it until the block is modified.
+ * <p>
+ * A bootstrap replicate is a vector of multiplicities over the same patterns, see createReplicate().
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class SitePatterns {
+	private final int[] siteToPattern;
+	private final int[] patternToSite;
+	private final int[] multiplicities;
+	private final double[] siteWeights;
+	private final CharactersBlock compressedCharacters;
+
+	private SitePatterns(int[] siteToPattern, int[] patternToSite, int[] multiplicities, double[] siteWeights, CharactersBlock compressedCharacters) {
+		this.siteToPattern = siteToPattern;
+		this.patternToSite = patternToSite;
+		this.multiplicities = multiplicities;
+		this.siteWeights = siteWeights;
+		this.compressedCharacters = compressedCharacters;
+	}
+
+	/**
+	 * computes the site patterns of the given characters
+	 *
+	 * @param characters characters
+	 * @return site patterns
+	 */
+	public static SitePatterns compute(CharactersBlock characters) {
+		final var matrix = characters.getMatrixReadOnly();
+		final var nchar = characters.getNchar();
+
+		// hash all columns in one pass over the rows, which is the order in which they are stored
+		final var hashes = new long[nchar];
+		for (var row : matrix) {
+			for (var k = 0; k < nchar; k++) {
+				hashes[k] = 0x9E3779B97F4A7C15L * hashes[k] + row[k] + 1;
+			}
+		}
+
+		final var siteToPattern = new int[nchar];
+		final var firstSite = new int[nchar];
+		final var sameHash = new int[nchar]; // next pattern with the same hash, or -1
+		final var multiplicities = new int[nchar];
+		final var hashToPattern = new HashMap<Long, Integer>();
+		var npatterns = 0;
+
+		for (var k = 0; k < nchar; k++) {
+			var head = hashToPattern.get(hashes[k]);
+			var pattern = (head != null ? head : -1);
+			while (pattern != -1 && !sameColumn(matrix, firstSite[pattern], k))
+				pattern = sameHash[pattern];
+			if (pattern == -1) {
+				pattern = npatterns++;
+				firstSite[pattern] = k;
+				sameHash[pattern] = (head != null ? head : -1);
+				hashToPattern.put(hashes[k], pattern);
+			}
+			siteToPattern[k] = pattern;
+			multiplicities[pattern]++;
+		}
+
+		final var patternToSite = Arrays.copyOf(firstSite, npatterns);
+
+		final CharactersBlock compressed;
+		if (npatterns == nchar) {
+			compressed = characters;
+		} else {
+			final var patternMatrix = new char[matrix.length][npatterns];
+			for (var r = 0; r < matrix.length; r++) {
+				for (var p = 0; p < npatterns; p++) {
+					patternMatrix[r][p] = matrix[r][patternToSite[p]];
+				}
+			}
+			final var weights = new double[npatterns];
+			for (var k = 0; k < nchar; k++) {
+				weights[siteToPattern[k]] += characters.getCharacterWeight(k + 1);
+			}
+			compressed = new CharactersBlock(characters, patternMatrix);
+			compressed.setCharacterWeights(weights);
+			compressed.setCharacterLabels(null);
+			compressed.setCharLabeler(null);
+		}
+		return new SitePatterns(siteToPattern, patternToSite, Arrays.copyOf(multiplicities, npatterns), characters.getCharacterWeights(), compressed);
+	}
+
+	/**
+	 * creates a bootstrap replicate, drawing as many sites as there are, with replacement
+	 * <p>
+	 * The replicate is not a new alignment but a vector of multiplicities over the patterns: its characters share
+	 * the rows of the compressed characters, and weight each pattern by the sites drawn for it, so a pattern that
+	 * is not drawn has weight 0. This costs O(nchar) rather than O(ntax*nchar), but only an algorithm that reads its
+	 * characters through getSitePatterns(), or honors the character weights, will see the replicate, so check for
+	 * IUsesSitePatterns, or use a materialized replicate
+	 *
+	 * @param random random number generator, the sites are drawn in the same order as for a materialized replicate
+	 * @return characters of the replicate, whose getSitePatterns() returns the multiplicities
+	 */
+	public CharactersBlock createReplicate(Random random) {
+		final var nchar = getNumberOfSites();
+		final var npatterns = getNumberOfPatterns();
+
+		final var drawnPattern = new int[nchar];
+		final var drawnWeights = (siteWeights != null ? new double[nchar] : null);
+		final var firstDrawn = new int[npatterns];
+		Arrays.fill(firstDrawn, -1);
+		final var counts = new int[npatterns];
+		final var weights = new double[npatterns];
+
+		for (var k = 0; k < nchar; k++) {
+			final var site = random.nextInt(nchar);
+			final var pattern = siteToPattern[site];
+			final var weight = (siteWeights != null ? siteWeights[site] : 1.0);
+			drawnPattern[k] = pattern;
+			if (drawnWeights != null)
+				drawnWeights[k] = weight;
+			if (firstDrawn[pattern] == -1)
+				firstDrawn[pattern] = k;
+			counts[pattern]++;
+			weights[pattern] += weight;
+		}
+
+		final var replicate = new CharactersBlock(compressedCharacters, compressedCharacters.getMatrixReadOnly());
+		replicate.setCharacterWeights(weights);
+		replicate.setCharacterLabels(null);
+		replicate.setCharLabeler(null);
+		final var replicatePatterns = new SitePatterns(drawnPattern, firstDrawn, counts, drawnWeights, replicate);
+		replicate.setSitePatterns(replicatePatterns);
+		return replicate;
+	}
+
+	private static boolean sameColumn(char[][] matrix, int k1, int k2) {
+		for (var row : matrix) {
+			if (row[k1] != row[k2])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * gets the number of sites of the original characters
+	 */
+	public int getNumberOfSites() {
+		return siteToPattern.length;
+	}
+
+	/**
+	 * gets the number of distinct patterns
+	 */
+	public int getNumberOfPatterns() {
+		return patternToSite.length;
+	}
+
+	/**
+	 * gets the pattern of a site
+	 *
+	 * @param site 0-based site of the original characters
+	 * @return 0-based pattern, which is also the site in the compressed characters
+	 */
+	public int getPattern(int site) {
+		return siteToPattern[site];
+	}
+
+	/**
+	 * gets the first site that shows a pattern
+	 *
+	 * @param pattern 0-based
+	 * @return 0-based site of the original characters, or -1, for a pattern that a bootstrap replicate does not draw
+	 */
+	public int getSite(int pattern) {
+		return patternToSite[pattern];
+	}
+
+	/**
+	 * gets the number of sites that show a pattern
+	 *
+	 * @param pattern 0-based
+	 * @return number of sites
+	 */
+	public int getMultiplicity(int pattern) {
+		return multiplicities[pattern];
+	}
+
+	/**
+	 * gets the number of sites that show each pattern, 0-based
+	 */
+	public int[] getMultiplicities() {
+		return multiplicities;
+	}
+
+	/**
+	 * gets characters that have one site for each pattern, weighted by the total weight of the sites that show it.
+	 * This is the original block, if no two sites share a pattern. Note that counts of sites, as opposed to sums
+	 * of weights, are counts of patterns in the compressed characters
+	 *
+	 * @return compressed characters, not to be modified
+	 */
+	public CharactersBlock getCompressedCharacters() {
+		return compressedCharacters;
+	}
+
+	/**
+	 * do the compressed characters have fewer sites than the original ones?
+	 */
+	public boolean isCompressed() {
+		return getNumberOfPatterns() < getNumberOfSites();
+	}
+}
@@ -28,7 +28,6 @@
 import jloda.kmers.mash.MashDistance;
 import jloda.kmers.mash.MashSketch;
 import jloda.phylo.PhyloTree;
-import jloda.thirdparty.HexUtils;
 import jloda.util.*;
 import jloda.util.progress.ProgressListener;
 
@@ -47,6 +46,8 @@
 
 /**
  * provides next to a reference database
+ * <p>
+ * If the index is loaded, see loadIndex(), then findSimilar() searches the index in memory rather than the database
  * Daniel Huson, 8.2020
  */
 public class AccessReferenceDatabase implements Closeable {
@@ -67,6 +68,8 @@ public class AccessReferenceDatabase implements Closeable {
 	private final int mashSeed;
 	private final int taxonomyRoot;
 
+	private volatile ReferenceDatabaseIndex index;
+
 	/**
 	 * open database
 	 */
@@ -83,6 +86,8 @@ public AccessReferenceDatabase(String dbFile, Supplier<File> fileCacheDirectory,
 	 * CREATE TABLE taxa (taxon_id INTEGER PRIMARY KEY, taxon_name TEXT, taxon_display_name TEXT, parent_id INTEGER REFERENCES taxa(taxon_id));
 	 * CREATE TABLE info (key TEXT PRIMARY KEY, value TEXT NOT NULL);
 	 * CREATE TABLE genomes (taxon_id INTEGER PRIMARY KEY, genome_accession TEXT NOT NULL, genome_size INTEGER, fasta_url TEXT);
+	 * <p>
+	 * Sketches and Bloom filters are stored either as hex strings or as BLOBs, see ReferenceDataFormat
 	 *
 	 * @param dbFile   file
 	 * @param copies   number of copies to use in parallel processing
@@ -181,8 +186,7 @@ public ArrayList<Pair<Integer, MashSketch>> getMashSketches(Collection<Integer>
 		if (columnCount >= 2) {
 			while (rs.next()) {
 				final var taxon = rs.getInt(1);
-				final var hexString = rs.getString(2);
-				final var mashSketch = MashSketch.parse(HexUtils.decodeHexString(hexString));
+				final var mashSketch = MashSketch.parse(ReferenceDataFormat.decode(ReferenceDataFormat.Type.Sketch, rs.getObject(2), mashK, mashS, mashSeed));
 				result.add(new Pair<>(taxon, mashSketch));
 			}
 		}
@@ -197,8 +201,7 @@ public ArrayList<Pair<Integer, BloomFilter>> getBloomFilters(Collection<Integer>
 		final var result = new ArrayList<Pair<Integer, BloomFilter>>();
 		while (rs.next()) {
 			final var taxon = rs.getInt(1);
-			final var hexString = rs.getString(2);
-			final var bloomFilter = BloomFilter.parseBytes(HexUtils.decodeHexString(hexString));
+			final var bloomFilter = BloomFilter.parseBytes(ReferenceDataFormat.decode(ReferenceDataFormat.Type.BloomFilter, rs.getObject(2), mashK, 0, 0));
 			result.add(new Pair<>(taxon, bloomFilter));
 		}
 		return result;
@@ -343,6 +346,19 @@ public int getMashSeed() {
 		return mashSeed;
 	}
 
+	/**
+	 * loads the in-memory index of the database, which findSimilar() then uses instead of querying the database.
+	 * The index is read from a file beside the database, or built and written there, if that is missing or out-of-date
+	 */
+	public void loadIndex(ProgressListener progress) throws IOException, SQLException {
+		if (index == null)
+			index = ReferenceDatabaseIndex.get(this, progress);
+	}
+
+	public ReferenceDatabaseIndex getIndex() {
+		return index;
+	}
+
 	public int getTaxonomyRoot() {
 		return taxonomyRoot;
 	}
@@ -440,9 +456,44 @@ public Collection<Map.Entry<Integer, Double>> findSimilar(ProgressListener progr
 		System.err.printf("Max distance = %.3f  => min number of shared k-mers = %d%n", maxDistance, minSharedKMers);
 
 		progress.setSubtask("Searching");
-		progress.setMaximum(countBloomFilters());
+		progress.setMaximum(index != null ? index.countBloomFilters() : countBloomFilters());
 		progress.setProgress(0);
 
+		final Map<Integer, Double> id2distance;
+		if (index != null)
+			id2distance = index.findSimilar(progress, querySketches, kmers, minSharedKMers, getTaxonomyRoot());
+		else
+			id2distance = findSimilarInDatabase(progress, querySketches, kmers, minSharedKMers);
+
+		final ArrayList<Map.Entry<Integer, Double>> result;
+		if (includeStrains) {
+			var id2DistanceStrain = new HashMap<Integer, Double>();
+			for (var taxId : id2distance.keySet()) {
+				var parent = (index != null ? index.getParent(taxId) : this.getTaxonomyParent(taxId));
+				var taxonomyChildren = (index != null ? index.getChildren(parent) : this.getTaxonomyChildren(parent));
+				for (var child : taxonomyChildren) {
+					if (!id2DistanceStrain.containsKey(child)) {
+						id2DistanceStrain.put(child, id2distance.get(taxId));
+					}
+				}
+			}
+			result = new ArrayList<>(id2DistanceStrain.entrySet());
+		} else {
+			result = new ArrayList<>(id2distance.entrySet());
+		}
+
+		result.sort(Comparator.comparingDouble(Map.Entry::getValue));
+		if (ignoreUnusableTaxa && getUnusableTaxa().size() > 0) {
+			return result.stream().filter(entry -> !getUnusableTaxa().contains(entry.getKey())).collect(Collectors.toList());
+		}
+		return result;
+	}
+
+	/**
+	 * searches the taxonomy for similar genomes, querying the database for the Bloom filters and sketches of the
+	 * children of each taxon
+	 */
+	private Map<Integer, Double> findSimilarInDatabase(ProgressListener progress, Collection<MashSketch> querySketches, Set<String> kmers, int minSharedKMers) throws IOException {
 		final var id2distance = new ConcurrentHashMap<Integer, Double>();
 
 		final var exception = new Single<Exception>();
@@ -465,29 +516,7 @@ public Collection<Map.Entry<Integer, Double>> findSimilar(ProgressListener progr
 		}
 		if (verbose)
 			System.err.printf("Total jobs: %,d%n", totalJobs.get());
-
-		final ArrayList<Map.Entry<Integer, Double>> result;
-		if (includeStrains) {
-			var id2DistanceStrain = new HashMap<Integer, Double>();
-			for (var taxId : id2distance.keySet()) {
-				var parent = this.getTaxonomyParent(taxId);
-				var taxonomyChildren = this.getTaxonomyChildren(parent);
-				for (var child : taxonomyChildren) {
-					if (!id2DistanceStrain.containsKey(child)) {
-						id2DistanceStrain.put(child, id2distance.get(taxId));
-					}
-				}
-			}
-			result = new ArrayList<>(id2DistanceStrain.entrySet());
-		} else {
-			result = new ArrayList<>(id2distance.entrySet());
-		}
-
-		result.sort(Comparator.comparingDouble(Map.Entry::getValue));
-		if (ignoreUnusableTaxa && getUnusableTaxa().size() > 0) {
-			return result.stream().filter(entry -> !getUnusableTaxa().contains(entry.getKey())).collect(Collectors.toList());
-		}
-		return result;
+		return id2distance;
 	}
 
 	/**
@@ -31,6 +31,7 @@
 import splitstree6.data.GenomesBlock;
 import splitstree6.data.TaxaBlock;
 import splitstree6.data.parts.Genome;
+import splitstree6.data.parts.IndexedSequenceFile;
 import splitstree6.io.FileLoader;
 import splitstree6.io.nexus.GenomesNexusOutput;
 import splitstree6.io.nexus.TaxaNexusOutput;
@@ -268,6 +269,11 @@ public void saveData(AccessReferenceDatabase referenceDatabase, ObservableList<I
 					genomePart.setName("part");
 					if (storeFileLocations) {
 						genomePart.setFile(inputRecord.getFile(), inputRecord.getOffset(), inputRecord.getSequence().length);
+						try { // index the file now, so that the sequence can be read quickly later
+							IndexedSequenceFile.get(inputRecord.getFile());
+						} catch (IOException ex) {
+							System.err.println("Warning: can't index file: " + inputRecord.getFile() + ": " + ex.getMessage());
+						}
 					} else {
 						genomePart.setSequence(inputRecord.getSequence(), inputRecord.getSequence().length);
 					}
@@ -0,0 +1,129 @@
+/*
+ *  ReferenceDataFormat.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.dialog.analyzegenomes;
+
+import jloda.thirdparty.HexUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * binary encoding of mash sketches and Bloom filters, as stored in reference databases and files
+ * <p>
+ * An encoded value consists of a 20-byte header, followed by the bytes of the sketch or Bloom filter, as produced
+ * by MashSketch.getBytes() or BloomFilter.getBytes(). The header contains the magic number ST6S for a sketch or
+ * ST6B for a Bloom filter, the version of this format, the version of the k-mer hashing, and the k-mer size, sketch
+ * size and hashing seed that the value was computed with, 0 where unknown.
+ * <p>
+ * For compatibility, decode() also accepts the hex strings stored in older databases and files, and bytes without
+ * a header.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class ReferenceDataFormat {
+	public enum Type {
+		Sketch("ST6S"), BloomFilter("ST6B");
+
+		private final byte[] magic;
+
+		Type(String magic) {
+			this.magic = magic.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	public static final int FORMAT_VERSION = 1;
+	/**
+	 * version of the k-mer hashing used by jloda to compute sketches and Bloom filters
+	 */
+	public static final int HASH_VERSION = 1;
+	public static final int HEADER_SIZE = 20;
+
+	/**
+	 * the parameters recorded in a header
+	 */
+	public record Header(Type type, int formatVersion, int hashVersion, int k, int s, int seed) {
+	}
+
+	/**
+	 * encodes a sketch or Bloom filter
+	 *
+	 * @param type  the type
+	 * @param bytes the bytes, as produced by getBytes()
+	 * @param k     k-mer size, or 0
+	 * @param s     sketch size, or 0
+	 * @param seed  hashing seed, or 0
+	 * @return the encoded bytes
+	 */
+	public static byte[] encode(Type type, byte[] bytes, int k, int s, int seed) {
+		return ByteBuffer.allocate(HEADER_SIZE + bytes.length).put(type.magic).put((byte) FORMAT_VERSION).put((byte) HASH_VERSION).putShort((short) 0)
+				.putInt(k).putInt(s).putInt(seed).put(bytes).array();
+	}
+
+	/**
+	 * gets the header of an encoded value
+	 *
+	 * @return the header, or null, if the bytes don't start with a header of the given type
+	 */
+	public static Header getHeader(Type type, byte[] bytes) {
+		if (bytes.length < HEADER_SIZE || !Arrays.equals(bytes, 0, 4, type.magic, 0, 4))
+			return null;
+		final var buffer = ByteBuffer.wrap(bytes, 4, HEADER_SIZE - 4);
+		final var formatVersion = buffer.get();
+		final var hashVersion = buffer.get();
+		buffer.getShort();
+		return new Header(type, formatVersion, hashVersion, buffer.getInt(), buffer.getInt(), buffer.getInt());
+	}
+
+	/**
+	 * decodes a sketch or Bloom filter, as read from a database column or a file
+	 *
+	 * @param type  the type
+	 * @param value the value, either a byte array, encoded or not, or a hex string
+	 * @param k     expected k-mer size, or 0, if not to be checked
+	 * @param s     expected sketch size, or 0, if not to be checked
+	 * @param seed  expected hashing seed, or 0, if not to be checked
+	 * @return the bytes, as accepted by MashSketch.parse() or BloomFilter.parseBytes()
+	 * @throws IOException if the value is encoded in an unsupported version or with different parameters
+	 */
+	public static byte[] decode(Type type, Object value, int k, int s, int seed) throws IOException {
+		if (value instanceof String string)
+			return HexUtils.decodeHexString(string.trim());
+		if (!(value instanceof byte[] bytes))
+			throw new IOException("Unsupported value: " + (value == null ? null : value.getClass().getSimpleName()));
+
+		final var header = getHeader(type, bytes);
+		if (header == null)
+			return bytes;
+		if (header.formatVersion() != FORMAT_VERSION || header.hashVersion() != HASH_VERSION)
+			throw new IOException("Unsupported " + type + " encoding: format version " + header.formatVersion() + ", hash version " + header.hashVersion());
+		if ((k != 0 && header.k() != 0 && header.k() != k) || (s != 0 && header.s() != 0 && header.s() != s) || (seed != 0 && header.seed() != 0 && header.seed() != seed))
+			throw new IOException(type + " computed with k=" + header.k() + ", s=" + header.s() + ", seed=" + header.seed() + ", expected k=" + k + ", s=" + s + ", seed=" + seed);
+		return Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length);
+	}
+
+	/**
+	 * decodes a sketch or Bloom filter, without checking its parameters
+	 */
+	public static byte[] decode(Type type, Object value) throws IOException {
+		return decode(type, value, 0, 0, 0);
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ *  ReferenceDatabaseIndex.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.dialog.analyzegenomes;
+
+import jloda.kmers.bloomfilter.BloomFilter;
+import jloda.kmers.mash.MashDistance;
+import jloda.kmers.mash.MashSketch;
+import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
+import jloda.util.progress.ProgressListener;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * compact in-memory index of a reference database, used to find similar genomes without querying the database
+ * <p>
+ * The taxonomy is held as int arrays, with the children of each taxon stored consecutively, and each mash sketch
+ * and each Bloom filter in parsed form. The index is built once from the database
+ * and written to a file beside it, from which it is read as long as the database file is unchanged.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class ReferenceDatabaseIndex {
+	public static final String SUFFIX = ".idx";
+	private static final int MAGIC = 0x53543649; // ST6I
+	private static final int VERSION = 2;
+
+	private final int mashK;
+	private final int mashS;
+	private final int mashSeed;
+
+	private final int[] taxonIds; // sorted
+	private final int[] parent; // index of parent, or -1
+	private final int[] childrenStart; // children of taxon i are children[childrenStart[i]..childrenStart[i+1]-1]
+	private final int[] children;
+	private final MashSketch[] sketches; // or null
+	private final BloomFilter[] bloomFilters; // or null
+	private final int[] bloomFilterCardinalities;
+
+	private ReferenceDatabaseIndex(int mashK, int mashS, int mashSeed, int[] taxonIds, int[] parentIds, Map<Integer, byte[]> id2sketch, Map<Integer, byte[]> id2bloomFilter) throws IOException {
+		this.mashK = mashK;
+		this.mashS = mashS;
+		this.mashSeed = mashSeed;
+
+		final var n = taxonIds.length;
+		final var order = new Integer[n];
+		for (var i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, Comparator.comparingInt(i -> taxonIds[i]));
+		this.taxonIds = new int[n];
+		for (var i = 0; i < n; i++)
+			this.taxonIds[i] = taxonIds[order[i]];
+
+		parent = new int[n];
+		final var count = new int[n + 1];
+		for (var i = 0; i < n; i++) {
+			parent[i] = indexOf(parentIds[order[i]]);
+			if (parent[i] != -1)
+				count[parent[i] + 1]++;
+		}
+		childrenStart = new int[n + 1];
+		for (var i = 0; i < n; i++)
+			childrenStart[i + 1] = childrenStart[i] + count[i + 1];
+		children = new int[childrenStart[n]];
+		final var next = Arrays.copyOf(childrenStart, n);
+		for (var i = 0; i < n; i++) {
+			if (parent[i] != -1)
+				children[next[parent[i]]++] = i;
+		}
+
+		sketches = new MashSketch[n];
+		for (var entry : id2sketch.entrySet()) {
+			final var i = indexOf(entry.getKey());
+			if (i != -1)
+				sketches[i] = MashSketch.parse(entry.getValue());
+		}
+		bloomFilters = new BloomFilter[n];
+		bloomFilterCardinalities = new int[n];
+		for (var entry : id2bloomFilter.entrySet()) {
+			final var i = indexOf(entry.getKey());
+			if (i != -1) {
+				bloomFilters[i] = BloomFilter.parseBytes(entry.getValue());
+				bloomFilterCardinalities[i] = bloomFilters[i].cardinality();
+			}
+		}
+	}
+
+	/**
+	 * gets the index for a database, reading it from the index file beside the database, if that is up-to-date, or
+	 * else building it from the database and attempting to write the index file
+	 *
+	 * @param database the database
+	 * @param progress progress listener
+	 * @return the index
+	 */
+	public static ReferenceDatabaseIndex get(AccessReferenceDatabase database, ProgressListener progress) throws IOException, SQLException {
+		final var dbFile = database.getDbFile();
+		final var indexFile = new File(dbFile.getPath() + SUFFIX);
+		if (indexFile.isFile()) {
+			try {
+				final var index = read(indexFile, dbFile);
+				if (index != null && index.mashK == database.getMashK() && index.mashS == database.getMashS() && index.mashSeed == database.getMashSeed())
+					return index;
+			} catch (IOException ex) {
+				System.err.println("Warning: can't read index file: " + indexFile + ": " + ex.getMessage());
+			}
+		}
+		return build(database, indexFile, progress);
+	}
+
+	/**
+	 * builds the index from the database and writes it to the given file
+	 */
+	private static ReferenceDatabaseIndex build(AccessReferenceDatabase database, File indexFile, ProgressListener progress) throws IOException, SQLException {
+		progress.setSubtask("Building index");
+		final var taxonIds = new ArrayList<Integer>();
+		final var parentIds = new ArrayList<Integer>();
+		final var id2sketch = new HashMap<Integer, byte[]>();
+		final var id2bloomFilter = new HashMap<Integer, byte[]>();
+
+		try (var statement = database.getConnection().createStatement()) {
+			try (var rs = statement.executeQuery("SELECT taxon_id,parent_id FROM taxa;")) {
+				while (rs.next()) {
+					taxonIds.add(rs.getInt(1));
+					parentIds.add(rs.getInt(2));
+				}
+			}
+			progress.setMaximum(taxonIds.size());
+			progress.setProgress(0);
+
+			try (var rs = statement.executeQuery("SELECT taxon_id,mash_sketch FROM mash_sketches;")) {
+				while (rs.next()) {
+					id2sketch.put(rs.getInt(1), ReferenceDataFormat.decode(ReferenceDataFormat.Type.Sketch, rs.getObject(2), database.getMashK(), database.getMashS(), database.getMashSeed()));
+					progress.incrementProgress();
+				}
+			}
+			try (var rs = statement.executeQuery("SELECT taxon_id,bloom_filter FROM bloom_filters;")) {
+				while (rs.next()) {
+					id2bloomFilter.put(rs.getInt(1), ReferenceDataFormat.decode(ReferenceDataFormat.Type.BloomFilter, rs.getObject(2), database.getMashK(), 0, 0));
+					progress.incrementProgress();
+				}
+			}
+		}
+
+		final var ids = taxonIds.stream().mapToInt(Integer::intValue).toArray();
+		final var parents = parentIds.stream().mapToInt(Integer::intValue).toArray();
+		try {
+			write(indexFile, database.getDbFile(), database.getMashK(), database.getMashS(), database.getMashSeed(), ids, parents, id2sketch, id2bloomFilter);
+		} catch (IOException ex) {
+			System.err.println("Warning: can't write index file: " + indexFile + ": " + ex.getMessage());
+		}
+		return new ReferenceDatabaseIndex(database.getMashK(), database.getMashS(), database.getMashSeed(), ids, parents, id2sketch, id2bloomFilter);
+	}
+
+	/**
+	 * writes an index file, under a temporary name that is then renamed, so that concurrent readers never see a partial file
+	 */
+	private static void write(File indexFile, File dbFile, int mashK, int mashS, int mashSeed, int[] taxonIds, int[] parentIds,
+							  Map<Integer, byte[]> id2sketch, Map<Integer, byte[]> id2bloomFilter) throws IOException {
+		final var tmpFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		try {
+			try (var outs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 20))) {
+				outs.writeInt(MAGIC);
+				outs.writeInt(VERSION);
+				outs.writeLong(dbFile.length());
+				outs.writeLong(dbFile.lastModified());
+				outs.writeInt(mashK);
+				outs.writeInt(mashS);
+				outs.writeInt(mashSeed);
+				outs.writeInt(taxonIds.length);
+				for (var i = 0; i < taxonIds.length; i++) {
+					outs.writeInt(taxonIds[i]);
+					outs.writeInt(parentIds[i]);
+				}
+				outs.writeInt(id2sketch.size());
+				for (var entry : id2sketch.entrySet()) {
+					outs.writeInt(entry.getKey());
+					outs.writeInt(entry.getValue().length);
+					outs.write(entry.getValue());
+				}
+				outs.writeInt(id2bloomFilter.size());
+				for (var entry : id2bloomFilter.entrySet()) {
+					outs.writeInt(entry.getKey());
+					outs.writeInt(entry.getValue().length);
+					outs.write(entry.getValue());
+				}
+			}
+			Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+
+	/**
+	 * reads an index file
+	 *
+	 * @return the index, or null, if the file is not an index of the current version of the database file
+	 */
+	private static ReferenceDatabaseIndex read(File indexFile, File dbFile) throws IOException {
+		try (var ins = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 20))) {
+			if (ins.readInt() != MAGIC || ins.readInt() != VERSION || ins.readLong() != dbFile.length() || ins.readLong() != dbFile.lastModified())
+				return null;
+			final var mashK = ins.readInt();
+			final var mashS = ins.readInt();
+			final var mashSeed = ins.readInt();
+			final var n = ins.readInt();
+			final var taxonIds = new int[n];
+			final var parentIds = new int[n];
+			for (var i = 0; i < n; i++) {
+				taxonIds[i] = ins.readInt();
+				parentIds[i] = ins.readInt();
+			}
+			final var id2sketch = new HashMap<Integer, byte[]>();
+			for (var count = ins.readInt(); count > 0; count--) {
+				final var id = ins.readInt();
+				final var bytes = new byte[ins.readInt()];
+				ins.readFully(bytes);
+				id2sketch.put(id, bytes);
+			}
+			final var id2bloomFilter = new HashMap<Integer, byte[]>();
+			for (var count = ins.readInt(); count > 0; count--) {
+				final var id = ins.readInt();
+				final var bytes = new byte[ins.readInt()];
+				ins.readFully(bytes);
+				id2bloomFilter.put(id, bytes);
+			}
+			return new ReferenceDatabaseIndex(mashK, mashS, mashSeed, taxonIds, parentIds, id2sketch, id2bloomFilter);
+		}
+	}
+
+	/**
+	 * finds all genomes whose mash sketch shares at least the given number of hash values with one of the query
+	 * sketches. The taxonomy is searched level by level, in parallel, descending only into taxa whose Bloom filter
+	 * probably contains sufficiently many of the query k-mers
+	 *
+	 * @param progress       progress listener
+	 * @param querySketches  the query sketches
+	 * @param queryKMers     the k-mers of the query sketches
+	 * @param minSharedKMers the minimum number of shared hash values
+	 * @param rootId         the id of the root of the taxonomy
+	 * @return taxon ids mapped to the smallest mash distance to any of the queries
+	 */
+	public Map<Integer, Double> findSimilar(ProgressListener progress, Collection<MashSketch> querySketches, Set<String> queryKMers, int minSharedKMers, int rootId) throws IOException {
+		final var id2distance = new ConcurrentHashMap<Integer, Double>();
+		var frontier = new ArrayList<Integer>();
+		if (indexOf(rootId) != -1)
+			frontier.add(indexOf(rootId));
+
+		while (!frontier.isEmpty()) {
+			final var next = new ArrayList<Integer>();
+			try {
+				ExecuteInParallel.apply(frontier, v -> {
+					final var passed = new ArrayList<Integer>();
+					for (var k = childrenStart[v]; k < childrenStart[v + 1]; k++) {
+						final var w = children[k];
+						if (bloomFilters[w] != null) {
+							if (bloomFilterCardinalities[w] < mashS || bloomFilters[w].countContainedProbably(queryKMers) >= minSharedKMers)
+								passed.add(w);
+							progress.incrementProgress();
+						}
+						if (sketches[w] != null) {
+							for (var query : querySketches) {
+								if (MashDistance.computeIntersection(sketches[w], query) >= minSharedKMers)
+									id2distance.merge(taxonIds[w], MashDistance.compute(sketches[w], query), Math::min);
+							}
+							progress.incrementProgress();
+						}
+					}
+					return passed;
+				}, next, ProgramExecutorService.getNumberOfCoresToUse());
+			} catch (IOException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				throw new IOException(ex);
+			}
+			frontier = next;
+		}
+		return id2distance;
+	}
+
+	/**
+	 * gets the id of the parent of a taxon
+	 *
+	 * @return parent id, or 0, if the taxon is the root or unknown
+	 */
+	public int getParent(int taxonId) {
+		final var i = indexOf(taxonId);
+		return (i == -1 || parent[i] == -1 ? 0 : taxonIds[parent[i]]);
+	}
+
+	/**
+	 * gets the ids of the children of a taxon
+	 */
+	public Collection<Integer> getChildren(int taxonId) {
+		final var i = indexOf(taxonId);
+		final var list = new ArrayList<Integer>();
+		if (i != -1) {
+			for (var k = childrenStart[i]; k < childrenStart[i + 1]; k++)
+				list.add(taxonIds[children[k]]);
+		}
+		return list;
+	}
+
+	/**
+	 * gets the number of Bloom filters, for progress reporting
+	 */
+	public int countBloomFilters() {
+		return (int) Arrays.stream(bloomFilters).filter(Objects::nonNull).count();
+	}
+
+	private int indexOf(int taxonId) {
+		final var i = Arrays.binarySearch(taxonIds, taxonId);
+		return (i >= 0 ? i : -1);
+	}
+}
@@ -25,6 +25,7 @@
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.DistancesFormat;
 import splitstree6.data.TaxaBlock;
+import splitstree6.data.parts.DistanceMatrix;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -110,6 +111,7 @@ public List<String> parse(NexusStreamParser np, TaxaBlock taxaBlock, DistancesBl
 			}
 
 			final var both = format.getOptionTriangle().equals(DistancesFormat.Triangle.Both);
+			var averaged = false; // were values of a matrix that is not symmetric averaged while reading?
 			final var upper = format.getOptionTriangle().equals(DistancesFormat.Triangle.Upper);
 			final var lower = format.getOptionTriangle().equals(DistancesFormat.Triangle.Lower);
 			final var diag = format.isOptionDiagonal() ? 0 : 1;
@@ -148,7 +150,7 @@ public List<String> parse(NexusStreamParser np, TaxaBlock taxaBlock, DistancesBl
 						double z = np.getDouble();
 
 						if (both)
-							distancesBlock.set(t, q, z);
+							averaged |= distancesBlock.setInSquareMatrix(t, q, z);
 						else
 							distancesBlock.setBoth(t, q, z);
 
@@ -159,10 +161,12 @@ public List<String> parse(NexusStreamParser np, TaxaBlock taxaBlock, DistancesBl
 			np.matchEndBlock();
 
 			if (both) {
-				if (!isSymmetric(distancesBlock)) {
+				if (distancesBlock.getStorage() == DistanceMatrix.Storage.Full && !isSymmetric(distancesBlock)) {
 					symmetrize(distancesBlock);
-					System.err.println("Warning: Distance matrix not symmetric: averaging between upper and lower parts");
+					averaged = true;
 				}
+				if (averaged)
+					System.err.println("Warning: Distance matrix not symmetric: averaging between upper and lower parts");
 			}
 			return taxonNamesFound;
 		} catch (Exception ex) {
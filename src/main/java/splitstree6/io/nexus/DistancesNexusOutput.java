@@ -60,6 +60,8 @@ public void write(Writer w, TaxaBlock taxaBlock, DistancesBlock distancesBlock)
 		{
 			w.write("MATRIX\n");
 
+			final var row = new double[distancesBlock.getNtax() + 1]; // rows are read as a whole, which is much faster for packed or mapped storage
+
 			for (var s = 1; s <= distancesBlock.getNtax(); s++) {
 				if (format.isOptionLabels()) {
 					w.write("[" + s + "]");
@@ -67,6 +69,7 @@ public void write(Writer w, TaxaBlock taxaBlock, DistancesBlock distancesBlock)
 					pad(w, taxaBlock, s);
 				}
 
+				distancesBlock.getRow(s, row, 1);
 				final var buf = new StringBuilder();
 				InnerLoop:
 				for (var t = 1; t <= distancesBlock.getNtax(); t++) {
@@ -85,7 +88,7 @@ public void write(Writer w, TaxaBlock taxaBlock, DistancesBlock distancesBlock)
 						default:
 						case Both:
 					}
-					buf.append(StringUtils.trim(" %.8f", distancesBlock.get(s, t)));
+					buf.append(StringUtils.trim(" %.8f", row[t]));
 				}
 				w.write(buf + "\n");
 			}
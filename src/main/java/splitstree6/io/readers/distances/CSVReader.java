@@ -19,6 +19,7 @@
 
 package splitstree6.io.readers.distances;
 
+import jloda.fx.window.NotificationManager;
 import jloda.util.FileUtils;
 import jloda.util.NumberUtils;
 import jloda.util.StringUtils;
@@ -48,134 +49,99 @@ public CSVReader() {
 	 * <p>>
 	 * - Separators: commas (CSV). Whitespace around fields is trimmed.
 	 * - Blank lines and lines starting with '#' or '//' are ignored.
-	 * - Returns labels and matrix as doubles.
+	 * - The file is read twice, first to determine the variant and size, then to stream the values into the
+	 * distances block, so the matrix is never held in memory as a whole, see DistancesBlock.getDefaultStorage().
 	 */
 	@Override
 	public void read(ProgressListener progress, String inputFile, TaxaBlock taxaBlock, DistancesBlock distancesBlock) throws IOException {
+		// 1) Count the meaningful lines (skip blanks/comments) and keep the first one
+		String first = null;
+		var nLines = 0;
 		try (var br = new BufferedReader(FileUtils.getReaderPossiblyZIPorGZIP(inputFile))) {
-			// 1) Read all meaningful lines upfront (skip blanks/comments)
-			List<String> lines = new ArrayList<>();
-			for (String raw; (raw = br.readLine()) != null; ) {
-				String line = raw.trim();
-				if (line.isEmpty()) continue;
-				if (line.startsWith("#") || line.startsWith("//")) continue;
-				lines.add(line);
+			for (String line; (line = nextDataLine(br)) != null; ) {
+				if (first == null)
+					first = line;
+				nLines++;
 			}
-			if (lines.isEmpty()) {
-				throw new IOException("Empty distance file.");
-			}
-
-			// 2) Decide variant
-			// Try variant (a): first line is a single integer token
-			String first = lines.get(0);
-			String[] firstTokens = splitCsv(first);
-			boolean variantA = (firstTokens.length == 1 && NumberUtils.isInteger(firstTokens[0]));
+		}
+		if (first == null) {
+			throw new IOException("Empty distance file.");
+		}
 
-			if (variantA) {
-				int n = Integer.parseInt(firstTokens[0]);
-				if (lines.size() - 1 < n) {
-					throw new IOException("Expected " + n + " data lines after header, found " + (lines.size() - 1));
-				}
-				List<String> labels = new ArrayList<>(n);
-				double[][] d = new double[n][n];
+		// 2) Decide variant
+		// Try variant (a): first line is a single integer token
+		String[] firstTokens = splitCsv(first);
+		boolean variantA = (firstTokens.length == 1 && NumberUtils.isInteger(firstTokens[0]));
+		final int n;
+		final boolean labeled;
+		if (variantA) {
+			n = Integer.parseInt(firstTokens[0]);
+			if (nLines - 1 < n) {
+				throw new IOException("Expected " + n + " data lines after header, found " + (nLines - 1));
+			}
+			labeled = true;
+		} else {
+			// Heuristic: if the first row has all tokens numeric AND its length == n,
+			// we consider it variant (c). Otherwise, variant (b).
+			n = nLines;
+			labeled = !(allNumeric(firstTokens) && firstTokens.length == n);
+		}
 
-				for (int i = 0; i < n; i++) {
-					String[] tok = splitCsv(lines.get(i + 1));
+		// 3) Stream the rows into the distances block
+		distancesBlock.setNtax(n);
+		List<String> labels = new ArrayList<>(n);
+		var averaged = false;
+		try (var br = new BufferedReader(FileUtils.getReaderPossiblyZIPorGZIP(inputFile))) {
+			if (variantA)
+				nextDataLine(br);
+			final var lineOffset = (variantA ? 2 : 1); // for messages
+			for (int i = 0; i < n; i++) {
+				String[] tok = splitCsv(nextDataLine(br));
+				if (labeled) {
 					if (tok.length != n + 1) {
-						throw new IOException("Line " + (i + 2) + ": expected " + (n + 1) +
+						throw new IOException("Line " + (i + lineOffset) + ": expected " + (n + 1) +
 											  " CSV fields (label + " + n + " values), found " + tok.length);
 					}
 					String label = tok[0].trim();
 					if (label.isEmpty()) {
-						throw new IOException("Line " + (i + 2) + ": empty label.");
+						throw new IOException("Line " + (i + lineOffset) + ": empty label.");
 					}
 					labels.add(label);
-					for (int j = 0; j < n; j++) {
-						d[i][j] = parseDouble(tok[j + 1], i, j);
-					}
-				}
-				validateSquare(d);
-
-				taxaBlock.setNtax(labels.size());
-				taxaBlock.addTaxaByNames(labels);
-				distancesBlock.setNtax(taxaBlock.getNtax());
-				for (var i = 0; i < d.length; i++) {
-					for (var j = 0; j < d.length; j++) {
-						distancesBlock.getDistances()[i][j] = d[i][j];
-					}
-				}
-				return;
-			}
-
-			// For variants (b) and (c), all remaining lines are data lines
-			List<String[]> rows = new ArrayList<>(lines.size());
-			for (String line : lines) {
-				rows.add(splitCsv(line));
-			}
-			int n = rows.size();
-
-			// Heuristic: if the first row has all tokens numeric AND its length == n,
-			// we consider it variant (c). Otherwise, variant (b).
-			String[] firstRow = rows.get(0);
-			boolean firstRowAllNumeric = allNumeric(firstRow);
-			boolean variantC = firstRowAllNumeric && firstRow.length == n;
-
-			if (variantC) {
-				// (c) No labels in file; autogenerate t1..tn
-				List<String> labels = new ArrayList<>(n);
-				double[][] d = new double[n][n];
-				for (int i = 0; i < n; i++) {
-					String[] tok = rows.get(i);
+				} else {
 					if (tok.length != n) {
 						throw new IOException("Line " + (i + 1) + ": expected " + n +
 											  " numeric values, found " + tok.length);
 					}
 					labels.add("t" + (i + 1));
-					for (int j = 0; j < n; j++) {
-						d[i][j] = parseDouble(tok[j], i, j);
-					}
-				}
-				validateSquare(d);
-
-				taxaBlock.setNtax(labels.size());
-				taxaBlock.addTaxaByNames(labels);
-				distancesBlock.setNtax(taxaBlock.getNtax());
-				for (var i = 0; i < d.length; i++) {
-					for (var j = 0; j < d.length; j++) {
-						distancesBlock.getDistances()[i][j] = d[i][j];
-					}
-				}
-			} else {
-				// (b) Each line: label, n values. Here n is the number of lines.
-				List<String> labels = new ArrayList<>(n);
-				double[][] d = new double[n][n];
-
-				for (int i = 0; i < n; i++) {
-					String[] tok = rows.get(i);
-					if (tok.length != n + 1) {
-						throw new IOException("Line " + (i + 1) + ": expected " + (n + 1) +
-											  " CSV fields (label + " + n + " values), found " + tok.length);
-					}
-					String label = tok[0].trim();
-					if (label.isEmpty()) {
-						throw new IOException("Line " + (i + 1) + ": empty label.");
-					}
-					labels.add(label);
-					for (int j = 0; j < n; j++) {
-						d[i][j] = parseDouble(tok[j + 1], i, j);
-					}
 				}
-				validateSquare(d);
-				taxaBlock.setNtax(labels.size());
-				taxaBlock.addTaxaByNames(labels);
-				distancesBlock.setNtax(taxaBlock.getNtax());
-				for (var i = 0; i < d.length; i++) {
-					for (var j = 0; j < d.length; j++) {
-						distancesBlock.getDistances()[i][j] = d[i][j];
+				final var offset = (labeled ? 1 : 0);
+				for (int j = 0; j < n; j++) {
+					final var value = parseDouble(tok[j + offset], i, j);
+					if (i == j && Double.isNaN(value)) {
+						throw new IOException("Diagonal contains NaN at (" + i + "," + i + ")");
 					}
+					averaged |= distancesBlock.setInSquareMatrix(i + 1, j + 1, value);
 				}
 			}
 		}
+		taxaBlock.setNtax(labels.size());
+		taxaBlock.addTaxaByNames(labels);
+		if (averaged)
+			NotificationManager.showWarning("Distance matrix not symmetric, using mean values");
+	}
+
+	/**
+	 * gets the next line that is neither blank nor a comment, trimmed
+	 *
+	 * @return line or null
+	 */
+	private static String nextDataLine(BufferedReader br) throws IOException {
+		for (String raw; (raw = br.readLine()) != null; ) {
+			String line = raw.trim();
+			if (!line.isEmpty() && !line.startsWith("#") && !line.startsWith("//"))
+				return line;
+		}
+		return null;
 	}
 
 	@Override
@@ -210,21 +176,6 @@ private static boolean allNumeric(String[] arr) {
 		return true;
 	}
 
-	/**
-	 * Optional sanity: checks the matrix is square and diagonal is numeric (no NaNs).
-	 */
-	private static void validateSquare(double[][] d) throws IOException {
-		int n = d.length;
-		for (int i = 0; i < n; i++) {
-			if (d[i] == null || d[i].length != n) {
-				throw new IOException("Non-square matrix at row " + (i + 1));
-			}
-			if (Double.isNaN(d[i][i])) {
-				throw new IOException("Diagonal contains NaN at (" + i + "," + i + ")");
-			}
-		}
-	}
-
 	private static double parseDouble(String s, int i, int j) throws IOException {
 		try {
 			return Double.parseDouble(s);
@@ -23,6 +23,7 @@
 import splitstree6.data.DistancesBlock;
 import splitstree6.data.DistancesFormat;
 import splitstree6.data.TaxaBlock;
+import splitstree6.data.parts.DistanceMatrix;
 import splitstree6.io.utils.DataReaderBase;
 
 public abstract class DistancesReader extends DataReaderBase<DistancesBlock> {
@@ -31,7 +32,19 @@ public DistancesReader() {
 	}
 
 	public static void ensureSymmetric(TaxaBlock taxa, DistancesBlock distances) {
-		if (distances.getFormat().getOptionTriangle() == DistancesFormat.Triangle.Both) {
+		ensureSymmetric(taxa, distances, false);
+	}
+
+	/**
+	 * ensures that the distances are symmetric, using the mean of the two values where they are not
+	 *
+	 * @param alreadyChanged were values already replaced by their means while reading, see DistancesBlock.setInSquareMatrix()?
+	 */
+	public static void ensureSymmetric(TaxaBlock taxa, DistancesBlock distances, boolean alreadyChanged) {
+		if (distances.getStorage() != DistanceMatrix.Storage.Full) { // symmetric by construction
+			if (alreadyChanged)
+				NotificationManager.showWarning("Distance matrix not symmetric, using mean values");
+		} else if (distances.getFormat().getOptionTriangle() == DistancesFormat.Triangle.Both) {
 			var changed = false;
 			for (var s = 1; s <= taxa.getNtax(); s++) {
 				for (var t = s + 1; t <= taxa.getNtax(); t++) {
@@ -43,7 +56,7 @@ public static void ensureSymmetric(TaxaBlock taxa, DistancesBlock distances) {
 					}
 				}
 			}
-			if (changed)
+			if (changed || alreadyChanged)
 				NotificationManager.showWarning("Distance matrix not symmetric, using mean values");
 		}
 	}
@@ -50,6 +50,7 @@ public enum Triangle {Both, Lower, Upper}
 	public void read(ProgressListener progressListener, String inputFile, TaxaBlock taxa, DistancesBlock distances) throws IOException {
 		Triangle triangle = null;
 		var unlabeled = false; // label-less square matrix, taxa are named t1...tn
+		var averaged = false; // were values of a matrix that is not symmetric averaged while reading?
 		int row = 0;
 		int numberOfTaxa = 0;
 
@@ -102,7 +103,7 @@ else if (tokens.length == numberOfTaxa + 1)
 						taxa.addTaxaByNames(Collections.singleton("t" + row));
 						for (int col = 1; col <= numberOfTaxa; col++) {
 							final double value = NumberUtils.parseDouble(tokens[col - 1]);
-							distances.set(row, col, value);
+							averaged |= distances.setInSquareMatrix(row, col, value);
 						}
 					} else if (triangle == Triangle.Both) {
 						if (tokens.length != numberOfTaxa + 1)
@@ -110,7 +111,7 @@ else if (tokens.length == numberOfTaxa + 1)
 						taxa.addTaxaByNames(Collections.singleton(tokens[0]));
 						for (int col = 1; col < tokens.length; col++) {
 							final double value = NumberUtils.parseDouble(tokens[col]);
-							distances.set(row, col, value);
+							averaged |= distances.setInSquareMatrix(row, col, value);
 						}
 					} else if (triangle == Triangle.Upper) {
 						if (tokens.length != numberOfTaxa + 1 - row)
@@ -137,7 +138,7 @@ else if (tokens.length == numberOfTaxa + 1)
 			}
 		}
 		if (triangle == Triangle.Both) {
-			ensureSymmetric(taxa, distances);
+			ensureSymmetric(taxa, distances, averaged);
 		}
 	}
 
@@ -74,16 +74,7 @@ public static Triplet<Integer, Double, Double> computeRootLocation(boolean alt,
 				return new Triplet<>(split, factor1 * splitsBlock.get(split).getWeight(), factor2 * splitsBlock.get(split).getWeight());
 			}
 		} else {
-			final var splitDistances = new double[nTax + 1][nTax + 1];
-			for (var split : splitsBlock.getSplits()) {
-				for (var a : BitSetUtils.members(split.getA())) {
-					for (var b : BitSetUtils.members(split.getB())) {
-						var diff = useWeights ? split.getWeight() : 1;
-						splitDistances[a][b] += diff;
-						splitDistances[b][a] += diff;
-					}
-				}
-			}
+			final var splitDistances = SplitsBlockUtilities.computeSplitDistances(nTax, cycle, splitsBlock.getSplits(), useWeights);
 			var maxDistance = 0.0;
 			final var furthestPair = new Pair<>(0, 0);
 
@@ -0,0 +1,114 @@
+/*
+ *  ProbabilityGrid.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.models;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * the matrices X(t), with X_{ij}(t) = \pi_i P_{ij}(t), of a substitution model at a fixed grid of times, computed on
+ * first use and kept
+ * <p>
+ * Maximum likelihood distances evaluate the likelihood of every pair of sequences at the grid times to bracket
+ * the optimum, so computing X once per time, rather than once per time and pair, makes that step cheap. The grid is
+ * shared by the copies of a model that the threads use, so an entry may be computed by more than one thread, but
+ * always to the same values.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class ProbabilityGrid {
+	/**
+	 * smallest and largest time on the grid, beyond the largest time a distance is considered saturated
+	 */
+	public static final double MIN_TIME = 0.00000001;
+	public static final double MAX_TIME = 10.0;
+	private static final double FIRST_STEP = 0.01;
+	private static final double RATIO = 1.15;
+
+	private static final double[] TIMES = setupTimes();
+
+	private final int nStates;
+	private final AtomicReferenceArray<double[][]> matrices;
+
+	/**
+	 * constructor
+	 *
+	 * @param nStates number of states of the model
+	 */
+	public ProbabilityGrid(int nStates) {
+		this.nStates = nStates;
+		this.matrices = new AtomicReferenceArray<>(TIMES.length);
+	}
+
+	/**
+	 * the times: MIN_TIME, then geometrically increasing from FIRST_STEP, which resolves short distances finely
+	 * and long ones, whose likelihood is flat, coarsely, and MAX_TIME
+	 */
+	private static double[] setupTimes() {
+		var count = 2;
+		for (var t = FIRST_STEP; t < MAX_TIME; t *= RATIO)
+			count++;
+		final var times = new double[count];
+		times[0] = MIN_TIME;
+		var k = 1;
+		for (var t = FIRST_STEP; t < MAX_TIME; t *= RATIO)
+			times[k++] = t;
+		times[k] = MAX_TIME;
+		return times;
+	}
+
+	/**
+	 * number of times on the grid
+	 */
+	public int size() {
+		return TIMES.length;
+	}
+
+	/**
+	 * gets a time of the grid
+	 *
+	 * @param k index, 0-based
+	 * @return time, increasing with k
+	 */
+	public double getTime(int k) {
+		return TIMES[k];
+	}
+
+	/**
+	 * gets the matrix X(t) for a time of the grid, computing it, if necessary
+	 *
+	 * @param model the model, or a copy of it, used to compute the matrix, if it has not been computed yet. Its
+	 *              state may be changed by this, as by getX()
+	 * @param k     index of the time, 0-based
+	 * @return matrix, not to be modified
+	 */
+	public double[][] getX(SubstitutionModel model, int k) {
+		var X = matrices.get(k);
+		if (X == null) {
+			X = new double[nStates][nStates];
+			for (var i = 0; i < nStates; i++) {
+				for (var j = 0; j < nStates; j++) {
+					X[i][j] = model.getX(i, j, TIMES[k]);
+				}
+			}
+			matrices.compareAndSet(k, null, X);
+		}
+		return X;
+	}
+}
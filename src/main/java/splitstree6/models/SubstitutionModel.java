@@ -92,6 +92,15 @@ public interface SubstitutionModel {
 	 */
 	int getNstates();
 
+	/**
+	 * gets the matrices X(t) at the times of a fixed grid, memoized, if the model provides them
+	 *
+	 * @return grid, or null
+	 */
+	default ProbabilityGrid getProbabilityGrid() {
+		return null;
+	}
+
 	//boolean isGroupBased();
 }
 
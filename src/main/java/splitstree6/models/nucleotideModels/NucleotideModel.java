@@ -28,18 +28,18 @@
 import jama.EigenvalueDecomposition;
 import jama.Matrix;
 import jloda.fx.window.NotificationManager;
-import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 import splitstree6.algorithms.characters.characters2distances.utils.FixUndefinedDistances;
 import splitstree6.algorithms.characters.characters2distances.utils.PairwiseCompare;
 import splitstree6.algorithms.characters.characters2distances.utils.SaturatedDistancesException;
-import splitstree6.algorithms.utils.SplitsException;
+import splitstree6.algorithms.utils.ParallelPairs;
 import splitstree6.data.CharactersBlock;
-
-import java.util.Arrays;
 import splitstree6.data.DistancesBlock;
 import splitstree6.models.SubstitutionModel;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * @author bryant
  * <p/>
@@ -47,7 +47,7 @@
  * <p/>
  * We are given the Q matrix, which is assumed to be a valid GTRDistance rate matrix.
  */
-public abstract class NucleotideModel implements SubstitutionModel {
+public abstract class NucleotideModel implements SubstitutionModel, Cloneable {
 
 	private final static double EPSILON = 1e-6; //Threshold for round-off error when checking matrices
 
@@ -413,46 +413,72 @@ public static double mInverse(double x, double propInvariableSites, final double
 
 	/**
 	 * computeConsensusAndCycle the model and fill the distance
+	 * <p>
+	 * The pairs are computed in parallel, on the distinct site patterns. Each thread has its own PairwiseCompare,
+	 * reused for all of its pairs, and its own copy of this model, because getX() and getNormedBaseFreq() write to it
 	 *
 	 * @param progress used to display the progress
 	 */
-	public void apply(ProgressListener progress, CharactersBlock characters, DistancesBlock distancesBlock, boolean useML) throws SplitsException, CanceledException {
+	public void apply(ProgressListener progress, CharactersBlock characters, DistancesBlock distancesBlock, boolean useML) throws IOException {
 		final int ntax = characters.getNtax();
 		distancesBlock.setNtax(ntax);
-		progress.setMaximum(ntax);
 
-		for (int s = 1; s <= ntax; s++) {
-			for (int t = s + 1; t <= ntax; t++) {
-				final PairwiseCompare seqPair = new PairwiseCompare(characters, s, t);
-				double dist = -1.0;
+		// sites that show the same pattern are compared once, with the sum of their weights
+		final CharactersBlock patterns = characters.getSitePatterns().getCompressedCharacters();
+
+		ParallelPairs.apply(progress, ntax, () -> new Worker(new PairwiseCompare(patterns), copy()), (worker, s, t) -> {
+			final PairwiseCompare seqPair = worker.compare().compute(s, t, false);
+			double dist = -1.0;
 
-				if (useML) {
-					//Maximum likelihood distance
+			if (useML) {
+				//Maximum likelihood distance
+				try {
+					dist = seqPair.mlDistance(worker.model());
+				} catch (SaturatedDistancesException e) {
+				}
+			} else {
+				//Exact distance
+				final double[][] F = seqPair.getF();
+				if (F != null) {
 					try {
-						dist = seqPair.mlDistance(this);
-					} catch (SaturatedDistancesException e) {
-					}
-				} else {
-					//Exact distance
-					final double[][] F = seqPair.getF();
-					if (F != null) {
-						try {
-							dist = exactDistance(F);
-						} catch (SaturatedDistancesException ignored) {
-						}
+						dist = worker.model().exactDistance(F);
+					} catch (SaturatedDistancesException ignored) {
 					}
 				}
-
-				distancesBlock.set(s, t, dist);
-				distancesBlock.set(t, s, dist);
 			}
-			progress.incrementProgress();
-		}
+
+			distancesBlock.setBoth(s, t, dist);
+		});
 
 		FixUndefinedDistances.apply(distancesBlock);
 		progress.reportTaskCompleted();
 	}
 
+	/**
+	 * the working state of one thread in apply()
+	 */
+	private record Worker(PairwiseCompare compare, NucleotideModel model) {
+	}
+
+	/**
+	 * creates a copy that shares the diagonalisation, which is not changed once the model is set up, but has its
+	 * own base frequencies and P matrix, which are modified by getX(), getP() and getNormedBaseFreq()
+	 *
+	 * @return copy that can be used concurrently with this model
+	 */
+	public NucleotideModel copy() {
+		try {
+			final var copy = (NucleotideModel) super.clone();
+			copy.freqs = freqs.clone();
+			copy.Pmatrix = new double[Pmatrix.length][];
+			for (int i = 0; i < Pmatrix.length; i++)
+				copy.Pmatrix[i] = Pmatrix[i].clone();
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e); // can't happen
+		}
+	}
+
 	/**
 	 * Computes the frequencies matrix from *all* taxa
 	 *
@@ -475,7 +501,7 @@ static public double[] computeFreqs(CharactersBlock chars, boolean warned) {
 		// from 0, and to the end: these loops used to start at 1 and stop short, silently leaving the first
 		// taxon, the first site and the last site out of every base frequency this program has ever reported
 		for (int i = 0; i < chars.getNtax(); i++) {
-			char[] seq = chars.getMatrix()[i];
+			char[] seq = chars.getMatrixReadOnly()[i];
 			for (int k = 0; k < chars.getNchar(); k++) {
 				char c = seq[k];
 
@@ -25,6 +25,7 @@
  */
 package splitstree6.models.proteinModels;
 
+import splitstree6.models.ProbabilityGrid;
 import splitstree6.models.SubstitutionModel;
 
 import java.util.Random;
@@ -35,7 +36,7 @@
  */
 //ToDO: Copy changes and java doc from Nucleotide Model
 
-public abstract class ProteinModel implements SubstitutionModel {
+public abstract class ProteinModel implements SubstitutionModel, Cloneable {
 
 	double[] freqs; /* base frequencies */
 	double[] sqrtf; /* SquareShape roots of frequencies */
@@ -48,6 +49,8 @@ public abstract class ProteinModel implements SubstitutionModel {
 	double gamma; /* Gamma parameter. This is 0 for no gamma */
 	double pinv; /* Proportion of invariant sites */
 
+	private ProbabilityGrid probabilityGrid; /* memoized X(t), shared with copies, reset when pinv or gamma change */
+
 	/*------------Constructors-----------------------*/
 	ProteinModel() {
 
@@ -190,6 +193,7 @@ public double getPinv() {
 	public void setPinv(double p) {
 		if (p != pinv) {
 			pinv = p;
+			probabilityGrid = null;
 			if (tval != 0.0)
 				computeP(tval);
 		}
@@ -202,6 +206,7 @@ public double getGamma() {
 	public void setGamma(double val) {
 		if (gamma != val) {
 			gamma = val;
+			probabilityGrid = null;
 			if (tval != 0.0)
 				computeP(tval);
 		}
@@ -211,6 +216,18 @@ public int getNstates() {
 		return 20;
 	}
 
+	/**
+	 * gets the memoized matrices X(t) at the grid times. Obtain this before making copies, so that they share it
+	 *
+	 * @return grid
+	 */
+	@Override
+	public synchronized ProbabilityGrid getProbabilityGrid() {
+		if (probabilityGrid == null)
+			probabilityGrid = new ProbabilityGrid(getNstates());
+		return probabilityGrid;
+	}
+
 	/**
 	 * getRate
 	 * <p/>
@@ -243,6 +260,24 @@ public int randomEndState(int start, double t, Random random) {
 		return i;
 	}
 
+	/**
+	 * creates a copy that shares the diagonalisation and the probability grid but has its own P matrix, which is
+	 * modified by getX() and getP()
+	 *
+	 * @return copy that can be used concurrently with this model
+	 */
+	public ProteinModel copy() {
+		try {
+			final var copy = (ProteinModel) super.clone();
+			copy.Pmatrix = new double[Pmatrix.length][];
+			for (int i = 0; i < Pmatrix.length; i++)
+				copy.Pmatrix[i] = Pmatrix[i].clone();
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e); // can't happen
+		}
+	}
+
 	/**
 	 * is this a group valued model
 	 *
@@ -22,6 +22,7 @@
 import javafx.beans.InvalidationListener;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.Tooltip;
 import jloda.fx.icons.MaterialIcons;
 import splitstree6.contextmenus.algorithmnode.AlgorithmNodeContextMenu;
 import splitstree6.tabs.workflow.WorkflowTab;
@@ -93,8 +94,13 @@ public AlgorithmItemPresenter(MainWindow mainWindow, WorkflowTab workflowTab, Al
 						controller.getIconPane().getChildren().setAll(MaterialIcons.graphic(MaterialIcons.close, "-fx-text-fill: red;"));
 				case READY, SCHEDULED ->
 						controller.getIconPane().getChildren().setAll(MaterialIcons.graphic(MaterialIcons.schedule, "-fx-text-fill: yellow;"));
-				case SUCCEEDED ->
+				case SUCCEEDED -> {
+					if (node.isReused()) {
+						controller.getIconPane().getChildren().setAll(MaterialIcons.graphic("cached", "-fx-text-fill: green;"));
+						Tooltip.install(controller.getIconPane().getChildren().get(0), new Tooltip("Reused, options and input unchanged"));
+					} else
 						controller.getIconPane().getChildren().setAll(MaterialIcons.graphic(MaterialIcons.done, "-fx-text-fill: green;"));
+				}
 				case RUNNING -> controller.getIconPane().getChildren().setAll(progressIndicator);
 			}
 		});
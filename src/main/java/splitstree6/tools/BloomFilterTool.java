@@ -24,6 +24,7 @@
 import jloda.thirdparty.HexUtils;
 import jloda.util.*;
 import jloda.util.progress.ProgressPercentage;
+import splitstree6.dialog.analyzegenomes.ReferenceDataFormat;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -83,7 +84,8 @@ public void run(String[] args) throws Exception {
 		else
 			output = options.getOption("-o", "output", "Output file (stdout ok)", "stdout");
 
-		final boolean useHexEncoding = options.getOption("-f", "format", "Bloom filter output format", new String[]{"hex", "binary"}, "hex").equalsIgnoreCase("hex");
+		final String format = options.getOption("-f", "format", "Bloom filter format (blob has a header with the k-mer size)", new String[]{"hex", "binary", "blob"}, "hex");
+		final boolean useHexEncoding = format.equalsIgnoreCase("hex");
 
 		options.comment("MAKE options");
 		final double fpProbability;
@@ -98,6 +100,12 @@ public void run(String[] args) throws Exception {
 			maxBytes = (int) Basic.parseKiloMegaGiga("1M");
 
 
+		final int kmerSize;
+		if (options.isDoHelp() || command.equals("make"))
+			kmerSize = options.getOption("-k", "kmerSize", "Size of the k-mers, recorded in blob format", 0);
+		else
+			kmerSize = 0;
+
 		options.comment("CONTAINS options");
 		final String[] bloomFilterInput;
 		if (options.isDoHelp() || command.equals("contains"))
@@ -200,7 +208,10 @@ public void run(String[] args) throws Exception {
 				}
 			} else {
 				try (OutputStream outs = FileUtils.getOutputStreamPossiblyZIPorGZIP(output)) {
-					outs.write(allKMersBloomFilter.getBytes());
+					if (format.equalsIgnoreCase("blob"))
+						outs.write(ReferenceDataFormat.encode(ReferenceDataFormat.Type.BloomFilter, allKMersBloomFilter.getBytes(), kmerSize, 0, 0));
+					else
+						outs.write(allKMersBloomFilter.getBytes());
 				}
 			}
 			System.err.println("Total file size: " + Basic.getMemorySizeString((new File(output)).length()));
@@ -219,9 +230,9 @@ public void run(String[] args) throws Exception {
 									try {
 										final byte[] bytes;
 										if (useHexEncoding)
-											bytes = HexUtils.decodeHexString(Files.readString((new File(fileName).toPath())).trim());
-										else
-											bytes = Files.readAllBytes((new File(fileName).toPath()));
+											bytes = ReferenceDataFormat.decode(ReferenceDataFormat.Type.BloomFilter, Files.readString((new File(fileName).toPath())));
+										else // binary or blob, distinguished by the header
+											bytes = ReferenceDataFormat.decode(ReferenceDataFormat.Type.BloomFilter, Files.readAllBytes((new File(fileName).toPath())));
 										final BloomFilter bloomFilter = BloomFilter.parseBytes(bytes);
 										synchronized (bloomFilters) {
 											bloomFilters.put(fileName, bloomFilter);
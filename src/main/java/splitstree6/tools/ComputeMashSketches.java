@@ -25,6 +25,7 @@
 import jloda.util.*;
 import jloda.util.progress.ProgressPercentage;
 import jloda.util.progress.ProgressSilent;
+import splitstree6.dialog.analyzegenomes.ReferenceDataFormat;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -69,7 +70,7 @@ public void run(String[] args) throws Exception {
 		options.comment("Input and output");
 		final String[] input = options.getOptionMandatory("-i", "input", "Input fastA files (directory or .gz ok)", new String[0]);
 		final String[] output = options.getOptionMandatory("-o", "output", "Output mash sketch files (directory or .gz ok, use suffix .msketch for files)", new String[0]);
-		final String outputFormat = options.getOption("-f", "format", "Sketch output format", new String[]{"hex", "binary", "text"}, "hex");
+		final String outputFormat = options.getOption("-f", "format", "Sketch output format", new String[]{"hex", "binary", "blob", "text"}, "hex");
 		final boolean createKMerFiles = options.getOption("-ok", "kMerFiles", "Create k-mer files, too", false);
 
 		options.comment("Mash parameters");
@@ -143,7 +144,7 @@ else if (FileUtils.isDirectory(name)) {
 							final String inputFile = inputOutputPair.getFirst();
 							final byte[] sequence = readSequences(inputFile);
 							final MashSketch sketch = MashSketch.compute(inputFile, Collections.singleton(sequence), isNucleotideData, sParameter, kParameter, randomSeed, filterUnique, true, new ProgressSilent());
-							saveSketch(inputOutputPair.getSecond(), sketch, outputFormat);
+							saveSketch(inputOutputPair.getSecond(), sketch, outputFormat, kParameter, sParameter, randomSeed);
 
 							if (createKMerFiles) {
 								try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(FileUtils.replaceFileSuffixKeepGZ(inputOutputPair.getSecond(), ".kmers"))))) {
@@ -174,7 +175,7 @@ private byte[] readSequences(String fileName) throws IOException {
 		}
 	}
 
-	private void saveSketch(String outputFile, MashSketch sketch, String outputFormat) throws IOException {
+	private void saveSketch(String outputFile, MashSketch sketch, String outputFormat, int k, int s, int seed) throws IOException {
 		try (OutputStream outs = FileUtils.getOutputStreamPossiblyZIPorGZIP(outputFile)) {
 			switch (outputFormat) {
 				case "text":
@@ -192,6 +193,11 @@ private void saveSketch(String outputFile, MashSketch sketch, String outputForma
 						w.write(sketch.getBytes());
 					}
 					break;
+				case "blob":
+					try (BufferedOutputStream w = new BufferedOutputStream(outs)) {
+						w.write(ReferenceDataFormat.encode(ReferenceDataFormat.Type.Sketch, sketch.getBytes(), k, s, seed));
+					}
+					break;
 			}
 		}
 	}
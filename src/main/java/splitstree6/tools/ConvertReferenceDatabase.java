@@ -0,0 +1,157 @@
+/*
+ *  ConvertReferenceDatabase.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.tools;
+
+import jloda.connect.DatabaseConnector;
+import jloda.fx.util.ArgsOptions;
+import jloda.util.*;
+import jloda.util.progress.ProgressPercentage;
+import splitstree6.dialog.analyzegenomes.ReferenceDataFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * converts the mash sketches and Bloom filters of a reference database from hex strings to binary BLOBs
+ * Daniel Huson, 10.2026
+ */
+public class ConvertReferenceDatabase {
+	private static final int CHUNK_SIZE = 1000;
+
+	/**
+	 * main
+	 */
+	public static void main(String[] args) {
+		try {
+			ProgramProperties.setProgramName("ConvertReferenceDatabase");
+			ProgramProperties.setProgramVersion(splitstree6.main.Version.SHORT_DESCRIPTION);
+
+			PeakMemoryUsageMonitor.start();
+			(new ConvertReferenceDatabase()).run(args);
+			PeakMemoryUsageMonitor.report();
+			System.exit(0);
+		} catch (Exception ex) {
+			Basic.caught(ex);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * run the program
+	 */
+	public void run(String[] args) throws Exception {
+		final var options = new ArgsOptions(args, this.getClass(), "Converts the sketches and Bloom filters of a reference database to binary format");
+		options.setVersion(ProgramProperties.getProgramVersion());
+		options.setLicense("This is free software, licensed under the terms of the GNU General Public License, Version 3.");
+		options.setAuthors("Daniel H. Huson");
+
+		options.comment("Input and output");
+		final var inputFile = options.getOptionMandatory("-i", "input", "Input database file", "");
+		final var outputFile = options.getOptionMandatory("-o", "output", "Output database file (input file is converted in place, if identical)", "");
+		final var vacuum = options.getOption("-v", "vacuum", "Compact the output database after conversion", true);
+		options.done();
+
+		FileUtils.checkFileReadableNonEmpty(inputFile);
+		if (!FileUtils.equals(inputFile, outputFile)) {
+			FileUtils.checkFileWritable(true, outputFile);
+			System.err.println("Copying to: " + outputFile);
+			Files.copy(new File(inputFile).toPath(), new File(outputFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		try (var connection = DatabaseConnector.connect(outputFile, false)) {
+			final var mashK = getInfoInt(connection, "mash_k");
+			final var mashS = getInfoInt(connection, "mash_s");
+			final var mashSeed = getInfoInt(connection, "mash_seed");
+
+			var count = convert(connection, "mash_sketches", "mash_sketch", ReferenceDataFormat.Type.Sketch, mashK, mashS, mashSeed);
+			System.err.printf("Converted sketches: %,d%n", count);
+			count = convert(connection, "bloom_filters", "bloom_filter", ReferenceDataFormat.Type.BloomFilter, mashK, 0, 0);
+			System.err.printf("Converted Bloom filters: %,d%n", count);
+
+			try (var statement = connection.prepareStatement("INSERT OR REPLACE INTO info (key, value) VALUES ('data_format', ?);")) {
+				statement.setString(1, "blob" + ReferenceDataFormat.FORMAT_VERSION);
+				statement.executeUpdate();
+			}
+			if (vacuum) {
+				System.err.println("Compacting...");
+				connection.createStatement().execute("VACUUM;");
+			}
+		}
+		System.err.println("Total file size: " + Basic.getMemorySizeString((new File(outputFile)).length()));
+	}
+
+	/**
+	 * converts all hex strings in the given column to BLOBs, in chunks, each in a transaction of its own
+	 *
+	 * @return the number of values converted
+	 */
+	private static int convert(Connection connection, String table, String column, ReferenceDataFormat.Type type, int k, int s, int seed) throws SQLException, IOException {
+		final var ids = new ArrayList<Integer>();
+		try (var rs = connection.createStatement().executeQuery("SELECT taxon_id FROM " + table + " WHERE typeof(" + column + ")='text';")) {
+			while (rs.next())
+				ids.add(rs.getInt(1));
+		}
+
+		try (var progress = new ProgressPercentage("Converting " + table, ids.size());
+			 var select = connection.prepareStatement("SELECT " + column + " FROM " + table + " WHERE taxon_id=?;");
+			 var update = connection.prepareStatement("UPDATE " + table + " SET " + column + "=? WHERE taxon_id=?;")) {
+			connection.setAutoCommit(false);
+			try {
+				for (var start = 0; start < ids.size(); start += CHUNK_SIZE) {
+					for (var id : ids.subList(start, Math.min(ids.size(), start + CHUNK_SIZE))) {
+						select.setInt(1, id);
+						try (var rs = select.executeQuery()) {
+							if (rs.next()) {
+								update.setBytes(1, ReferenceDataFormat.encode(type, ReferenceDataFormat.decode(type, rs.getString(1)), k, s, seed));
+								update.setInt(2, id);
+								update.addBatch();
+							}
+						}
+						progress.incrementProgress();
+					}
+					update.executeBatch();
+					connection.commit();
+				}
+			} catch (SQLException | IOException ex) {
+				connection.rollback();
+				throw ex;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		return ids.size();
+	}
+
+	private static int getInfoInt(Connection connection, String key) throws SQLException, IOException {
+		try (var statement = connection.prepareStatement("SELECT value FROM info WHERE key=?;")) {
+			statement.setString(1, key);
+			try (var rs = statement.executeQuery()) {
+				if (!rs.next())
+					throw new IOException("Database info lacks: " + key);
+				return rs.getInt(1);
+			}
+		}
+	}
+}
@@ -92,6 +92,7 @@ public void run(String[] args) throws Exception {
 		final var includeStrains = options.getOption("-is", "includeStrains", "Include the genomes of strains for the detected species", false);
 
 		options.comment(ArgsOptions.OTHER);
+		final var useIndex = options.getOption("-x", "index", "Search an in-memory index of the database, kept in a file beside it (built, if missing)", false);
 		ProgramExecutorService.setNumberOfCoresToUse(options.getOption("-t", "threads", "Number of threads to use", Runtime.getRuntime().availableProcessors()));
 		options.done();
 
@@ -132,6 +133,11 @@ public void run(String[] args) throws Exception {
 		} finally {
 			Basic.restoreSystemErr();
 		}
+		if (useIndex) {
+			try (var progress = new ProgressPercentage("Loading index")) {
+				database.loadIndex(progress);
+			}
+		}
 
 		var singleOutputFile = outputFiles.size() == 1;
 
@@ -25,8 +25,12 @@
 import jloda.seq.FastAFileIterator;
 import jloda.util.*;
 import jloda.util.progress.ProgressPercentage;
+import splitstree6.algorithms.utils.ParallelPairs;
+import splitstree6.data.DistancesBlock;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.function.ToDoubleBiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -79,9 +83,9 @@ private void run(String[] args) throws Exception {
 		for (int i = 0; i < inputFiles.length; i++) {
 			var inputFile = inputFiles[i];
 			var name = FileUtils.replaceFileSuffix(FileUtils.getFileNameWithoutPath(inputFile), "");
-			try (var iterator = new FastAFileIterator(inputFile)) {
+			try (var iterator = new FastAFileIterator(inputFile); var progress = new ProgressPercentage(name)) {
 				var sequences = IteratorUtils.asStream(iterator.records()).map(p -> p.getSecond().getBytes()).collect(Collectors.toList());
-				sketches[i] = MashSketch.compute(name, sequences, true, sketchSize, kmerSize, 666, false, new ProgressPercentage(name));
+				sketches[i] = MashSketch.compute(name, sequences, true, sketchSize, kmerSize, 666, false, progress);
 			}
 		}
 
@@ -93,33 +97,38 @@ private void run(String[] args) throws Exception {
 					}
 				}
 			}
-			case "jaccard" -> {
-				try (var w = new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(output))) {
-					w.write(sketches.length + "\n");
-					for (MashSketch iSketch : sketches) {
-						w.write(iSketch.getName());
-						for (var j = 0; j < sketches.length; j++) {
-							var jSketch = sketches[j];
-							w.write(j == 0 ? "\t" : " ");
-							w.write(String.format("%.8f", MashDistance.computeJaccardIndex(iSketch, jSketch)));
-						}
-						w.write("\n");
-					}
-				}
-			}
-			case "distances" -> {
-				try (var w = new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(output))) {
-					w.write(sketches.length + "\n");
-					for (MashSketch iSketch : sketches) {
-						w.write(iSketch.getName());
-						for (var j = 0; j < sketches.length; j++) {
-							var jSketch = sketches[j];
-							w.write(j == 0 ? "\t" : " ");
-							w.write(String.format("%.8f", MashDistance.compute(iSketch, jSketch)));
-						}
-						w.write("\n");
-					}
+			case "jaccard" -> write(output, sketches, MashDistance::computeJaccardIndex);
+			case "distances" -> write(output, sketches, MashDistance::compute);
+		}
+	}
+
+	/**
+	 * computes the matrix of values for all pairs of sketches, each pair once and in parallel, and writes it row by
+	 * row. The matrix is held in a distances block, which uses packed or memory-mapped storage for large numbers
+	 * of sketches
+	 */
+	private static void write(String output, MashSketch[] sketches, ToDoubleBiFunction<MashSketch, MashSketch> function) throws IOException {
+		final var n = sketches.length;
+		final var matrix = new DistancesBlock();
+		matrix.setNtax(n);
+		for (var s = 1; s <= n; s++)
+			matrix.set(s, s, function.applyAsDouble(sketches[s - 1], sketches[s - 1]));
+		try (var progress = new ProgressPercentage("Comparing")) {
+			ParallelPairs.apply(progress, n, () -> null,
+					(state, s, t) -> matrix.setBoth(s, t, function.applyAsDouble(sketches[s - 1], sketches[t - 1])));
+		}
+
+		try (var w = new OutputStreamWriter(FileUtils.getOutputStreamPossiblyZIPorGZIP(output))) {
+			w.write(n + "\n");
+			final var row = new double[n];
+			for (var i = 0; i < n; i++) {
+				matrix.getRow(i + 1, row, 0);
+				w.write(sketches[i].getName());
+				for (var j = 0; j < n; j++) {
+					w.write(j == 0 ? "\t" : " ");
+					w.write(String.format("%.8f", row[j]));
 				}
+				w.write("\n");
 			}
 		}
 	}
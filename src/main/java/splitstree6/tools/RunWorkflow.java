@@ -37,12 +37,23 @@
 import splitstree6.main.Version;
 import splitstree6.utils.RunningJobs;
 import splitstree6.window.MainWindow;
+import splitstree6.workflow.AlgorithmResultCache;
+import splitstree6.workflow.Workflow;
 import splitstree6.workflow.WorkflowDataLoader;
+import splitstree6.workflow.WorkflowExecutor;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * runs a workflow on one or more input files
@@ -72,7 +83,18 @@ public void stop() {
 	 */
 	public static void main(String[] args) {
 		RunWorkflow.args = args;
-		Application.launch();
+		if (Arrays.asList(args).contains("-hl") || Arrays.asList(args).contains("--headless")) { // don't start the JavaFX toolkit
+			final var runWorkflow = new RunWorkflow();
+			runWorkflow.init();
+			try {
+				runWorkflow.run(args);
+			} catch (Exception ex) {
+				if (ex.getMessage() == null || !ex.getMessage().startsWith("Help"))
+					Basic.caught(ex);
+			}
+			runWorkflow.stop();
+		} else
+			Application.launch();
 	}
 
 	@Override
@@ -109,6 +131,11 @@ private void run(String[] args) throws Exception {
 		final var inputFileExtension = options.getOption("-x", "inputExt", "File extension for input files (when providing directory for input)", "");
 		final var inputRecursively = options.getOption("-r", "recursive", "Recursively visit all sub-directories (when providing directory for input)", false);
 
+		final var concurrent = options.getOption("-c", "concurrent", "Number of input files to process concurrently, each by its own copy of the workflow", 1);
+		final var headless = options.getOption("-hl", "headless", "Run without the JavaFX toolkit, computing the algorithms directly", false);
+		final var computeViews = options.getOption("-vw", "views", "In headless mode, also compute the views", false);
+		final var resultCache = options.getOption("-rc", "resultCache", "Directory in which to cache the results of algorithms, for reuse on the same input with the same options", "");
+
 		final var maxTime = options.getOption("-t", "time", "Maximum wall-clock time for program to run (e.g. 100s, 2m, 3h or 4d)", "unlimited");
 
 		final String defaultPreferenceFile;
@@ -128,6 +155,9 @@ private void run(String[] args) throws Exception {
 		if (!maxTime.equals("unlimited"))
 			PeakMemoryUsageMonitor.setMaximumWallClockTime(maxTime);
 
+		if (!resultCache.isBlank())
+			AlgorithmResultCache.setDirectory(new File(resultCache));
+
 		if (!inputWorkflowFile.canRead())
 			throw new IOException("File not found or unreadable: " + inputWorkflowFile);
 
@@ -189,110 +219,217 @@ private void run(String[] args) throws Exception {
 		if (!WorkflowNexusInput.isApplicable(inputWorkflowFile.getPath()))
 			throw new IOException("Workflow not valid: " + inputWorkflowFile);
 
-		final var mainWindow = new MainWindow();
-		final var workflow = mainWindow.getWorkflow();
+		// each copy of the workflow processes one input file at a time
+		final var nCopies = Math.max(1, Math.min(concurrent, inputFiles.length));
+		final var copies = new ArrayBlockingQueue<Workflow>(nCopies);
+		for (var c = 0; c < nCopies; c++) {
+			final var workflow = loadWorkflow(inputWorkflowFile, headless);
+			if (c == 0) {
+				System.err.println("Loaded workflow has " + workflow.getNumberOfDataNodes() + " data nodes and " + IteratorUtils.size(workflow.algorithmNodes()) + " algorithms");
+				System.err.println("Number of input taxa: " + workflow.getInputTaxaNode().getDataBlock().getNtax());
+			}
+			copies.add(workflow);
+		}
+		if (nCopies > 1)
+			System.err.println("Number of input files processed concurrently: " + nCopies);
+
+		// when all output goes to one file, or to stdout, it is written in the order of the input files. Files processed
+		// one after another are written to it directly, files processed concurrently are buffered until their turn
+		final var sharedOutput = (outputFiles.length == 1 && inputFiles.length > 1);
+		final var sharedWriter = (sharedOutput && nCopies == 1 ? FileUtils.getOutputWriterPossiblyZIPorGZIP(outputFiles[0]) : null);
+		final var orderedWriter = (sharedOutput && nCopies > 1 ? new OrderedWriter(FileUtils.getOutputWriterPossiblyZIPorGZIP(outputFiles[0]), inputFiles.length) : null);
+		final var failed = Collections.synchronizedList(new ArrayList<String>());
+		final var start = System.currentTimeMillis();
+
+		final var service = Executors.newFixedThreadPool(nCopies);
+		try {
+			for (var i = 0; i < inputFiles.length; i++) {
+				final var which = i;
+				final var inputFile = inputFiles[i];
+				final var finalOutputFiles = outputFiles;
+				final var finalInputFiles = inputFiles;
+				service.submit(() -> {
+					final var fileStart = System.currentTimeMillis();
+					Workflow workflow = null;
+					var output = "";
+					try {
+						workflow = copies.take();
+						System.err.println("++++ Processing " + inputFile + " (" + (which + 1) + " of " + finalInputFiles.length + ") ++++");
+						processFile(workflow, inputFile, inputFormat, headless, computeViews);
+						if (orderedWriter != null) {
+							final var w = new StringWriter();
+							saveOutput(workflow, nodeName, exportFormat, w);
+							output = w.toString();
+						} else if (sharedWriter != null) {
+							saveOutput(workflow, nodeName, exportFormat, sharedWriter);
+						} else {
+							final var outputFile = finalOutputFiles[finalOutputFiles.length == finalInputFiles.length ? which : 0];
+							System.err.println("Saving to: " + outputFile);
+							try (var outputWriter = FileUtils.getOutputWriterPossiblyZIPorGZIP(outputFile)) {
+								saveOutput(workflow, nodeName, exportFormat, outputWriter);
+							}
+						}
+						System.err.printf("++++ Finished %s (%.1fs) ++++%n", inputFile, (System.currentTimeMillis() - fileStart) / 1000.0);
+					} catch (Exception ex) {
+						failed.add(inputFile);
+						System.err.printf("++++ FAILED %s (%.1fs): %s ++++%n", inputFile, (System.currentTimeMillis() - fileStart) / 1000.0, ex.getMessage());
+					} finally {
+						if (workflow != null)
+							copies.add(workflow);
+					}
+					if (orderedWriter != null) {
+						try {
+							orderedWriter.write(which, output);
+						} catch (IOException ex) {
+							System.err.println("Save FAILED: " + ex.getMessage());
+						}
+					}
+				});
+			}
+		} finally {
+			service.shutdown();
+			service.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			if (orderedWriter != null)
+				orderedWriter.close();
+			if (sharedWriter != null)
+				sharedWriter.close();
+			if (sharedOutput && appendToFile)
+				System.err.println("Wrote output to: " + outputFiles[0]);
+		}
+		if (inputFiles.length > 1)
+			System.err.printf("Processed %d input files in %.1fs, failed: %d%n", inputFiles.length, (System.currentTimeMillis() - start) / 1000.0, failed.size());
+		for (var inputFile : failed)
+			System.err.println("Failed: " + inputFile);
+		if (AlgorithmResultCache.isEnabled())
+			System.err.println("Cached results used: " + AlgorithmResultCache.getHits() + ", computed and cached: " + AlgorithmResultCache.getMisses());
+	}
+
+	/**
+	 * loads a copy of the workflow, in its own main window, or without one, when headless
+	 */
+	private static Workflow loadWorkflow(File inputWorkflowFile, boolean headless) throws IOException {
+		final var workflow = (headless ? new Workflow(null) : new MainWindow().getWorkflow());
 
 		try (final var progress = new ProgressPercentage("Loading workflow from file: " + inputWorkflowFile);
 			 var r = FileUtils.getReaderPossiblyZIPorGZIP(inputWorkflowFile.getPath())) {
 			WorkflowNexusInput.input(progress, workflow, r);
 		}
 
-		final var inputTaxaNode = workflow.getInputTaxaNode();
-		if (inputTaxaNode == null)
+		if (workflow.getInputTaxaNode() == null)
 			throw new IOException("Workflow does not have top taxon node");
-		final var inputDataNode = workflow.getInputDataNode();
-		if (inputDataNode == null)
+		if (workflow.getInputDataNode() == null)
 			throw new IOException("Workflow does not have top data node");
+		return workflow;
+	}
 
-		System.err.println("Loaded workflow has " + workflow.getNumberOfDataNodes() + " data nodes and " + IteratorUtils.size(workflow.algorithmNodes()) + " algorithms");
-		System.err.println("Number of input taxa: " + inputTaxaNode.getDataBlock().getNtax());
+	/**
+	 * runs the workflow on one input file
+	 */
+	private static void processFile(Workflow workflow, String inputFile, String inputFormat, boolean headless, boolean computeViews) throws Exception {
+		if (false) {
+			System.out.println("++++++++orig++++++++:");
+			(new WorkflowNexusOutput()).save(workflow, "stdout", false);
+		}
 
-		var outputWriter = (appendToFile ? FileUtils.getOutputWriterPossiblyZIPorGZIP(outputFiles[0]) : null);
-		try {
-			for (var i = 0; i < inputFiles.length; i++) {
-				final var inputFile = inputFiles[i];
-				System.err.println("++++ Processing " + inputFile + " (" + (i + 1) + " of " + inputFiles.length + ") ++++");
+		workflow.clearData();
+		if (false) {
+			System.out.println("++++++++cleared++++++++:");
+			(new WorkflowNexusOutput()).save(workflow, "stdout", false);
+		}
 
-				if (false) {
-					System.out.println("++++++++orig++++++++:");
-					(new WorkflowNexusOutput()).save(workflow, "stdout", false);
-				}
+		WorkflowDataLoader.load(workflow, inputFile, inputFormat);
+		if (false) {
+			System.out.println("++++++++loaded++++++++:");
+			(new WorkflowNexusOutput()).save(workflow, "stdout", false);
+		}
 
-				workflow.clearData();
-				if (false) {
-					System.out.println("++++++++cleared++++++++:");
-					(new WorkflowNexusOutput()).save(workflow, "stdout", false);
+		// update workflow:
+		if (headless) {
+			final var start = System.currentTimeMillis();
+			System.err.println("Running workflow...");
+			final var reports = WorkflowExecutor.apply(workflow, computeViews, ProgramExecutorService.getNumberOfCoresToUse());
+			for (var report : reports)
+				System.err.println("  " + report);
+			System.err.printf("done (%.1fs)%n", (System.currentTimeMillis() - start) / 1000.0);
+			final var failed = reports.stream().filter(r -> r.status() == WorkflowExecutor.Status.Failed).findFirst();
+			if (failed.isPresent())
+				throw new IOException(failed.get().toString());
+		} else {
+			final var latch = new CountDownLatch(1);
+			var start = System.currentTimeMillis();
+			ChangeListener<Boolean> listener = (v, o, n) -> {
+				if (o)
+					System.err.println("Running workflow...");
+				if (n) {
+					latch.countDown();
+					System.err.printf("done (%.1fs)%n", (System.currentTimeMillis() - start) / 1000.0);
 				}
+			};
+			//workflow.getWorkingDataNode().setValid(false);
+			workflow.validProperty().addListener(listener);
+			try {
+				Platform.runLater(() -> workflow.getInputTaxaFilterNode().restart());
+				// wait for end of update:
+				latch.await();
+				// the workflow being valid does not mean the views have finished: a view starts its own
+				// heavy jobs after its algorithm node has succeeded. Wait for those too (see RunningJobs).
+				// The grace period gives a job launched from a listener time to register itself.
+				// Only the jobs of this copy of the workflow are waited for.
+				if (!RunningJobs.awaitAll(workflow, 500, 0))
+					System.err.println("Warning: timed out waiting for " + RunningJobs.size(workflow) + " running view job(s)");
+			} finally {
+				workflow.validProperty().removeListener(listener);
+			}
+		}
 
-				WorkflowDataLoader.load(workflow, inputFile, inputFormat);
-				if (false) {
-					System.out.println("++++++++loaded++++++++:");
-					(new WorkflowNexusOutput()).save(workflow, "stdout", false);
-				}
+		if (false) {
+			System.out.println("++++++++processed++++++++:");
+			(new WorkflowNexusOutput()).save(workflow, "stdout", false);
+		}
+	}
 
-				// update workflow:
-				{
-					final var latch = new CountDownLatch(1);
-					var start = System.currentTimeMillis();
-					ChangeListener<Boolean> listener = (v, o, n) -> {
-						if (o)
-							System.err.println("Running workflow...");
-						if (n) {
-							latch.countDown();
-							System.err.printf("done (%.1fs)%n", (System.currentTimeMillis() - start) / 1000.0);
-						}
-					};
-					//workflow.getWorkingDataNode().setValid(false);
-					workflow.validProperty().addListener(listener);
-					try {
-						Platform.runLater(() -> workflow.getInputTaxaFilterNode().restart());
-						// wait for end of update:
-						latch.await();
-						// the workflow being valid does not mean the views have finished: a view starts its own
-						// heavy jobs after its algorithm node has succeeded. Wait for those too (see RunningJobs).
-						// The grace period gives a job launched from a listener time to register itself.
-						if (!RunningJobs.awaitAll(500, 0))
-							System.err.println("Warning: timed out waiting for " + RunningJobs.size() + " running view job(s)");
-					} finally {
-						workflow.validProperty().removeListener(listener);
-					}
-				}
+	/**
+	 * writes the whole workflow, or the named node, to the given writer
+	 */
+	private static void saveOutput(Workflow workflow, String nodeName, String exportFormat, Writer outputWriter) throws IOException {
+		// save updated workflow
+		if (nodeName.isEmpty()) {
+			(new WorkflowNexusOutput()).save(workflow, outputWriter, false);
+			System.err.println("Saved workflow has " + workflow.getNumberOfDataNodes() + " data nodes and " + IteratorUtils.size(workflow.algorithmNodes()) + " algorithms");
+		} else {
+			final var dataNode = workflow.findDataNode(nodeName);
+			if (dataNode == null)
+				throw new IOException("Node with title '" + nodeName + "': not found");
+			ExportManager.getInstance().exportFile(outputWriter, workflow.getWorkingTaxaBlock(), dataNode.getDataBlock(), exportFormat);
+		}
+		outputWriter.flush();
+	}
 
-				if (false) {
-					System.out.println("++++++++processed++++++++:");
-					(new WorkflowNexusOutput()).save(workflow, "stdout", false);
-				}
+	/**
+	 * writes the outputs for the input files to one writer, in the order of the input files, each as soon as it and
+	 * all before it are available
+	 */
+	private static class OrderedWriter {
+		private final Writer writer;
+		private final String[] pending;
+		private int next = 0;
+
+		OrderedWriter(Writer writer, int count) {
+			this.writer = writer;
+			this.pending = new String[count];
+		}
 
-				// save updated workflow
-				try {
-					final var outputFile = (outputFiles.length == inputFiles.length ? outputFiles[i] : outputFiles[0]);
-					if (!appendToFile) {
-						outputWriter = FileUtils.getOutputWriterPossiblyZIPorGZIP(outputFile);
-						System.err.println("Saving to: " + outputFile);
-					}
-					if (exportCompleteWorkflow) {
-						(new WorkflowNexusOutput()).save(workflow, outputWriter, false);
-						System.err.println("done");
-						System.err.println("Saved workflow has " + workflow.getNumberOfDataNodes() + " data nodes and " + IteratorUtils.size(workflow.algorithmNodes()) + " algorithms");
-					} else {
-						final var dataNode = workflow.findDataNode(nodeName);
-						if (dataNode == null)
-							throw new IOException("Node with title '" + nodeName + "': not found");
-						ExportManager.getInstance().exportFile(outputWriter, workflow.getWorkingTaxaBlock(), dataNode.getDataBlock(), exportFormat);
-					}
-				} catch (IOException e) {
-					System.err.println("Save FAILED: " + e.getMessage());
-				} finally {
-					if (!appendToFile && outputWriter != null) {
-						outputWriter.close();
-					}
-				}
-			}
-		} finally {
-			if (appendToFile && outputWriter != null) {
-				System.err.println("Wrote output to: " + outputFiles[0]);
-				outputWriter.close();
+		synchronized void write(int which, String output) throws IOException {
+			pending[which] = output;
+			while (next < pending.length && pending[next] != null) {
+				writer.write(pending[next]);
+				pending[next++] = null;
 			}
+			writer.flush();
+		}
+
+		synchronized void close() throws IOException {
+			writer.close();
 		}
 	}
 }
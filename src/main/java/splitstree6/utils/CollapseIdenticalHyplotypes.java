@@ -88,7 +88,7 @@ public static Triplet<TaxaBlock, TraitsBlock, CharactersBlock> apply(TaxaBlock i
 			}
 		}
 
-		var inputMatrix = inputCharacters.getMatrix();
+		var inputMatrix = inputCharacters.getMatrixReadOnly();
 		var countCollapsed = 0;
 		for (var s = 1; s <= inputTaxa.getNtax(); s++) {
 			if (!taxLabelMap.get(s).isEmpty()) {
@@ -21,8 +21,9 @@
 
 import javafx.concurrent.Service;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * registry of long-running jobs that a view starts on its own account
@@ -36,40 +37,68 @@
  * hangs the wait forever, and one that is never registered is silently raced, which is the failure this class
  * exists to prevent.
  * <p>
+ * A job can be registered for an owner, such as the workflow whose view started it, so that several workflows,
+ * run at the same time, each wait only for their own jobs.
+ * <p>
  * Daniel Huson, 8.2026
  */
 public class RunningJobs {
-	private static final Set<Object> jobs = new HashSet<>();
+	private static final Map<Object, Object> jobOwnerMap = new HashMap<>();
 
 	/**
 	 * registers a service for exactly as long as it runs
 	 */
 	public static void track(Service<?> service) {
+		track(null, service);
+	}
+
+	/**
+	 * registers a service for exactly as long as it runs
+	 *
+	 * @param owner the owner of the job, or null
+	 */
+	public static void track(Object owner, Service<?> service) {
 		service.runningProperty().addListener((v, o, n) -> {
 			if (n)
-				add(service);
+				add(owner, service);
 			else
 				remove(service);
 		});
 	}
 
 	public static void add(Object job) {
-		synchronized (jobs) {
-			jobs.add(job);
-			jobs.notifyAll();
+		add(null, job);
+	}
+
+	public static void add(Object owner, Object job) {
+		synchronized (jobOwnerMap) {
+			jobOwnerMap.put(job, owner);
+			jobOwnerMap.notifyAll();
 		}
 	}
 
 	public static void remove(Object job) {
-		synchronized (jobs) {
-			jobs.remove(job);
-			jobs.notifyAll();
+		synchronized (jobOwnerMap) {
+			jobOwnerMap.remove(job);
+			jobOwnerMap.notifyAll();
 		}
 	}
 
 	public static int size() {
-		synchronized (jobs) {
-			return jobs.size();
+		return size(null);
+	}
+
+	/**
+	 * gets the number of running jobs of the given owner
+	 *
+	 * @param owner the owner, or null, for all jobs
+	 */
+	public static int size(Object owner) {
+		synchronized (jobOwnerMap) {
+			if (owner == null)
+				return jobOwnerMap.size();
+			else
+				return (int) jobOwnerMap.values().stream().filter(o -> Objects.equals(o, owner)).count();
 		}
 	}
 
@@ -79,28 +108,40 @@ public static boolean isEmpty() {
 
 	/**
 	 * waits until no tracked job is running
+	 *
+	 * @param graceMillis   time to wait before first looking, allowing jobs to start
+	 * @param timeoutMillis maximum total time to wait, or 0 for no limit
+	 * @return true if all jobs finished, false on timeout
+	 */
+	public static boolean awaitAll(long graceMillis, long timeoutMillis) throws InterruptedException {
+		return awaitAll(null, graceMillis, timeoutMillis);
+	}
+
+	/**
+	 * waits until no tracked job of the given owner is running
 	 * <p>
 	 * Callers should give jobs a moment to start before calling this - a view job is launched from a listener
 	 * that has not necessarily run yet at the instant the workflow reports itself valid - which is what the
 	 * graceMillis argument is for.
 	 *
+	 * @param owner         the owner, or null, to wait for all jobs
 	 * @param graceMillis   time to wait before first looking, allowing jobs to start
 	 * @param timeoutMillis maximum total time to wait, or 0 for no limit
 	 * @return true if all jobs finished, false on timeout
 	 */
-	public static boolean awaitAll(long graceMillis, long timeoutMillis) throws InterruptedException {
+	public static boolean awaitAll(Object owner, long graceMillis, long timeoutMillis) throws InterruptedException {
 		if (graceMillis > 0)
 			Thread.sleep(graceMillis);
 		var end = System.currentTimeMillis() + timeoutMillis;
-		synchronized (jobs) {
-			while (!jobs.isEmpty()) {
+		synchronized (jobOwnerMap) {
+			while (size(owner) > 0) {
 				if (timeoutMillis <= 0)
-					jobs.wait();
+					jobOwnerMap.wait();
 				else {
 					var remaining = end - System.currentTimeMillis();
 					if (remaining <= 0)
 						return false;
-					jobs.wait(remaining);
+					jobOwnerMap.wait(remaining);
 				}
 			}
 		}
@@ -97,7 +97,7 @@ public void updateCanvas(double canvasWidth, double canvasHeight, TaxaBlock inpu
 					progress.incrementProgress();
 
 					var tNotActive = !activateTaxa.get(t);
-					var chars = inputCharacters.getMatrix()[t - 1];
+					var chars = inputCharacters.getMatrixReadOnly()[t - 1];
 
 					var y = t * boxHeight + vOffset;
 					if (y < 0)
@@ -170,7 +170,7 @@ public void updateCanvas(double canvasWidth, double canvasHeight, TaxaBlock inpu
 
 					for (var t = 1; t <= inputTaxa.getNtax(); t++) {
 						var tNotActive = !activateTaxa.get(t);
-						var chars = inputCharacters.getMatrix()[t - 1];
+						var chars = inputCharacters.getMatrixReadOnly()[t - 1];
 
 						var y = t * boxHeight + vOffset;
 						if (y < 0)
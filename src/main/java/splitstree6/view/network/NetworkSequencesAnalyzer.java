@@ -189,9 +189,9 @@ public void computeHammingDistances(CharactersBlock charactersBlock, double[][]
 		var n = charactersBlock.getNtax();
 
 		for (var i = 0; i < n; i++) {
-			var sequence1 = String.valueOf(charactersBlock.getRow0(i));
+			var sequence1 = String.valueOf(charactersBlock.getRow0ReadOnly(i));
 			for (var j = i + 1; j < n; j++) {
-				var sequence2 = String.valueOf(charactersBlock.getRow0(j));
+				var sequence2 = String.valueOf(charactersBlock.getRow0ReadOnly(j));
 				distances[i][j] = distances[j][i] = differences(sequence1, sequence2);
 			}
 		}
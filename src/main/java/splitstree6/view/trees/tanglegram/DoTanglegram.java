@@ -49,6 +49,7 @@ private enum Randomize {None, All, LSANodes}
 	/**
 	 * optimize the tanglegram layout by updating the LSA children map
 	 *
+	 * @param owner                           owner of the job, such as the workflow of the view, see RunningJobs
 	 * @param statusPane                      used for progress bar
 	 * @param network1                        first phylogeny
 	 * @param network2                        second phylogeny
@@ -61,7 +62,7 @@ private enum Randomize {None, All, LSANodes}
 	 * @param successRunnable                 this is run in the FX thread once the calculation has successfully completed
 	 * @param failedConsumer                  this is called in the FX thread if the computation failed
 	 */
-	public static void apply(Pane statusPane, PhyloTree network1, PhyloTree network2, boolean optimizeTaxonDisplacement1, boolean optimizeReticulateDisplacement1, boolean optimizeTaxonDisplacement2,
+	public static void apply(Object owner, Pane statusPane, PhyloTree network1, PhyloTree network2, boolean optimizeTaxonDisplacement1, boolean optimizeReticulateDisplacement1, boolean optimizeTaxonDisplacement2,
 							 boolean optimizeReticulateDisplacement2, boolean useNNPresort, Consumer<Boolean> runningConsumer, Runnable successRunnable, Consumer<Throwable> failedConsumer) {
 		var childrenMap1 = new HashMap<Node, List<Node>>();
 		LSAUtils.computeLSAChildrenMap(network1, childrenMap1);
@@ -112,6 +113,9 @@ else if (network1.getNumberOfNodes() > 500 || network2.getNumberOfNodes() > 500)
 					progress.setMaximum(-1);
 
 					NNCircularOrderingHeuristic.apply(network1, childrenMap1, network2, childrenMap2);
+					// refine the presort by exchanging adjacent children wherever this removes crossings
+					TanglegramCrossings.reduceCrossings(network1, childrenMap1, network2, childrenMap2);
+					TanglegramCrossings.reduceCrossings(network2, childrenMap2, network1, childrenMap1);
 
 					var score = computeScore(network1, childrenMap1, network2, childrenMap2, optimizeTaxonDisplacement1, finalOptimizeReticulateDisplacement1, optimizeTaxonDisplacement2, finalOptimizeReticulateDisplacement2);
 					System.err.printf("NN score: %.1f%n", score);
@@ -215,7 +219,7 @@ else if (network1.getNumberOfNodes() > 500 || network2.getNumberOfNodes() > 500)
 				}, Math.min(jobs.size(), ProgramExecutorService.getNumberOfCoresToUse()), progress);
 				return true;
 			});
-			RunningJobs.track(service); // so that a headless run waits for this, see RunningJobs
+			RunningJobs.track(owner, service); // so that a headless run waits for this, see RunningJobs
 			service.runningProperty().addListener((v, o, n) -> {
 				if (n)
 					runningConsumer.accept(true);
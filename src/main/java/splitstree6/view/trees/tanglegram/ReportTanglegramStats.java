@@ -112,33 +112,7 @@ private static double computeTaxonDisplacement(PhyloTree network1, Map<Node, Lis
 	}
 
 	private static int computeNumberOfCrossings(PhyloTree network1, Map<Node, List<Node>> childrenMap1, PhyloTree network2, Map<Node, List<Node>> childrenMap2) {
-		var commonTaxa = getCommonTaxa(network1, network2);
-
-		var taxonRankMap1 = computeTaxonRankMap(network1, childrenMap1, commonTaxa);
-		try (var leafRankMap2 = computeLeafRankMap(network2, childrenMap2, commonTaxa)) {
-			var list = new ArrayList<Node>();
-			preOrderTraversal(network2.getRoot(), childrenMap2, v -> {
-				if (v.isLeaf() && leafRankMap2.containsKey(v))
-					list.add(v);
-			});
-			var count = 0;
-			for (var i = 0; i < list.size(); i++) {
-				var v1 = list.get(i);
-				var network = (PhyloTree) v1.getOwner();
-				if (network.hasTaxa(v1)) {
-					var r1 = taxonRankMap1.get(network.getTaxon(v1));
-					for (var j = i + 1; j < list.size(); j++) {
-						var v2 = list.get(j);
-						if (network.hasTaxa(v2)) {
-							var r2 = taxonRankMap1.get(network.getTaxon(v2));
-							if (r1 > r2)
-								count++;
-						}
-					}
-				}
-			}
-			return count;
-		}
+		return (int) TanglegramCrossings.countCrossings(network1, childrenMap1, network2, childrenMap2);
 	}
 
 	private static BitSet getCommonTaxa(PhyloTree network1, PhyloTree network2) {
@@ -202,17 +176,11 @@ private static Map<Integer, Integer> computeTaxonRankMap(PhyloTree network, Map<
 	}
 
 	public static void preOrderTraversal(Node v, Map<Node, List<Node>> children, Consumer<Node> consumer) {
-		consumer.accept(v);
-		for (var w : children.get(v)) {
-			preOrderTraversal(w, children, consumer);
-		}
+		TanglegramCrossings.preOrder(v, children).forEach(consumer);
 	}
 
 	public static void postOrderTraversal(Node v, Map<Node, List<Node>> children, Consumer<Node> consumer) {
-		for (var w : children.get(v)) {
-			preOrderTraversal(w, children, consumer);
-		}
-		consumer.accept(v);
+		TanglegramCrossings.postOrder(v, children).forEach(consumer);
 	}
 
 	public record Stats(int numTaxa, int r1, int r2, double reticulateDisplacement1, double reticulateDisplacement2,
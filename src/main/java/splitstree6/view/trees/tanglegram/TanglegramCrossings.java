@@ -0,0 +1,221 @@
+/*
+ *  TanglegramCrossings.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.view.trees.tanglegram;
+
+import jloda.graph.Node;
+import jloda.phylo.PhyloTree;
+
+import java.util.*;
+
+/**
+ * counts and reduces the crossings of a tanglegram
+ * <p>
+ * Number the common taxa by the order in which they appear in the first phylogeny. Then two connectors cross
+ * exactly when the order of their taxa in the second phylogeny is inverted, so the crossings are the inversions of
+ * the sequence of numbers read off the leaves of the second phylogeny, which are counted in O(n log n) time using
+ * a Fenwick tree.
+ * <p>
+ * Exchanging two adjacent children of a node of the second phylogeny only changes the crossings between the
+ * connectors below the one child and those below the other: if there are a and b of these, and c of the a*b pairs
+ * cross, then the exchange changes the number of crossings by a*b-2c. Given the numbers below each child in sorted
+ * order, c is counted by a single merge, without looking at the rest of the tanglegram.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class TanglegramCrossings {
+	/**
+	 * counts the inversions of a sequence, that is, the pairs i&lt;j with values[i]&gt;values[j]
+	 *
+	 * @param values sequence of distinct values, each in the range 1..values.length
+	 * @return number of inversions
+	 */
+	public static long countInversions(int[] values) {
+		final var n = values.length;
+		final var tree = new int[n + 1]; // Fenwick tree over the values seen so far
+		var count = 0L;
+		for (var i = 0; i < n; i++) {
+			var seenSmaller = 0;
+			for (var k = values[i]; k > 0; k -= (k & -k))
+				seenSmaller += tree[k];
+			count += i - seenSmaller;
+			for (var k = values[i]; k <= n; k += (k & -k))
+				tree[k]++;
+		}
+		return count;
+	}
+
+	/**
+	 * counts the pairs a in first and b in second with a&gt;b, that is, the pairs of connectors that cross when the
+	 * block of first is placed before that of second
+	 *
+	 * @param first  values, sorted
+	 * @param second values, sorted
+	 * @return number of pairs
+	 */
+	public static long countCrossingPairs(int[] first, int[] second) {
+		var count = 0L;
+		var i = 0;
+		for (var b : second) {
+			while (i < first.length && first[i] < b)
+				i++;
+			count += first.length - i;
+		}
+		return count;
+	}
+
+	/**
+	 * the change in the number of crossings caused by exchanging two adjacent blocks
+	 *
+	 * @param first  values of the first block, sorted
+	 * @param second values of the second block, sorted
+	 * @return change in the number of crossings
+	 */
+	public static long computeExchangeDelta(int[] first, int[] second) {
+		return (long) first.length * second.length - 2 * countCrossingPairs(first, second);
+	}
+
+	/**
+	 * reduces the number of crossings by exchanging adjacent children of the nodes of the second phylogeny, keeping
+	 * the first fixed. The children of each node are processed in post-order, applying exchanges that reduce the
+	 * number of crossings, in the manner of a bubble sort, until none remains
+	 *
+	 * @param network1     the fixed phylogeny
+	 * @param childrenMap1 its LSA children
+	 * @param network2     the phylogeny to be reordered
+	 * @param childrenMap2 its LSA children, modified
+	 * @return the number of crossings removed
+	 */
+	public static long reduceCrossings(PhyloTree network1, Map<Node, List<Node>> childrenMap1, PhyloTree network2, Map<Node, List<Node>> childrenMap2) {
+		final var taxonRank = computeTaxonRanks(network1, childrenMap1, network2);
+		final var below = new HashMap<Node, int[]>(); // sorted ranks of the leaves below each node
+		var removed = 0L;
+
+		for (var v : postOrder(network2.getRoot(), childrenMap2)) {
+			final var children = childrenMap2.get(v);
+			if (children.isEmpty()) {
+				final var rank = (network2.hasTaxa(v) ? taxonRank.getOrDefault(network2.getTaxon(v), 0) : 0);
+				below.put(v, rank > 0 ? new int[]{rank} : new int[0]);
+				continue;
+			}
+			var changed = true;
+			while (changed) {
+				changed = false;
+				for (var i = 0; i + 1 < children.size(); i++) {
+					final var delta = computeExchangeDelta(below.get(children.get(i)), below.get(children.get(i + 1)));
+					if (delta < 0) {
+						Collections.swap(children, i, i + 1);
+						removed -= delta;
+						changed = true;
+					}
+				}
+			}
+			var size = 0;
+			for (var w : children)
+				size += below.get(w).length;
+			final var ranks = new int[size];
+			var pos = 0;
+			for (var w : children) {
+				final var array = below.remove(w);
+				System.arraycopy(array, 0, ranks, pos, array.length);
+				pos += array.length;
+			}
+			Arrays.sort(ranks);
+			below.put(v, ranks);
+		}
+		return removed;
+	}
+
+	/**
+	 * counts the crossings of the tanglegram. A taxon that appears on more than one leaf of a phylogeny is counted
+	 * at its first leaf only, in pre-order, as in computeTaxonRanks()
+	 *
+	 * @return number of pairs of connectors that cross
+	 */
+	public static long countCrossings(PhyloTree network1, Map<Node, List<Node>> childrenMap1, PhyloTree network2, Map<Node, List<Node>> childrenMap2) {
+		final var taxonRank = computeTaxonRanks(network1, childrenMap1, network2);
+		final var sequence = new int[taxonRank.size()];
+		final var seen = new BitSet();
+		var count = 0;
+		for (var v : preOrder(network2.getRoot(), childrenMap2)) {
+			if (v.isLeaf() && network2.hasTaxa(v)) {
+				final var rank = taxonRank.getOrDefault(network2.getTaxon(v), 0);
+				if (rank > 0 && !seen.get(rank)) {
+					seen.set(rank);
+					sequence[count++] = rank;
+				}
+			}
+		}
+		return countInversions(Arrays.copyOf(sequence, count));
+	}
+
+	/**
+	 * numbers the taxa on leaves of both phylogenies 1,2,..., in the order in which they appear in the first
+	 */
+	private static Map<Integer, Integer> computeTaxonRanks(PhyloTree network1, Map<Node, List<Node>> childrenMap1, PhyloTree network2) {
+		final var taxa2 = new BitSet();
+		for (var v : network2.nodes()) {
+			if (v.isLeaf() && network2.hasTaxa(v))
+				taxa2.set(network2.getTaxon(v));
+		}
+		final var taxonRank = new HashMap<Integer, Integer>();
+		for (var v : preOrder(network1.getRoot(), childrenMap1)) {
+			if (v.isLeaf() && network1.hasTaxa(v)) {
+				final var t = network1.getTaxon(v);
+				if (taxa2.get(t))
+					taxonRank.putIfAbsent(t, taxonRank.size() + 1);
+			}
+		}
+		return taxonRank;
+	}
+
+	/**
+	 * lists the nodes in pre-order, without recursion, so that deep phylogenies do not overflow the stack
+	 */
+	static List<Node> preOrder(Node root, Map<Node, List<Node>> childrenMap) {
+		final var list = new ArrayList<Node>();
+		final var stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			final var v = stack.pop();
+			list.add(v);
+			final var children = childrenMap.get(v);
+			for (var i = children.size() - 1; i >= 0; i--)
+				stack.push(children.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * lists the nodes in post-order, without recursion
+	 */
+	static List<Node> postOrder(Node root, Map<Node, List<Node>> childrenMap) {
+		final var list = new ArrayList<Node>();
+		final var stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) { // children before parent, in reverse
+			final var v = stack.pop();
+			list.add(v);
+			for (var w : childrenMap.get(v))
+				stack.push(w);
+		}
+		Collections.reverse(list);
+		return list;
+	}
+}
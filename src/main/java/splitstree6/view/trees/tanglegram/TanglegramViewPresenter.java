@@ -204,7 +204,7 @@ else if (trees.size() >= 2)
 				if (first != null && second != null && first != second) {
 					first.getLSAChildrenMap().clear();
 					second.getLSAChildrenMap().clear();
-					DoTanglegram.apply(mainWindow.getController().getBottomFlowPane(), first, second,
+					DoTanglegram.apply(mainWindow.getWorkflow(), mainWindow.getController().getBottomFlowPane(), first, second,
 							view.getOptionOptimizeTanglegramCrossings1(),
 							view.getOptionOptimizeReticulateCrossings1(),
 							view.getOptionOptimizeTanglegramCrossings2(),
@@ -27,9 +27,7 @@
 import splitstree6.algorithms.distances.distances2network.Distances2Network;
 import splitstree6.algorithms.taxa.taxa2taxa.Taxa2Taxa;
 import splitstree6.cite.IHasCitations;
-import splitstree6.data.NetworkBlock;
-import splitstree6.data.TaxaBlock;
-import splitstree6.data.ViewBlock;
+import splitstree6.data.*;
 import splitstree6.options.IOptionsCarrier;
 import splitstree6.options.Option;
 import splitstree6.workflow.interfaces.HasFromClass;
@@ -91,6 +89,16 @@ public void compute(ProgressListener progress, Collection<jloda.fx.workflow.Data
 			var targetTaxaBlock = outputData.stream().filter(d -> d instanceof TaxaBlock).map(d -> (TaxaBlock) d).findFirst().orElse(null);
 			source.load(progress, inputBlock, targetTaxaBlock, outputBlock);
 		} else if (taxaBlock != null && inputBlock != null && outputBlock != null) {
+			final var reusable = isReusable(this, outputBlock);
+			// the key of the current output is removed until the output has been recomputed or found to be reusable,
+			// so that an output left behind by an early exit or a failure is never reused
+			String previousKey = null;
+			if (reusable && getNode() != null) {
+				getNode().setReused(false);
+				previousKey = getNode().getInputKey();
+				getNode().setInputKey(null);
+			}
+
 			// Empty input (e.g. an upstream filter matched nothing): don't report the generic "not applicable".
 			// For a view-producing algorithm, still run compute so that the view refreshes to an empty display
 			// rather than keeping a stale drawing; for other algorithms, leave the (already-cleared) output empty.
@@ -99,19 +107,56 @@ public void compute(ProgressListener progress, Collection<jloda.fx.workflow.Data
 			// an error dialog in front of the user every time they deselect the last taxon - but not silent
 			// either: without this line an empty result in a headless run looks exactly like a computed one.
 			if (inputBlock.size() == 0) {
+				if (reusable)
+					outputBlock.clear();
 				System.err.println("Note: " + getName() + ": input " + inputBlock.getName() + " is empty, nothing to compute");
 				if (outputBlock instanceof ViewBlock)
 					compute(progress, taxaBlock, inputBlock, outputBlock);
 				return;
 			}
-			if (!isApplicable(taxaBlock, inputBlock))
+			if (!isApplicable(taxaBlock, inputBlock)) {
+				if (reusable)
+					outputBlock.clear();
 				throw new IOException("Algorithm is not applicable to given input data");
+			}
 			if (this instanceof IExperimental && !warned.contains(getName())) {
 				NotificationManager.showWarning(getName() + ": this is experimental code");
 				warned.add(getName());
 			}
-			compute(progress, taxaBlock, inputBlock, outputBlock);
-			stampNetworkType(outputBlock);
+			// the output block is kept while the node is invalid, and is reused, if neither the options nor the
+			// content of the input have changed since it was computed. The key is only needed for this, or for the cache
+			final var inputKey = (reusable && (getNode() != null || AlgorithmResultCache.isEnabled()) ? AlgorithmResultCache.computeKey(this, taxaBlock, inputBlock) : null);
+			if (inputKey != null && inputKey.equals(previousKey) && outputBlock.size() > 0) {
+				getNode().setInputKey(inputKey);
+				getNode().setReused(true);
+				progress.setSubtask("reused result");
+				return;
+			}
+			if (reusable)
+				outputBlock.clear();
+
+			try {
+				if (inputKey != null && AlgorithmResultCache.isEnabled() && AlgorithmResultCache.load(inputKey, outputBlock)) {
+					progress.setSubtask("cached result");
+					stampNetworkType(outputBlock);
+				} else {
+					compute(progress, taxaBlock, inputBlock, outputBlock);
+					stampNetworkType(outputBlock);
+					if (inputKey != null && AlgorithmResultCache.isEnabled())
+						AlgorithmResultCache.store(inputKey, taxaBlock, outputBlock);
+				}
+			} catch (IOException | RuntimeException ex) {
+				if (reusable)
+					outputBlock.clear();
+				throw ex;
+			}
+			if (inputKey != null && getNode() != null)
+				getNode().setInputKey(inputKey);
+		} else if (outputBlock != null && isReusable(this, outputBlock)) {
+			// nothing to compute from, so the output kept while the node was invalid is out of date
+			outputBlock.clear();
+			if (getNode() != null)
+				getNode().setInputKey(null);
 		}
 	}
 
@@ -132,6 +177,17 @@ else if (this instanceof Characters2Network)
 		}
 	}
 
+	/**
+	 * can the output of the algorithm be reused, or cached, when its options and input are unchanged? This is the
+	 * case for outputs that the Nexus importer can read, except those of data loaders and filters, which are cheap
+	 * to compute and write into the input and working nodes
+	 */
+	static boolean isReusable(Algorithm<?, ?> algorithm, DataBlock outputBlock) {
+		return algorithm != null && !(algorithm instanceof DataLoader) && !(algorithm instanceof DataTaxaFilter) && !(algorithm instanceof Taxa2Taxa)
+			   && (outputBlock instanceof CharactersBlock || outputBlock instanceof DistancesBlock || outputBlock instanceof SplitsBlock
+				   || outputBlock instanceof TreesBlock || outputBlock instanceof NetworkBlock);
+	}
+
 	public String getCitation() {
 		return null;
 	}
@@ -35,6 +35,9 @@
 public class AlgorithmNode<S extends DataBlock, T extends DataBlock> extends jloda.fx.workflow.AlgorithmNode {
 	private final StringProperty title = new SimpleStringProperty();
 
+	private volatile String inputKey;
+	private volatile boolean reused;
+
 	AlgorithmNode(Workflow owner) {
 		super(owner);
 		title.set(getName());
@@ -105,6 +108,28 @@ public void setTitle(String title) {
 		this.title.set(title);
 	}
 
+	/**
+	 * gets the hash of the options and input of the last successful computation, see Algorithm.compute()
+	 */
+	String getInputKey() {
+		return inputKey;
+	}
+
+	void setInputKey(String inputKey) {
+		this.inputKey = inputKey;
+	}
+
+	/**
+	 * was the output of the last run reused, because the options and the content of the input had not changed?
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+
+	void setReused(boolean reused) {
+		this.reused = reused;
+	}
+
 	public Workflow getOwner() {
 		return (Workflow) super.getOwner();
 	}
@@ -0,0 +1,223 @@
+/*
+ *  AlgorithmResultCache.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.workflow;
+
+import jloda.util.FileUtils;
+import jloda.util.parse.NexusStreamParser;
+import splitstree6.data.TaxaBlock;
+import splitstree6.io.nexus.NexusExporter;
+import splitstree6.io.readers.NexusImporter;
+import splitstree6.main.Version;
+import splitstree6.options.Option;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * optional on-disk cache of the results of algorithms
+ * <p>
+ * The result of an algorithm is stored in Nexus format, in a file named by a SHA-256 hash of the program version,
+ * the class of the algorithm, the values of its options and the Nexus format of its input taxa and data, or, if the
+ * data was computed by a reusable algorithm, the key of that computation. When an
+ * algorithm is run on the same input with the same options again, Algorithm.compute() reads the result from the
+ * file, rather than computing it. Only results that are reusable are cached, see Algorithm.isReusable(), so views and
+ * reports are always computed. The cache is disabled, unless a directory is set.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class AlgorithmResultCache {
+	private static final String SUFFIX = ".nex.gz";
+
+	private static volatile File directory;
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+
+	/**
+	 * sets the cache directory, which is created, if necessary
+	 *
+	 * @param directory the directory, or null, to disable the cache
+	 */
+	public static void setDirectory(File directory) throws IOException {
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Can't create directory: " + directory);
+		AlgorithmResultCache.directory = directory;
+	}
+
+	public static File getDirectory() {
+		return directory;
+	}
+
+	public static boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * gets the number of results read from the cache
+	 */
+	public static long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * gets the number of results computed and written to the cache
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * computes the key under which the result of the algorithm on the given input is cached
+	 *
+	 * @return key, or null, if the input can't be written in Nexus format
+	 */
+	static String computeKey(Algorithm<?, ?> algorithm, TaxaBlock taxaBlock, DataBlock inputBlock) {
+		try {
+			final var digest = MessageDigest.getInstance("SHA-256");
+			try (var w = new DigestWriter(digest)) {
+				w.write(Version.SHORT_DESCRIPTION + "\n");
+				w.write(algorithm.getClass().getName() + "\n");
+				final var options = Option.getAllOptions(algorithm);
+				options.sort(Comparator.comparing(Option::getName));
+				for (var option : options) {
+					w.write(option.getName() + "=" + Arrays.deepToString(new Object[]{option.getProperty().getValue()}) + "\n");
+				}
+				final var exporter = new NexusExporter();
+				final var producerKey = getProducerKey(inputBlock);
+				if (producerKey != null)
+					w.write("input=" + producerKey + "\n");
+				else
+					exporter.export(w, taxaBlock, inputBlock);
+				if (taxaBlock.getTraitsBlock() != null)
+					exporter.export(w, taxaBlock, taxaBlock.getTraitsBlock());
+				if (taxaBlock.getSetsBlock() != null)
+					exporter.export(w, taxaBlock, taxaBlock.getSetsBlock());
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (IOException | NoSuchAlgorithmException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * gets the key of the computation that produced the given block, if the block is the output of a reusable
+	 * algorithm whose key is known. As that key determines the content of the block, it is used in place of the
+	 * content, which saves writing and hashing the whole block for every algorithm along a chain
+	 *
+	 * @return key or null
+	 */
+	private static String getProducerKey(DataBlock block) {
+		final var dataNode = block.getNode();
+		if (dataNode != null && dataNode.getDataBlock() == block) {
+			final var algorithmNode = dataNode.getPreferredParent();
+			if (algorithmNode != null && Algorithm.isReusable(algorithmNode.getAlgorithm(), block))
+				return algorithmNode.getInputKey();
+		}
+		return null;
+	}
+
+	/**
+	 * reads a cached result
+	 *
+	 * @param key         the key
+	 * @param outputBlock receives the result
+	 * @return true, if the result was found and read
+	 */
+	static boolean load(String key, DataBlock outputBlock) {
+		final var file = getFile(key);
+		if (!file.isFile())
+			return false;
+		try (var np = new NexusStreamParser(FileUtils.getReaderPossiblyZIPorGZIP(file.getPath()))) {
+			NexusImporter.parse(np, new TaxaBlock(), outputBlock);
+			outputBlock.updateShortDescription();
+			hits.increment();
+			return true;
+		} catch (IOException ex) {
+			System.err.println("Warning: can't read cached result: " + file + ": " + ex.getMessage());
+			outputBlock.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * writes a result to the cache. The file is written under a temporary name and then renamed, so that concurrent
+	 * runs never read a partial result
+	 */
+	static void store(String key, TaxaBlock taxaBlock, DataBlock outputBlock) {
+		misses.increment();
+		final var file = getFile(key);
+		try {
+			final var tmpFile = File.createTempFile(key, ".tmp", file.getParentFile());
+			try {
+				try (var w = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmpFile)), StandardCharsets.UTF_8)) {
+					w.write("#nexus\n");
+					new NexusExporter().export(w, taxaBlock, outputBlock);
+				}
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmpFile.toPath());
+			}
+		} catch (IOException ex) {
+			System.err.println("Warning: can't write cached result: " + file + ": " + ex.getMessage());
+		}
+	}
+
+	private static File getFile(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	/**
+	 * a writer that feeds everything written to it into a message digest
+	 */
+	private static class DigestWriter extends Writer {
+		private final MessageDigest digest;
+
+		DigestWriter(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			digest.update(new String(cbuf, off, len).getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void write(String str) {
+			digest.update(str.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -35,8 +35,9 @@
 		super(workflow);
 		title.set(getName());
 
+		// a block that its algorithm may reuse is kept while invalid, and cleared by the algorithm, if it is recomputed
 		validProperty().addListener((v, o, n) -> {
-			if (!n && getDataBlock() != null)
+			if (!n && getDataBlock() != null && !(getPreferredParent() != null && Algorithm.isReusable(getPreferredParent().getAlgorithm(), getDataBlock())))
 				getDataBlock().clear();
 		});
 
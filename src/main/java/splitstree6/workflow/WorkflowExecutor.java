@@ -0,0 +1,197 @@
+/*
+ *  WorkflowExecutor.java Copyright (C) 2026 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package splitstree6.workflow;
+
+import jloda.util.progress.ProgressSilent;
+import splitstree6.data.ViewBlock;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+
+/**
+ * runs the algorithms of a workflow without the JavaFX toolkit
+ * <p>
+ * The algorithm nodes are not restarted, which would run them through their services on the FX thread, but are
+ * computed directly. A node is run as soon as all algorithm nodes that compute its input data have finished, so
+ * independent branches of the workflow are computed in parallel. Nodes that compute views are skipped, unless
+ * requested, and so are data loaders, because the input nodes are filled by WorkflowDataLoader. A node whose input
+ * could not be computed is not run.
+ * <p>
+ * Outputs of reusable algorithms are not cleared here, but left to Algorithm.compute(), so that, as in a workflow
+ * that is run in the GUI, a node whose options and input are unchanged since its last run reuses its output. Note
+ * that RunWorkflow clears all data before loading each input file, so there, results are only reused by way of
+ * the AlgorithmResultCache.
+ * <p>
+ * Use this with a workflow that has no main window, so that its views and reports do not attempt to open tabs.
+ * <p>
+ * Daniel Huson, 10.2026
+ */
+public class WorkflowExecutor {
+	public enum Status {Computed, Reused, Skipped, Failed, NotRun}
+
+	/**
+	 * what happened to an algorithm node
+	 *
+	 * @param node    the node
+	 * @param status  its status
+	 * @param millis  wall-clock time spent computing it
+	 * @param message the error message, if it failed
+	 */
+	public record NodeReport(AlgorithmNode<?, ?> node, Status status, long millis, String message) {
+		@Override
+		public String toString() {
+			return switch (status) {
+				case Computed -> String.format("%s: %.1fs", node.getTitle(), millis / 1000.0);
+				case Reused -> node.getTitle() + ": reused";
+				case Failed -> String.format("%s: FAILED (%.1fs): %s", node.getTitle(), millis / 1000.0, message);
+				case Skipped -> node.getTitle() + ": skipped";
+				case NotRun -> node.getTitle() + ": not run, input not available";
+			};
+		}
+	}
+
+	/**
+	 * computes all algorithm nodes of the workflow
+	 *
+	 * @param workflow     the workflow, with its input nodes loaded
+	 * @param computeViews also compute the nodes that produce views
+	 * @param nThreads     maximum number of nodes to compute at the same time
+	 * @return the reports for all algorithm nodes, in the order in which they finished
+	 * @throws IOException if interrupted
+	 */
+	public static List<NodeReport> apply(Workflow workflow, boolean computeViews, int nThreads) throws IOException {
+		final var nodes = workflow.algorithmNodesStream().map(v -> (AlgorithmNode<?, ?>) v).toList();
+
+		// for each node, the number of nodes computing its input that have not yet finished
+		final var waitingFor = new HashMap<AlgorithmNode<?, ?>, Integer>();
+		final var dependents = new HashMap<AlgorithmNode<?, ?>, List<AlgorithmNode<?, ?>>>();
+		for (var v : nodes) {
+			final var producers = getProducers(v);
+			waitingFor.put(v, producers.size());
+			for (var p : producers)
+				dependents.computeIfAbsent(p, k -> new ArrayList<>()).add(v);
+		}
+
+		final var reports = new ArrayList<NodeReport>();
+		final var unavailable = new HashSet<AlgorithmNode<?, ?>>(); // nodes whose output was not computed
+		final var ready = new ArrayDeque<AlgorithmNode<?, ?>>(nodes.stream().filter(v -> waitingFor.get(v) == 0).toList());
+
+		final var service = Executors.newFixedThreadPool(Math.max(1, nThreads));
+		final var completion = new ExecutorCompletionService<NodeReport>(service);
+		var running = 0;
+		try {
+			while (!ready.isEmpty() || running > 0) {
+				while (!ready.isEmpty()) {
+					final var v = ready.poll();
+					NodeReport report = null;
+					if (getProducers(v).stream().anyMatch(unavailable::contains))
+						report = new NodeReport(v, Status.NotRun, 0, null);
+					else if (v.getAlgorithm() instanceof DataLoader)
+						report = new NodeReport(v, Status.Skipped, 0, null);
+					else if (!computeViews && v.getAlgorithm().getToClass() == ViewBlock.class)
+						report = new NodeReport(v, Status.Skipped, 0, null);
+
+					if (report == null) {
+						completion.submit(() -> compute(v));
+						running++;
+					} else {
+						if (report.status() == Status.NotRun || !(v.getAlgorithm() instanceof DataLoader))
+							unavailable.add(v);
+						finish(report, reports, waitingFor, dependents, ready);
+					}
+				}
+				if (running > 0) {
+					final var report = completion.take().get();
+					running--;
+					if (report.status() == Status.Failed)
+						unavailable.add(report.node());
+					finish(report, reports, waitingFor, dependents, ready);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause());
+		} finally {
+			service.shutdownNow();
+		}
+		return reports;
+	}
+
+	/**
+	 * records the report of a node and makes the nodes ready that no longer wait for any other
+	 */
+	private static void finish(NodeReport report, List<NodeReport> reports, Map<AlgorithmNode<?, ?>, Integer> waitingFor,
+							   Map<AlgorithmNode<?, ?>, List<AlgorithmNode<?, ?>>> dependents, Queue<AlgorithmNode<?, ?>> ready) {
+		reports.add(report);
+		for (var w : dependents.getOrDefault(report.node(), List.of())) {
+			if (waitingFor.merge(w, -1, Integer::sum) == 0)
+				ready.add(w);
+		}
+	}
+
+	/**
+	 * computes a node from its input data into its output data
+	 */
+	private static NodeReport compute(AlgorithmNode<?, ?> v) {
+		final var start = System.currentTimeMillis();
+		try {
+			final var inputs = new ArrayList<jloda.fx.workflow.DataBlock>();
+			for (var parent : v.getParents()) {
+				if (parent instanceof DataNode<?> dataNode)
+					inputs.add(dataNode.getDataBlock());
+			}
+			final var outputs = new ArrayList<jloda.fx.workflow.DataBlock>();
+			for (var child : v.getChildren()) {
+				if (child instanceof DataNode<?> dataNode) {
+					if (!Algorithm.isReusable(v.getAlgorithm(), dataNode.getDataBlock()))
+						dataNode.getDataBlock().clear();
+					outputs.add(dataNode.getDataBlock());
+				}
+			}
+			if (v.getAlgorithm().getNode() == null)
+				v.getAlgorithm().setNode(v);
+			v.getAlgorithm().compute(new ProgressSilent(), inputs, outputs);
+			for (var output : outputs)
+				((DataBlock) output).updateShortDescription();
+			return new NodeReport(v, v.isReused() ? Status.Reused : Status.Computed, System.currentTimeMillis() - start, null);
+		} catch (Exception ex) {
+			return new NodeReport(v, Status.Failed, System.currentTimeMillis() - start, ex.getMessage());
+		}
+	}
+
+	/**
+	 * gets the algorithm nodes that compute the input data of the given one
+	 */
+	private static Set<AlgorithmNode<?, ?>> getProducers(AlgorithmNode<?, ?> v) {
+		final var producers = new HashSet<AlgorithmNode<?, ?>>();
+		for (var parent : v.getParents()) {
+			for (var grandParent : parent.getParents()) {
+				if (grandParent instanceof AlgorithmNode<?, ?> algorithmNode)
+					producers.add(algorithmNode);
+			}
+		}
+		return producers;
+	}
+}